@@ -0,0 +1,49 @@
+package io.github.nosuchcompany.pgplug.benchmarks;
+
+import io.github.nosuchcompany.pgplug.keyPair.KeyPairPGP;
+import io.github.nosuchcompany.pgplug.utils.Compression;
+import io.github.nosuchcompany.pgplug.utils.PGPEncryptor;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Collections;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encrypts large compressible payloads with ZLIB deflated on the calling thread or in parallel
+ * blocks on the common pool.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CompressionBenchmark {
+
+    private static final char[] pass = "benchmark".toCharArray();
+
+    @Param({"67108864", "1073741824"})
+    public long payloadSize;
+
+    @Param({"serial", "parallel"})
+    public String deflate;
+
+    private PGPEncryptor encryptor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Compression compression = "parallel".equals(deflate) ? Compression.ZLIB.parallel(ForkJoinPool.commonPool()) : Compression.ZLIB;
+        encryptor = new PGPEncryptor.Builder(Collections.singleton(new KeyPairPGP(pass).getPGPPublicKey()))
+                .setCompression(compression)
+                .setArmor(false)
+                .build();
+    }
+
+    @Benchmark
+    public long encrypt() throws Exception {
+        Payloads.CountingSink sink = new Payloads.CountingSink();
+        encryptor.encrypt(sink, Payloads.openText(payloadSize));
+        return sink.count;
+    }
+}
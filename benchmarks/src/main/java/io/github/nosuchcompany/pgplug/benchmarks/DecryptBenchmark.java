@@ -0,0 +1,88 @@
+package io.github.nosuchcompany.pgplug.benchmarks;
+
+import io.github.nosuchcompany.pgplug.keyPair.KeyPairPGP;
+import io.github.nosuchcompany.pgplug.utils.PGPDecryptor;
+import io.github.nosuchcompany.pgplug.utils.PGPEncryptor;
+import io.github.nosuchcompany.pgplug.utils.PGPUtils;
+import org.bouncycastle.openpgp.PGPPublicKey;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decrypts messages of 1 KiB to 1 GiB encrypted to 1 to 100 recipients, read from a temporary file.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DecryptBenchmark {
+
+    private static final char[] pass = "benchmark".toCharArray();
+
+    @Param({"1024", "1048576", "67108864", "1073741824"})
+    public long payloadSize;
+
+    @Param({"1", "10", "100"})
+    public int recipients;
+
+    @Param({"true", "false"})
+    public boolean armor;
+
+    private byte[] privateKey;
+
+    private File encrypted;
+
+    private PGPDecryptor decryptor;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        List<PGPPublicKey> publicKeys = new ArrayList<PGPPublicKey>();
+        KeyPairPGP keyPair = new KeyPairPGP(pass);
+        privateKey = keyPair.getPrivateKey();
+        // the own key last, so the key lookup walks the whole recipient list
+        for (int i = 1; i < recipients; i++) {
+            publicKeys.add(new KeyPairPGP(pass).getPGPPublicKey());
+        }
+        publicKeys.add(keyPair.getPGPPublicKey());
+
+        encrypted = File.createTempFile("pgplug-bench", ".pgp");
+        encrypted.deleteOnExit();
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(encrypted))) {
+            new PGPEncryptor.Builder(publicKeys).setArmor(armor).build().encrypt(out, Payloads.open(payloadSize));
+        }
+        decryptor = new PGPDecryptor(privateKey, pass);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        decryptor.close();
+        encrypted.delete();
+    }
+
+    @Benchmark
+    public long decrypt() throws Exception {
+        Payloads.CountingSink sink = new Payloads.CountingSink();
+        try (InputStream in = new BufferedInputStream(new FileInputStream(encrypted), 1 << 16)) {
+            PGPUtils.decrypt(in, new ByteArrayInputStream(privateKey), sink, pass);
+        }
+        return sink.count;
+    }
+
+    /**
+     * Decrypts with the unlocked key kept by a {@link PGPDecryptor}.
+     */
+    @Benchmark
+    public long decryptWithDecryptor() throws Exception {
+        Payloads.CountingSink sink = new Payloads.CountingSink();
+        try (InputStream in = new BufferedInputStream(new FileInputStream(encrypted), 1 << 16)) {
+            decryptor.decrypt(in, sink);
+        }
+        return sink.count;
+    }
+}
@@ -0,0 +1,54 @@
+package io.github.nosuchcompany.pgplug.benchmarks;
+
+import io.github.nosuchcompany.pgplug.keyPair.KeyPairPGP;
+import io.github.nosuchcompany.pgplug.utils.PGPEncryptor;
+import org.bouncycastle.openpgp.PGPPublicKey;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encrypts streamed payloads of 1 KiB to 1 GiB to 1 to 100 recipients.
+ * The static entry point, which is always armored, is measured by {@link EncryptStaticBenchmark}.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EncryptBenchmark {
+
+    private static final char[] pass = "benchmark".toCharArray();
+
+    @Param({"1024", "1048576", "67108864", "1073741824"})
+    public long payloadSize;
+
+    @Param({"1", "10", "100"})
+    public int recipients;
+
+    @Param({"true", "false"})
+    public boolean armor;
+
+    private List<PGPPublicKey> publicKeys;
+
+    private PGPEncryptor encryptor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        publicKeys = new ArrayList<PGPPublicKey>();
+        for (int i = 0; i < recipients; i++) {
+            publicKeys.add(new KeyPairPGP(pass).getPGPPublicKey());
+        }
+        encryptor = new PGPEncryptor.Builder(publicKeys).setArmor(armor).build();
+    }
+
+    @Benchmark
+    public long encrypt() throws Exception {
+        Payloads.CountingSink sink = new Payloads.CountingSink();
+        encryptor.encrypt(sink, Payloads.open(payloadSize));
+        return sink.count;
+    }
+}
@@ -0,0 +1,30 @@
+package io.github.nosuchcompany.pgplug.benchmarks;
+
+import io.github.nosuchcompany.pgplug.utils.KeyAlgorithm;
+import io.github.nosuchcompany.pgplug.utils.PGPUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class KeyGenerationBenchmark {
+
+    private static final char[] pass = "benchmark".toCharArray();
+
+    @Param({"RSA_1024", "RSA_2048", "ECC_P256"})
+    public KeyAlgorithm algorithm;
+
+    @Benchmark
+    public int generateKeyPair() {
+        ByteArrayOutputStream privateOut = new ByteArrayOutputStream();
+        ByteArrayOutputStream publicOut = new ByteArrayOutputStream();
+        PGPUtils.generateKeyPair(algorithm, privateOut, publicOut, pass);
+        return privateOut.size() + publicOut.size();
+    }
+}
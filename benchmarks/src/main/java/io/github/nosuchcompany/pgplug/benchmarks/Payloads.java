@@ -0,0 +1,104 @@
+package io.github.nosuchcompany.pgplug.benchmarks;
+
+import java.io.*;
+import java.util.Random;
+
+/**
+ * Payload sources and sinks that do not hold the payload in memory, so the benchmarks can go up to 1 GiB.
+ */
+final class Payloads {
+
+    private static final byte[] BLOCK = new byte[1 << 16];
+
+    private static final byte[] TEXT = new byte[1 << 20];
+
+    static {
+        // a block larger than the deflate window, so the payload does not compress away
+        new Random(42).nextBytes(BLOCK);
+        // log lines with varying numbers, about 4:1 compressible and repeating only after 1 MiB
+        Random random = new Random(43);
+        StringBuilder text = new StringBuilder(TEXT.length + 100);
+        while (text.length() < TEXT.length) {
+            text.append("2024-01-").append(10 + random.nextInt(20)).append(" INFO request ")
+                    .append(random.nextInt(1000000)).append(" served in ").append(random.nextInt(500)).append(" ms\n");
+        }
+        System.arraycopy(text.toString().getBytes(), 0, TEXT, 0, TEXT.length);
+    }
+
+    private Payloads() {
+    }
+
+    /**
+     * @return a stream of size pseudo random bytes.
+     */
+    static InputStream open(final long size) {
+        return open(size, BLOCK);
+    }
+
+    /**
+     * @return a stream of size bytes of compressible text.
+     */
+    static InputStream openText(final long size) {
+        return open(size, TEXT);
+    }
+
+    private static InputStream open(final long size, final byte[] block) {
+        return new InputStream() {
+            private long position;
+
+            @Override
+            public int read() {
+                return position < size ? block[(int) (position++ % block.length)] & 0xff : -1;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                if (position >= size) {
+                    return -1;
+                }
+                int offset = (int) (position % block.length);
+                int n = (int) Math.min(Math.min(len, block.length - offset), size - position);
+                System.arraycopy(block, offset, b, off, n);
+                position += n;
+                return n;
+            }
+        };
+    }
+
+    /**
+     * Writes a payload of the given size to a temporary file.
+     */
+    static File writeTempFile(long size) throws IOException {
+        File file = File.createTempFile("pgplug-bench", ".bin");
+        file.deleteOnExit();
+        try (InputStream in = open(size); OutputStream out = new FileOutputStream(file)) {
+            copy(in, out);
+        }
+        return file;
+    }
+
+    static void copy(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = new byte[1 << 16];
+        int len;
+        while ((len = in.read(buffer)) >= 0) {
+            out.write(buffer, 0, len);
+        }
+    }
+
+    /**
+     * Discards everything but counts it, so the work can not be optimized away.
+     */
+    static final class CountingSink extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package io.github.nosuchcompany.pgplug.benchmarks;
+
+import io.github.nosuchcompany.pgplug.keyPair.KeyPairPGP;
+import io.github.nosuchcompany.pgplug.utils.Compression;
+import io.github.nosuchcompany.pgplug.utils.CryptoProviders;
+import io.github.nosuchcompany.pgplug.utils.PGPDecryptor;
+import io.github.nosuchcompany.pgplug.utils.PGPEncryptor;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bulk AES-256 throughput of Bouncy Castle against the JDK's SunJCE, uncompressed and binary so
+ * the symmetric cipher dominates.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ProviderBenchmark {
+
+    private static final char[] pass = "benchmark".toCharArray();
+
+    @Param({"1048576", "67108864"})
+    public long payloadSize;
+
+    @Param({"bc", "jdk"})
+    public String providers;
+
+    private PGPEncryptor encryptor;
+
+    private PGPDecryptor decryptor;
+
+    private byte[] encrypted;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        CryptoProviders cryptoProviders = "jdk".equals(providers) ? CryptoProviders.jdk() : CryptoProviders.BOUNCY_CASTLE;
+        KeyPairPGP keyPair = new KeyPairPGP(pass);
+        encryptor = new PGPEncryptor.Builder(Collections.singleton(keyPair.getPGPPublicKey()))
+                .setCompression(Compression.NONE)
+                .setArmor(false)
+                .setCryptoProviders(cryptoProviders)
+                .build();
+        decryptor = new PGPDecryptor(new ByteArrayInputStream(keyPair.getPrivateKey()), pass,
+                PGPDecryptor.DEFAULT_TTL_MILLIS, TimeUnit.MILLISECONDS, PGPDecryptor.DEFAULT_MAX_KEYS, cryptoProviders);
+        ByteArrayOutputStream bOut = new ByteArrayOutputStream();
+        encryptor.encrypt(bOut, Payloads.open(payloadSize));
+        encrypted = bOut.toByteArray();
+    }
+
+    @Benchmark
+    public long encrypt() throws Exception {
+        Payloads.CountingSink sink = new Payloads.CountingSink();
+        encryptor.encrypt(sink, Payloads.open(payloadSize));
+        return sink.count;
+    }
+
+    @Benchmark
+    public long decrypt() throws Exception {
+        Payloads.CountingSink sink = new Payloads.CountingSink();
+        decryptor.decrypt(new ByteArrayInputStream(encrypted), sink);
+        return sink.count;
+    }
+}
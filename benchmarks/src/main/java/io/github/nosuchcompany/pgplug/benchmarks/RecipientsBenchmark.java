@@ -0,0 +1,69 @@
+package io.github.nosuchcompany.pgplug.benchmarks;
+
+import io.github.nosuchcompany.pgplug.keyPair.KeyPairPGP;
+import io.github.nosuchcompany.pgplug.utils.Compression;
+import io.github.nosuchcompany.pgplug.utils.KeyAlgorithm;
+import io.github.nosuchcompany.pgplug.utils.PGPEncryptor;
+import org.bouncycastle.openpgp.PGPPublicKey;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encrypts a small message to many recipients, so the wrapping of the session key dominates.
+ * The recipients cycle through a few distinct keys, which costs the same per packet as distinct
+ * keys would but keeps the key generation out of the setup time.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RecipientsBenchmark {
+
+    private static final char[] pass = "benchmark".toCharArray();
+
+    private static final int DISTINCT_KEYS = 8;
+
+    @Param({"RSA_2048", "ECC_P256"})
+    public KeyAlgorithm keyAlgorithm;
+
+    @Param({"1000"})
+    public int recipients;
+
+    @Param({"serial", "parallel"})
+    public String wrapping;
+
+    private PGPEncryptor encryptor;
+
+    private byte[] message;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        List<PGPPublicKey> keys = new ArrayList<PGPPublicKey>();
+        for (int i = 0; i < DISTINCT_KEYS; i++) {
+            keys.add(new KeyPairPGP(pass, keyAlgorithm).getPGPPublicKey());
+        }
+        List<PGPPublicKey> recipientKeys = new ArrayList<PGPPublicKey>(recipients);
+        for (int i = 0; i < recipients; i++) {
+            recipientKeys.add(keys.get(i % DISTINCT_KEYS));
+        }
+        PGPEncryptor.Builder builder = new PGPEncryptor.Builder(recipientKeys)
+                .setCompression(Compression.NONE)
+                .setArmor(false);
+        if ("parallel".equals(wrapping)) {
+            builder.setParallelKeyWrapping(ForkJoinPool.commonPool());
+        }
+        encryptor = builder.build();
+        message = new byte[1024];
+    }
+
+    @Benchmark
+    public byte[] encrypt() throws Exception {
+        return encryptor.encrypt(message);
+    }
+}
@@ -0,0 +1,112 @@
+package io.github.nosuchcompany.pgplug.benchmarks;
+
+import io.github.nosuchcompany.pgplug.sign.SignedFileProcessor;
+import io.github.nosuchcompany.pgplug.utils.PGPUtils;
+import org.bouncycastle.bcpg.BCPGOutputStream;
+import org.bouncycastle.openpgp.*;
+import org.bouncycastle.openpgp.operator.jcajce.JcaKeyFingerprintCalculator;
+import org.bouncycastle.openpgp.operator.jcajce.JcaPGPContentSignerBuilder;
+import org.bouncycastle.openpgp.operator.jcajce.JcePBESecretKeyDecryptorBuilder;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Signs and verifies files of 1 KiB to 1 GiB.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SignBenchmark {
+
+    private static final char[] pass = "benchmark".toCharArray();
+
+    @Param({"1024", "1048576", "67108864", "1073741824"})
+    public long payloadSize;
+
+    @Param({"true", "false"})
+    public boolean armor;
+
+    private File payload;
+
+    private File signed;
+
+    private PGPSecretKey secretKey;
+
+    private byte[] publicKey;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        ByteArrayOutputStream privateOut = new ByteArrayOutputStream();
+        ByteArrayOutputStream publicOut = new ByteArrayOutputStream();
+        PGPUtils.generateKeyPair(privateOut, publicOut, pass);
+        secretKey = PGPUtils.readSecretKey(new ByteArrayInputStream(privateOut.toByteArray()));
+        publicKey = publicOut.toByteArray();
+
+        payload = Payloads.writeTempFile(payloadSize);
+        signed = File.createTempFile("pgplug-bench", ".sig");
+        signed.deleteOnExit();
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(signed))) {
+            SignedFileProcessor.signFile(payload.getPath(), secretKey, out, pass, armor);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        payload.delete();
+        signed.delete();
+    }
+
+    @Benchmark
+    public long signFile() throws Exception {
+        Payloads.CountingSink sink = new Payloads.CountingSink();
+        SignedFileProcessor.signFile(payload.getPath(), secretKey, sink, pass, armor);
+        return sink.count;
+    }
+
+    /**
+     * The former byte at a time signing loop, the baseline of {@link #signFile()}.
+     */
+    @Benchmark
+    public long signFileBytewise() throws Exception {
+        Payloads.CountingSink sink = new Payloads.CountingSink();
+        PGPPrivateKey pgpPrivKey = secretKey.extractPrivateKey(new JcePBESecretKeyDecryptorBuilder().setProvider("BC").build(pass));
+        PGPSignatureGenerator sGen = new PGPSignatureGenerator(
+                new JcaPGPContentSignerBuilder(secretKey.getPublicKey().getAlgorithm(), PGPUtil.SHA1).setProvider("BC"));
+        sGen.init(PGPSignature.BINARY_DOCUMENT, pgpPrivKey);
+
+        PGPCompressedDataGenerator cGen = new PGPCompressedDataGenerator(PGPCompressedData.ZLIB);
+        BCPGOutputStream bOut = new BCPGOutputStream(cGen.open(sink));
+        sGen.generateOnePassVersion(false).encode(bOut);
+
+        PGPLiteralDataGenerator lGen = new PGPLiteralDataGenerator();
+        OutputStream lOut = lGen.open(bOut, PGPLiteralData.BINARY, payload);
+        try (InputStream fIn = new FileInputStream(payload)) {
+            int ch;
+            while ((ch = fIn.read()) >= 0) {
+                lOut.write(ch);
+                sGen.update((byte) ch);
+            }
+        }
+        lGen.close();
+        sGen.generate().encode(bOut);
+        cGen.close();
+        return sink.count;
+    }
+
+    /**
+     * Verifies including the key ring parsing, as verifyFile with a key stream does.
+     */
+    @Benchmark
+    public boolean verifyFile() throws Exception {
+        PGPPublicKeyRingCollection pgpRing = new PGPPublicKeyRingCollection(
+                PGPUtil.getDecoderStream(new ByteArrayInputStream(publicKey)), new JcaKeyFingerprintCalculator());
+        try (InputStream in = new BufferedInputStream(new FileInputStream(signed), 1 << 16)) {
+            return SignedFileProcessor.verifyFile(in, pgpRing, new Payloads.CountingSink());
+        }
+    }
+}
@@ -0,0 +1,272 @@
+package io.github.nosuchcompany.pgplug.async;
+
+import io.github.nosuchcompany.pgplug.keyPair.KeyPairPGP;
+import io.github.nosuchcompany.pgplug.sign.SignedFileProcessor;
+import io.github.nosuchcompany.pgplug.utils.KeyAlgorithm;
+import io.github.nosuchcompany.pgplug.utils.PGPDecryptor;
+import io.github.nosuchcompany.pgplug.utils.PGPEncryptor;
+import org.bouncycastle.openpgp.PGPPublicKey;
+import org.bouncycastle.openpgp.PGPPublicKeyRingCollection;
+import org.bouncycastle.openpgp.PGPSecretKey;
+
+import java.io.Closeable;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs encrypt, decrypt, sign, verify and key generation off the calling thread and returns
+ * {@link CompletableFuture}s.
+ * At most {@code maxInFlight} operations are queued or running at a time. Beyond that new
+ * operations are not queued but fail at once with a {@link RejectedExecutionException}, so the
+ * caller sees the back-pressure instead of an ever growing queue.
+ * Cancelling a future keeps a queued operation from starting, which frees its slot right away,
+ * and interrupts a running one. The crypto does not stop on an interrupt, so a running operation
+ * keeps its slot until it actually ends.
+ */
+public class AsyncPGP implements Closeable {
+
+    private final Executor executor;
+
+    private final ExecutorService ownExecutor;
+
+    private final Semaphore inFlight;
+
+    private final int maxInFlight;
+
+    /**
+     * Runs on a pool of one daemon thread per core and allows 4 operations per core in flight.
+     */
+    public AsyncPGP() {
+        this(Runtime.getRuntime().availableProcessors(), 4 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Runs on an own pool of daemon threads.
+     *
+     * @param threads     the number of threads of the pool.
+     * @param maxInFlight how many operations may be queued or running at a time.
+     */
+    public AsyncPGP(int threads, int maxInFlight) {
+        this(newPool(threads), maxInFlight, true);
+    }
+
+    /**
+     * Runs on the caller's executor, which is not shut down by {@link #close()}.
+     *
+     * @param executor    runs the operations.
+     * @param maxInFlight how many operations may be queued or running at a time.
+     */
+    public AsyncPGP(Executor executor, int maxInFlight) {
+        this(executor, maxInFlight, false);
+    }
+
+    private AsyncPGP(Executor executor, int maxInFlight, boolean own) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be positive");
+        }
+        this.executor = executor;
+        this.ownExecutor = own ? (ExecutorService) executor : null;
+        this.maxInFlight = maxInFlight;
+        this.inFlight = new Semaphore(maxInFlight);
+    }
+
+    /**
+     * Runs every operation on a virtual thread of its own. Key generation and the ciphers are CPU
+     * bound, so maxInFlight is what keeps the carrier threads from being swamped.
+     *
+     * @param maxInFlight how many operations may be queued or running at a time.
+     * @return an AsyncPGP that shuts its executor down on {@link #close()}.
+     * @throws UnsupportedOperationException if the JVM has no virtual threads (before Java 21).
+     */
+    public static AsyncPGP withVirtualThreads(int maxInFlight) {
+        try {
+            ExecutorService executor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            return new AsyncPGP(executor, maxInFlight, true);
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedOperationException("virtual threads need Java 21 or newer", e);
+        }
+    }
+
+    /**
+     * @return true if {@link #withVirtualThreads(int)} works on this JVM.
+     */
+    public static boolean isVirtualThreadsSupported() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    public CompletableFuture<byte[]> encrypt(final PGPEncryptor encryptor, final byte[] clearData) {
+        return submit(() -> encryptor.encrypt(clearData));
+    }
+
+    /**
+     * @param out     store encrypted data. It is not closed.
+     * @param clearIn The data need to be encrypted, read until end of stream.
+     */
+    public CompletableFuture<Void> encrypt(final PGPEncryptor encryptor, final OutputStream out, final InputStream clearIn) {
+        return submit(() -> {
+            encryptor.encrypt(out, clearIn);
+            return null;
+        });
+    }
+
+    public CompletableFuture<byte[]> encrypt(final byte[] clearData, final Collection<PGPPublicKey> publicKeys) {
+        return submit(() -> new PGPEncryptor.Builder(publicKeys).build().encrypt(clearData));
+    }
+
+    public CompletableFuture<byte[]> decrypt(final PGPDecryptor decryptor, final byte[] encrypted) {
+        return submit(() -> decryptor.decrypt(encrypted));
+    }
+
+    /**
+     * @param out receives the clear text. It is not closed.
+     */
+    public CompletableFuture<Void> decrypt(final PGPDecryptor decryptor, final InputStream encrypted, final OutputStream out) {
+        return submit(() -> {
+            decryptor.decrypt(encrypted, out);
+            return null;
+        });
+    }
+
+    /**
+     * @see SignedFileProcessor#signFile(String, PGPSecretKey, OutputStream, char[], boolean)
+     */
+    public CompletableFuture<Void> signFile(final String fileName, final PGPSecretKey pgpSec, final OutputStream out, final char[] pass, final boolean armor) {
+        return submit(() -> {
+            SignedFileProcessor.signFile(fileName, pgpSec, out, pass, armor);
+            return null;
+        });
+    }
+
+    /**
+     * @see SignedFileProcessor#signDetached(InputStream, PGPSecretKey, OutputStream, char[], boolean)
+     */
+    public CompletableFuture<Void> signDetached(final InputStream in, final PGPSecretKey pgpSec, final OutputStream sigOut, final char[] pass, final boolean armor) {
+        return submit(() -> {
+            SignedFileProcessor.signDetached(in, pgpSec, sigOut, pass, armor);
+            return null;
+        });
+    }
+
+    /**
+     * @see SignedFileProcessor#verifyFile(InputStream, PGPPublicKeyRingCollection, OutputStream)
+     */
+    public CompletableFuture<Boolean> verifyFile(final InputStream in, final PGPPublicKeyRingCollection pgpRing, final OutputStream out) {
+        return submit(() -> SignedFileProcessor.verifyFile(in, pgpRing, out));
+    }
+
+    /**
+     * @see SignedFileProcessor#verifyDetached(InputStream, InputStream, PGPPublicKeyRingCollection)
+     */
+    public CompletableFuture<Boolean> verifyDetached(final InputStream in, final InputStream sigIn, final PGPPublicKeyRingCollection pgpRing) {
+        return submit(() -> SignedFileProcessor.verifyDetached(in, sigIn, pgpRing));
+    }
+
+    public CompletableFuture<KeyPairPGP> generateKeyPair(final char[] pass, final KeyAlgorithm algorithm) {
+        return submit(() -> new KeyPairPGP(pass, algorithm));
+    }
+
+    /**
+     * @return the number of operations queued or running.
+     */
+    public int inFlight() {
+        return maxInFlight - inFlight.availablePermits();
+    }
+
+    /**
+     * Shuts down the own pool or virtual thread executor; running operations still complete.
+     * A caller supplied executor is left alone.
+     */
+    @Override
+    public void close() {
+        if (ownExecutor != null) {
+            ownExecutor.shutdown();
+        }
+    }
+
+    private <T> CompletableFuture<T> submit(final Callable<T> operation) {
+        final TaskFuture<T> future = new TaskFuture<T>();
+        if (!inFlight.tryAcquire()) {
+            future.completeExceptionally(new RejectedExecutionException(maxInFlight + " operations in flight"));
+            return future;
+        }
+        // whoever claims the permit releases it: the task body once it starts, done() if it never does
+        final AtomicBoolean claimed = new AtomicBoolean();
+        FutureTask<T> task = new FutureTask<T>(() -> {
+            if (!claimed.compareAndSet(false, true)) {
+                throw new CancellationException();
+            }
+            try {
+                return operation.call();
+            } finally {
+                inFlight.release();
+            }
+        }) {
+            @Override
+            protected void done() {
+                if (isCancelled()) {
+                    if (claimed.compareAndSet(false, true)) {
+                        inFlight.release();
+                    }
+                    future.cancel(false);
+                    return;
+                }
+                try {
+                    future.complete(get());
+                } catch (ExecutionException e) {
+                    future.completeExceptionally(e.getCause());
+                } catch (InterruptedException e) {
+                    // done() is only called once the task finished, get() does not wait
+                    future.completeExceptionally(e);
+                }
+            }
+        };
+        future.task = task;
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            claimed.set(true);
+            inFlight.release();
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    private static ExecutorService newPool(int threads) {
+        return Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "pgplug-async-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Passes a cancellation on to the task, which CompletableFuture alone would not do.
+     */
+    private static final class TaskFuture<T> extends CompletableFuture<T> {
+        private volatile FutureTask<T> task;
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            FutureTask<T> task = this.task;
+            if (task != null) {
+                task.cancel(true);
+            }
+            return cancelled;
+        }
+    }
+}
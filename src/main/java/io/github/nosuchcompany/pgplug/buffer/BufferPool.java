@@ -0,0 +1,220 @@
+package io.github.nosuchcompany.pgplug.buffer;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A pool of I/O buffers, heap arrays and direct {@link ByteBuffer}s, which the encrypt, decrypt,
+ * sign and verify paths draw from instead of allocating fresh buffers for every operation.
+ * Buffers come in power of two sizes from 4 KiB to 64 MiB; a request is rounded up to the next
+ * size, larger requests are allocated exactly and never kept. Released buffers are wiped, since they held clear text, and kept for the next request
+ * as long as the retained memory stays below the cap; beyond it they are left to the garbage
+ * collector. A buffer must be released at most once and not be used afterwards.
+ * All methods are safe to be called from several threads.
+ */
+public final class BufferPool {
+
+    public static final long DEFAULT_MAX_RETAINED_BYTES = 32L << 20;
+
+    private static final int MIN_SHIFT = 12;
+
+    private static final int MAX_SHIFT = 26;
+
+    private static volatile BufferPool defaultPool = new BufferPool(DEFAULT_MAX_RETAINED_BYTES, false);
+
+    private final long maxRetainedBytes;
+
+    private final boolean preferDirect;
+
+    private final ConcurrentLinkedQueue<byte[]>[] arrays;
+
+    private final ConcurrentLinkedQueue<ByteBuffer>[] directBuffers;
+
+    private final AtomicLong retainedBytes = new AtomicLong();
+    private final AtomicLong acquired = new AtomicLong();
+    private final AtomicLong reused = new AtomicLong();
+    private final AtomicLong released = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * @param maxRetainedBytes how many bytes of released buffers are kept at most, 0 disables pooling.
+     * @param preferDirect     whether {@link #acquireBuffer(int)} hands out direct buffers.
+     */
+    @SuppressWarnings("unchecked")
+    public BufferPool(long maxRetainedBytes, boolean preferDirect) {
+        if (maxRetainedBytes < 0) {
+            throw new IllegalArgumentException("maxRetainedBytes must not be negative");
+        }
+        this.maxRetainedBytes = maxRetainedBytes;
+        this.preferDirect = preferDirect;
+        this.arrays = new ConcurrentLinkedQueue[MAX_SHIFT + 1];
+        this.directBuffers = new ConcurrentLinkedQueue[MAX_SHIFT + 1];
+        for (int shift = MIN_SHIFT; shift <= MAX_SHIFT; shift++) {
+            arrays[shift] = new ConcurrentLinkedQueue<byte[]>();
+            directBuffers[shift] = new ConcurrentLinkedQueue<ByteBuffer>();
+        }
+    }
+
+    /**
+     * @return the pool the library uses, heap backed and retaining up to 32 MiB by default.
+     */
+    public static BufferPool getDefault() {
+        return defaultPool;
+    }
+
+    public static void setDefault(BufferPool pool) {
+        if (pool == null) {
+            throw new IllegalArgumentException("pool must not be null");
+        }
+        defaultPool = pool;
+    }
+
+    /**
+     * @param minSize the size needed.
+     * @return an array of at least minSize bytes, its length a power of two up to 64 MiB.
+     */
+    public byte[] acquire(int minSize) {
+        acquired.incrementAndGet();
+        int shift = shift(minSize);
+        if (shift > MAX_SHIFT) {
+            return new byte[minSize];
+        }
+        byte[] array = arrays[shift].poll();
+        if (array != null) {
+            retainedBytes.addAndGet(-array.length);
+            reused.incrementAndGet();
+            return array;
+        }
+        return new byte[1 << shift];
+    }
+
+    /**
+     * Returns an array for reuse. It is wiped.
+     *
+     * @param array an array from {@link #acquire(int)}, or null.
+     */
+    public void release(byte[] array) {
+        if (array == null) {
+            return;
+        }
+        released.incrementAndGet();
+        int shift = Integer.numberOfTrailingZeros(array.length);
+        if (array.length != 1 << shift || shift < MIN_SHIFT || shift > MAX_SHIFT || !retain(array.length)) {
+            dropped.incrementAndGet();
+            return;
+        }
+        Arrays.fill(array, (byte) 0);
+        arrays[shift].offer(array);
+    }
+
+    /**
+     * @param minSize the size needed.
+     * @return a cleared buffer of at least minSize bytes, direct if the pool prefers direct buffers.
+     */
+    public ByteBuffer acquireBuffer(int minSize) {
+        return preferDirect ? acquireDirect(minSize) : ByteBuffer.wrap(acquire(minSize));
+    }
+
+    /**
+     * @param minSize the size needed.
+     * @return a cleared direct buffer of at least minSize bytes.
+     */
+    public ByteBuffer acquireDirect(int minSize) {
+        acquired.incrementAndGet();
+        int shift = shift(minSize);
+        if (shift > MAX_SHIFT) {
+            return ByteBuffer.allocateDirect(minSize);
+        }
+        ByteBuffer buffer = directBuffers[shift].poll();
+        if (buffer != null) {
+            retainedBytes.addAndGet(-buffer.capacity());
+            reused.incrementAndGet();
+            buffer.clear();
+            return buffer;
+        }
+        return ByteBuffer.allocateDirect(1 << shift);
+    }
+
+    /**
+     * Returns a buffer for reuse. It is wiped.
+     *
+     * @param buffer a buffer from {@link #acquireBuffer(int)} or {@link #acquireDirect(int)}, or null.
+     */
+    public void releaseBuffer(ByteBuffer buffer) {
+        if (buffer == null) {
+            return;
+        }
+        if (!buffer.isDirect()) {
+            release(buffer.array());
+            return;
+        }
+        released.incrementAndGet();
+        int shift = Integer.numberOfTrailingZeros(buffer.capacity());
+        if (buffer.capacity() != 1 << shift || shift < MIN_SHIFT || shift > MAX_SHIFT || !retain(buffer.capacity())) {
+            dropped.incrementAndGet();
+            return;
+        }
+        buffer.clear();
+        while (buffer.remaining() >= 8) {
+            buffer.putLong(0L);
+        }
+        while (buffer.hasRemaining()) {
+            buffer.put((byte) 0);
+        }
+        buffer.clear();
+        directBuffers[shift].offer(buffer);
+    }
+
+    /**
+     * Drops every retained buffer.
+     */
+    public void clear() {
+        for (int shift = MIN_SHIFT; shift <= MAX_SHIFT; shift++) {
+            byte[] array;
+            while ((array = arrays[shift].poll()) != null) {
+                retainedBytes.addAndGet(-array.length);
+            }
+            ByteBuffer buffer;
+            while ((buffer = directBuffers[shift].poll()) != null) {
+                retainedBytes.addAndGet(-buffer.capacity());
+            }
+        }
+    }
+
+    public long getMaxRetainedBytes() {
+        return maxRetainedBytes;
+    }
+
+    public boolean isPreferDirect() {
+        return preferDirect;
+    }
+
+    public PoolStats stats() {
+        return new PoolStats(acquired.get(), reused.get(), released.get(), dropped.get(), retainedBytes.get());
+    }
+
+    private boolean retain(int size) {
+        long retained;
+        do {
+            retained = retainedBytes.get();
+            if (retained + size > maxRetainedBytes) {
+                return false;
+            }
+        } while (!retainedBytes.compareAndSet(retained, retained + size));
+        return true;
+    }
+
+    private static int shift(int minSize) {
+        if (minSize < 0) {
+            throw new IllegalArgumentException("size must not be negative");
+        }
+        return Math.max(MIN_SHIFT, 32 - Integer.numberOfLeadingZeros(Math.max(minSize, 1) - 1));
+    }
+
+    @Override
+    public String toString() {
+        return "BufferPool{maxRetainedBytes=" + maxRetainedBytes + ", preferDirect=" + preferDirect + ", " + stats() + "}";
+    }
+}
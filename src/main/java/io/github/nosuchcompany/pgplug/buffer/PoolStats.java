@@ -0,0 +1,66 @@
+package io.github.nosuchcompany.pgplug.buffer;
+
+/**
+ * An immutable snapshot of the counters of a {@link BufferPool}.
+ */
+public class PoolStats {
+    private final long acquireCount;
+    private final long reuseCount;
+    private final long releaseCount;
+    private final long dropCount;
+    private final long retainedBytes;
+
+    public PoolStats(long acquireCount, long reuseCount, long releaseCount, long dropCount, long retainedBytes) {
+        this.acquireCount = acquireCount;
+        this.reuseCount = reuseCount;
+        this.releaseCount = releaseCount;
+        this.dropCount = dropCount;
+        this.retainedBytes = retainedBytes;
+    }
+
+    public long getAcquireCount() {
+        return acquireCount;
+    }
+
+    /**
+     * @return the acquisitions answered with a retained buffer.
+     */
+    public long getReuseCount() {
+        return reuseCount;
+    }
+
+    /**
+     * @return the acquisitions that allocated a new buffer.
+     */
+    public long getAllocationCount() {
+        return acquireCount - reuseCount;
+    }
+
+    public long getReleaseCount() {
+        return releaseCount;
+    }
+
+    /**
+     * @return the released buffers that were not kept, because of the retention cap or their size.
+     */
+    public long getDropCount() {
+        return dropCount;
+    }
+
+    public long getRetainedBytes() {
+        return retainedBytes;
+    }
+
+    /**
+     * @return the share of acquisitions that reused a buffer, 0 if there was none yet.
+     */
+    public double getReuseRate() {
+        return acquireCount == 0 ? 0 : (double) reuseCount / acquireCount;
+    }
+
+    @Override
+    public String toString() {
+        return "PoolStats{acquired=" + acquireCount + ", reused=" + reuseCount + ", released=" + releaseCount
+                + ", dropped=" + dropCount + ", retainedBytes=" + retainedBytes + "}";
+    }
+}
@@ -0,0 +1,118 @@
+package io.github.nosuchcompany.pgplug.buffer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An in-memory output stream that collects the written bytes in pooled chunks instead of one
+ * array that is doubled and copied as it grows. {@link #toByteArray()} copies the data once into
+ * an array of the exact size; {@link #close()} returns the chunks to the pool, after which the
+ * stream must not be used anymore.
+ * Instances are not thread safe.
+ */
+public class PooledOutputStream extends OutputStream {
+
+    private static final int CHUNK_SIZE = 1 << 16;
+
+    private final BufferPool pool;
+
+    private final List<byte[]> chunks = new ArrayList<byte[]>();
+
+    private byte[] current;
+
+    private int pos;
+
+    private long size;
+
+    public PooledOutputStream() {
+        this(BufferPool.getDefault());
+    }
+
+    public PooledOutputStream(BufferPool pool) {
+        this.pool = pool;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureCapacity();
+        current[pos++] = (byte) b;
+        size++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            ensureCapacity();
+            int n = Math.min(len, current.length - pos);
+            System.arraycopy(b, off, current, pos, n);
+            pos += n;
+            off += n;
+            len -= n;
+            size += n;
+        }
+    }
+
+    /**
+     * @return the number of bytes written.
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * @return a copy of the written bytes.
+     * @throws IllegalStateException if more than 2 GiB were written.
+     */
+    public byte[] toByteArray() {
+        if (size > Integer.MAX_VALUE - 8) {
+            throw new IllegalStateException("too large for an array: " + size + " bytes");
+        }
+        byte[] out = new byte[(int) size];
+        int off = 0;
+        for (byte[] chunk : chunks) {
+            int n = (int) Math.min(chunk.length, size - off);
+            System.arraycopy(chunk, 0, out, off, n);
+            off += n;
+        }
+        return out;
+    }
+
+    /**
+     * Writes the written bytes to another stream.
+     *
+     * @param out receives the bytes.
+     * @throws IOException on a problem writing the stream.
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        long left = size;
+        for (byte[] chunk : chunks) {
+            int n = (int) Math.min(chunk.length, left);
+            out.write(chunk, 0, n);
+            left -= n;
+        }
+    }
+
+    /**
+     * Returns the chunks to the pool.
+     */
+    @Override
+    public void close() {
+        for (byte[] chunk : chunks) {
+            pool.release(chunk);
+        }
+        chunks.clear();
+        current = null;
+        pos = 0;
+        size = 0;
+    }
+
+    private void ensureCapacity() {
+        if (current == null || pos == current.length) {
+            current = pool.acquire(CHUNK_SIZE);
+            chunks.add(current);
+            pos = 0;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package io.github.nosuchcompany.pgplug.cache;
+
+import io.github.nosuchcompany.pgplug.utils.PGPUtils;
+import org.bouncycastle.openpgp.PGPPublicKey;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded LRU cache of parsed encryption keys, keyed by the SHA-256 digest of the raw
+ * (armored or binary) key bytes they were read from.
+ * All methods are safe to be called from several threads. Parsing a missing key happens
+ * outside of the lock, so a slow parse never blocks lookups of other keys.
+ */
+public class PublicKeyCache {
+
+    public static final int DEFAULT_MAX_SIZE = 1024;
+
+    private final int maxSize;
+
+    private final LinkedHashMap<ByteBuffer, PGPPublicKey> keys;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public PublicKeyCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * @param maxSize the number of keys kept before the least recently used one is dropped.
+     */
+    public PublicKeyCache(int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be positive");
+        }
+        this.maxSize = maxSize;
+        this.keys = new LinkedHashMap<ByteBuffer, PGPPublicKey>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ByteBuffer, PGPPublicKey> eldest) {
+                if (size() > PublicKeyCache.this.maxSize) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns the first encryption key of the given key ring bytes, parsing them only
+     * if they were not seen before.
+     *
+     * @param data the raw public key ring, armored or binary.
+     * @return the first public key suitable for encryption.
+     */
+    public PGPPublicKey get(byte[] data) {
+        ByteBuffer digest = digest(data);
+        synchronized (keys) {
+            PGPPublicKey key = keys.get(digest);
+            if (key != null) {
+                hits.incrementAndGet();
+                return key;
+            }
+        }
+        misses.incrementAndGet();
+        PGPPublicKey key = PGPUtils.readPublicKey(new ByteArrayInputStream(data));
+        synchronized (keys) {
+            keys.put(digest, key);
+        }
+        return key;
+    }
+
+    /**
+     * Drops the key parsed from the given raw bytes.
+     *
+     * @param data the raw public key ring.
+     */
+    public void invalidate(byte[] data) {
+        ByteBuffer digest = digest(data);
+        synchronized (keys) {
+            keys.remove(digest);
+        }
+    }
+
+    /**
+     * Drops every entry holding a key with the fingerprint of the given key.
+     *
+     * @param key a key with the fingerprint to drop.
+     */
+    public void invalidate(PGPPublicKey key) {
+        byte[] fingerprint = key.getFingerprint();
+        synchronized (keys) {
+            Iterator<PGPPublicKey> it = keys.values().iterator();
+            while (it.hasNext()) {
+                if (Arrays.equals(fingerprint, it.next().getFingerprint())) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    public void invalidateAll() {
+        synchronized (keys) {
+            keys.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (keys) {
+            return keys.size();
+        }
+    }
+
+    public CacheStats stats() {
+        return new CacheStats(hits.get(), misses.get(), evictions.get(), size());
+    }
+
+    private static ByteBuffer digest(byte[] data) {
+        try {
+            return ByteBuffer.wrap(MessageDigest.getInstance("SHA-256").digest(data));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
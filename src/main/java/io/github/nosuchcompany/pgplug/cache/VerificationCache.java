@@ -0,0 +1,360 @@
+package io.github.nosuchcompany.pgplug.cache;
+
+import io.github.nosuchcompany.pgplug.buffer.BufferPool;
+import io.github.nosuchcompany.pgplug.sign.SignedFileProcessor;
+import org.bouncycastle.openpgp.*;
+import org.bouncycastle.openpgp.jcajce.JcaPGPObjectFactory;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded cache of successful signature verifications, keyed by the SHA-256 digest of the
+ * signed content and the fingerprint of the signer's key.
+ * A repeated verification of unchanged content only hashes it and reads the signer's key ID from
+ * the first packets; decompression, payload hashing and the public key operation are skipped.
+ * Only valid signatures are cached. A hit still needs the signer's key in the given key ring with
+ * the same fingerprint and without a revocation, so a changed key ring is honoured right away;
+ * {@link #invalidate(PGPPublicKey)} and {@link #retainAll(PGPPublicKeyRingCollection)} free the
+ * entries of keys that are gone. Entries expire after a fixed time and the least recently used
+ * entry is dropped when the cache is full.
+ * All methods are safe to be called from several threads; verifications run outside of the lock.
+ */
+public class VerificationCache {
+
+    public static final int DEFAULT_MAX_SIZE = 10000;
+
+    public static final long DEFAULT_TTL_MINUTES = 60;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final int maxSize;
+
+    private final long ttlNanos;
+
+    private final LinkedHashMap<Key, Long> entries;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public VerificationCache() {
+        this(DEFAULT_MAX_SIZE, DEFAULT_TTL_MINUTES, TimeUnit.MINUTES);
+    }
+
+    /**
+     * @param maxSize the number of verifications kept before the least recently used one is dropped.
+     * @param ttl     how long a verification is trusted.
+     * @param unit    the unit of the ttl.
+     */
+    public VerificationCache(int maxSize, long ttl, TimeUnit unit) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be positive");
+        }
+        if (ttl <= 0) {
+            throw new IllegalArgumentException("ttl must be positive");
+        }
+        this.maxSize = maxSize;
+        this.ttlNanos = unit.toNanos(ttl);
+        this.entries = new LinkedHashMap<Key, Long>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Long> eldest) {
+                if (size() > VerificationCache.this.maxSize) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Verifies a signed file as {@link SignedFileProcessor#verifyFile(InputStream, PGPPublicKeyRingCollection, OutputStream)}
+     * does, without writing out the payload.
+     *
+     * @param signed  the signed file.
+     * @param pgpRing the public key ring collection holding the signer's key.
+     * @return true if the signature is valid, false if it is not or the signer's key is not in the ring.
+     * @throws IOException  on a problem reading the signed file.
+     * @throws PGPException if the signed file could not be parsed.
+     */
+    public boolean verifyFile(byte[] signed, PGPPublicKeyRingCollection pgpRing) throws IOException, PGPException {
+        MessageDigest lookup = sha256();
+        DigestInputStream in = new UnmarkableDigestInputStream(new ByteArrayInputStream(signed), lookup);
+        long keyId = onePassKeyId(in);
+        drain(in);
+        return verify(lookup.digest(), keyId, pgpRing, md -> {
+            DigestInputStream verified = new UnmarkableDigestInputStream(new ByteArrayInputStream(signed), md);
+            boolean valid = SignedFileProcessor.verifyFile(verified, pgpRing, NullOutputStream.INSTANCE);
+            drain(verified);
+            return valid;
+        });
+    }
+
+    /**
+     * Verifies a signed file as {@link SignedFileProcessor#verifyFile(InputStream, PGPPublicKeyRingCollection, OutputStream)}
+     * does, without writing out the payload. The file is read twice on a miss.
+     *
+     * @param signed  the signed file.
+     * @param pgpRing the public key ring collection holding the signer's key.
+     * @return true if the signature is valid, false if it is not or the signer's key is not in the ring.
+     * @throws IOException  on a problem reading the signed file.
+     * @throws PGPException if the signed file could not be parsed.
+     */
+    public boolean verifyFile(Path signed, PGPPublicKeyRingCollection pgpRing) throws IOException, PGPException {
+        MessageDigest lookup = sha256();
+        long keyId;
+        try (DigestInputStream in = open(signed, lookup)) {
+            keyId = onePassKeyId(in);
+            drain(in);
+        }
+        return verify(lookup.digest(), keyId, pgpRing, md -> {
+            try (DigestInputStream in = open(signed, md)) {
+                boolean valid = SignedFileProcessor.verifyFile(in, pgpRing, NullOutputStream.INSTANCE);
+                drain(in);
+                return valid;
+            }
+        });
+    }
+
+    /**
+     * Verifies a detached signature as {@link SignedFileProcessor#verifyDetached(InputStream, InputStream, PGPPublicKeyRingCollection)}
+     * does. The content digest covers the file and the signature. The file is read twice on a miss.
+     *
+     * @param file      the signed file.
+     * @param signature the detached signature, armored or binary.
+     * @param pgpRing   the public key ring collection holding the signer's key.
+     * @return true if the signature is valid, false if it is not or the signer's key is not in the ring.
+     * @throws IOException  on a problem reading the file.
+     * @throws PGPException if the signature could not be parsed.
+     */
+    public boolean verifyDetached(Path file, byte[] signature, PGPPublicKeyRingCollection pgpRing) throws IOException, PGPException {
+        byte[] sig = signature.clone();
+        MessageDigest lookup = sha256();
+        try (DigestInputStream in = open(file, lookup)) {
+            drain(in);
+        }
+        lookup.update(sig);
+        return verify(lookup.digest(), signatureKeyId(sig), pgpRing, md -> {
+            boolean valid;
+            try (DigestInputStream in = open(file, md)) {
+                valid = SignedFileProcessor.verifyDetached(in, new ByteArrayInputStream(sig), pgpRing);
+                drain(in);
+            }
+            md.update(sig);
+            return valid;
+        });
+    }
+
+    /**
+     * Looks the verification up under the digest of a first read and runs it on a miss. The
+     * verification digests exactly the bytes it verifies, and only that digest is cached, and only
+     * if it matches the one of the first read, which also gave the key ID: content that changed
+     * between the reads is verified but never cached.
+     */
+    private boolean verify(byte[] digest, long keyId, PGPPublicKeyRingCollection pgpRing, Verification verification) throws IOException, PGPException {
+        PGPPublicKey signer = pgpRing.getPublicKey(keyId);
+        if (signer == null || signer.hasRevocation()) {
+            if (signer != null) {
+                invalidate(signer);
+            }
+            misses.incrementAndGet();
+            return verification.verify(sha256());
+        }
+        long now = System.nanoTime();
+        synchronized (entries) {
+            Key lookup = new Key(digest, signer.getFingerprint());
+            Long expiresAt = entries.get(lookup);
+            if (expiresAt != null) {
+                if (expiresAt - now > 0) {
+                    hits.incrementAndGet();
+                    return true;
+                }
+                entries.remove(lookup);
+                evictions.incrementAndGet();
+            }
+        }
+        misses.incrementAndGet();
+        MessageDigest md = sha256();
+        boolean verified = verification.verify(md);
+        byte[] verifiedDigest = md.digest();
+        if (verified && MessageDigest.isEqual(verifiedDigest, digest)) {
+            synchronized (entries) {
+                entries.put(new Key(verifiedDigest, signer.getFingerprint()), now + ttlNanos);
+            }
+        }
+        return verified;
+    }
+
+    /**
+     * Drops every verification made with the given key, e.g. after it was revoked.
+     *
+     * @param key a key with the fingerprint to drop.
+     */
+    public void invalidate(PGPPublicKey key) {
+        ByteBuffer fingerprint = ByteBuffer.wrap(key.getFingerprint());
+        synchronized (entries) {
+            Iterator<Key> it = entries.keySet().iterator();
+            while (it.hasNext()) {
+                if (it.next().fingerprint.equals(fingerprint)) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops every verification made with a key that is not in the new key ring or is revoked in it.
+     *
+     * @param pgpRing the key ring that replaces the old one.
+     * @throws PGPException if the key ring can not be searched.
+     */
+    public void retainAll(PGPPublicKeyRingCollection pgpRing) throws PGPException {
+        synchronized (entries) {
+            Iterator<Key> it = entries.keySet().iterator();
+            while (it.hasNext()) {
+                PGPPublicKey key = pgpRing.getPublicKey(it.next().fingerprint.array());
+                if (key == null || key.hasRevocation()) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    public void invalidateAll() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public CacheStats stats() {
+        return new CacheStats(hits.get(), misses.get(), evictions.get(), size());
+    }
+
+    private static long onePassKeyId(InputStream in) throws IOException, PGPException {
+        JcaPGPObjectFactory pgpFact = new JcaPGPObjectFactory(PGPUtil.getDecoderStream(in));
+        Object o = pgpFact.nextObject();
+        if (o instanceof PGPCompressedData) {
+            pgpFact = new JcaPGPObjectFactory(((PGPCompressedData) o).getDataStream());
+            o = pgpFact.nextObject();
+        }
+        if (!(o instanceof PGPOnePassSignatureList)) {
+            throw new PGPException("not a signed file.");
+        }
+        return ((PGPOnePassSignatureList) o).get(0).getKeyID();
+    }
+
+    private static long signatureKeyId(byte[] signature) throws IOException, PGPException {
+        JcaPGPObjectFactory pgpFact = new JcaPGPObjectFactory(PGPUtil.getDecoderStream(new ByteArrayInputStream(signature)));
+        Object o = pgpFact.nextObject();
+        if (o instanceof PGPCompressedData) {
+            pgpFact = new JcaPGPObjectFactory(((PGPCompressedData) o).getDataStream());
+            o = pgpFact.nextObject();
+        }
+        if (!(o instanceof PGPSignatureList)) {
+            throw new PGPException("not a detached signature.");
+        }
+        return ((PGPSignatureList) o).get(0).getKeyID();
+    }
+
+    private static DigestInputStream open(Path file, MessageDigest md) throws IOException {
+        return new UnmarkableDigestInputStream(new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE), md);
+    }
+
+    /**
+     * Reads the rest of the stream, which the parsers may leave unread, e.g. an armor trailer, so
+     * its digest covers the whole content.
+     */
+    private static void drain(DigestInputStream in) throws IOException {
+        BufferPool pool = BufferPool.getDefault();
+        byte[] buffer = pool.acquire(BUFFER_SIZE);
+        try {
+            while (in.read(buffer) >= 0) {
+                // only digested
+            }
+        } finally {
+            pool.release(buffer);
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private interface Verification {
+        /**
+         * @param md digests the bytes the verification read.
+         */
+        boolean verify(MessageDigest md) throws IOException, PGPException;
+    }
+
+    private static final class Key {
+        private final ByteBuffer digest;
+        private final ByteBuffer fingerprint;
+
+        Key(byte[] digest, byte[] fingerprint) {
+            this.digest = ByteBuffer.wrap(digest);
+            this.fingerprint = ByteBuffer.wrap(fingerprint);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return digest.equals(other.digest) && fingerprint.equals(other.fingerprint);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * digest.hashCode() + fingerprint.hashCode();
+        }
+    }
+
+    /**
+     * The decoder marks and resets a stream that supports it, which would digest the reread bytes twice.
+     */
+    private static final class UnmarkableDigestInputStream extends DigestInputStream {
+        UnmarkableDigestInputStream(InputStream in, MessageDigest md) {
+            super(in, md);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+
+    private static final class NullOutputStream extends OutputStream {
+        private static final NullOutputStream INSTANCE = new NullOutputStream();
+
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    }
+}
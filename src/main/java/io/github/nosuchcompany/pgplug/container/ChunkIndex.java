@@ -0,0 +1,145 @@
+package io.github.nosuchcompany.pgplug.container;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * The index trailer of a chunked container.
+ * <pre>
+ * "PGPLUGC1"                                   magic
+ * key block                                    the content key, encrypted to the recipients
+ * chunk 0 .. chunk n-1                         one encrypted message per chunk
+ * version, chunk size, plain length,
+ * key block offset and length, chunk count,
+ * offset and length of every chunk             the index
+ * index offset, "PGPLUGI1"                     the fixed size tail
+ * </pre>
+ * All numbers are big endian.
+ */
+final class ChunkIndex {
+
+    static final byte[] MAGIC = "PGPLUGC1".getBytes(StandardCharsets.US_ASCII);
+
+    static final byte[] TRAILER_MAGIC = "PGPLUGI1".getBytes(StandardCharsets.US_ASCII);
+
+    private static final int VERSION = 1;
+
+    private static final int TAIL_SIZE = 8 + 8;
+
+    final int chunkSize;
+    final long plainLength;
+    final long keyBlockOffset;
+    final int keyBlockLength;
+    final long[] offsets;
+    final int[] lengths;
+
+    ChunkIndex(int chunkSize, long plainLength, long keyBlockOffset, int keyBlockLength, long[] offsets, int[] lengths) {
+        this.chunkSize = chunkSize;
+        this.plainLength = plainLength;
+        this.keyBlockOffset = keyBlockOffset;
+        this.keyBlockLength = keyBlockLength;
+        this.offsets = offsets;
+        this.lengths = lengths;
+    }
+
+    int chunkCount() {
+        return offsets.length;
+    }
+
+    /**
+     * @return the number of clear text bytes in the chunk, only the last one may be short.
+     */
+    int plainLength(int chunk) {
+        return chunk < offsets.length - 1 ? chunkSize : (int) (plainLength - (long) chunkSize * chunk);
+    }
+
+    /**
+     * Writes the index and the tail.
+     *
+     * @param out         the container stream.
+     * @param indexOffset the position of the index in the container.
+     */
+    void write(OutputStream out, long indexOffset) throws IOException {
+        DataOutputStream dOut = new DataOutputStream(new BufferedOutputStream(out));
+        dOut.writeInt(VERSION);
+        dOut.writeInt(chunkSize);
+        dOut.writeLong(plainLength);
+        dOut.writeLong(keyBlockOffset);
+        dOut.writeInt(keyBlockLength);
+        dOut.writeInt(offsets.length);
+        for (int i = 0; i < offsets.length; i++) {
+            dOut.writeLong(offsets[i]);
+            dOut.writeInt(lengths[i]);
+        }
+        dOut.writeLong(indexOffset);
+        dOut.write(TRAILER_MAGIC);
+        dOut.flush();
+    }
+
+    /**
+     * Reads the index of a container.
+     *
+     * @param channel the container.
+     * @return the index.
+     * @throws IOException if the container is not readable or has no valid index.
+     */
+    static ChunkIndex read(SeekableByteChannel channel) throws IOException {
+        long size = channel.size();
+        if (size < MAGIC.length + TAIL_SIZE) {
+            throw new EOFException("not a chunked container: too short");
+        }
+        if (!Arrays.equals(MAGIC, readFully(channel, 0, MAGIC.length).array())) {
+            throw new IOException("not a chunked container: wrong magic");
+        }
+        ByteBuffer tail = readFully(channel, size - TAIL_SIZE, TAIL_SIZE);
+        long indexOffset = tail.getLong();
+        byte[] trailerMagic = new byte[TRAILER_MAGIC.length];
+        tail.get(trailerMagic);
+        if (!Arrays.equals(TRAILER_MAGIC, trailerMagic) || indexOffset < MAGIC.length || indexOffset > size - TAIL_SIZE) {
+            throw new IOException("chunked container has no valid index");
+        }
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+                readFully(channel, indexOffset, (int) (size - TAIL_SIZE - indexOffset)).array()));
+        if (in.readInt() != VERSION) {
+            throw new IOException("unsupported chunked container version");
+        }
+        int chunkSize = in.readInt();
+        long plainLength = in.readLong();
+        long keyBlockOffset = in.readLong();
+        int keyBlockLength = in.readInt();
+        int count = in.readInt();
+        if (keyBlockOffset < MAGIC.length || keyBlockLength < 0 || keyBlockOffset + keyBlockLength > indexOffset
+                || chunkSize < 1 || plainLength < 0 || count != Math.max(1, (plainLength + chunkSize - 1) / chunkSize)) {
+            throw new IOException("chunked container has an invalid index");
+        }
+        long[] offsets = new long[count];
+        int[] lengths = new int[count];
+        for (int i = 0; i < count; i++) {
+            offsets[i] = in.readLong();
+            lengths[i] = in.readInt();
+            if (offsets[i] < MAGIC.length || lengths[i] < 0 || offsets[i] + lengths[i] > indexOffset) {
+                throw new IOException("chunked container has an invalid index");
+            }
+        }
+        return new ChunkIndex(chunkSize, plainLength, keyBlockOffset, keyBlockLength, offsets, lengths);
+    }
+
+    /**
+     * Reads a region of the channel. Callers sharing a channel between threads synchronize on it.
+     */
+    static ByteBuffer readFully(SeekableByteChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        channel.position(position);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("chunked container is truncated");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+}
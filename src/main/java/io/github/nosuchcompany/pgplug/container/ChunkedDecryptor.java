@@ -0,0 +1,234 @@
+package io.github.nosuchcompany.pgplug.container;
+
+import io.github.nosuchcompany.pgplug.utils.CryptoProviders;
+import io.github.nosuchcompany.pgplug.utils.PGPDecryptor;
+import org.bouncycastle.openpgp.*;
+import org.bouncycastle.openpgp.jcajce.JcaPGPObjectFactory;
+import org.bouncycastle.openpgp.operator.PGPDigestCalculatorProvider;
+import org.bouncycastle.openpgp.operator.jcajce.JcaPGPDigestCalculatorProviderBuilder;
+import org.bouncycastle.openpgp.operator.jcajce.JcePBEDataDecryptorFactoryBuilder;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.Provider;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Reads a container written by {@link ChunkedEncryptor}.
+ * Opening a container reads its index and decrypts the content key with the secret key, once.
+ * After that any byte range can be read by decrypting only the chunks it touches, and the whole
+ * container can be decrypted with the chunks spread over the executor.
+ * Every chunk is integrity protected and carries its position, so chunks that are swapped,
+ * replayed from another position or dropped from the end are detected.
+ * Instances are safe to be shared between threads; reads of the channel are serialized, the
+ * decryption is not.
+ */
+public class ChunkedDecryptor implements Closeable {
+
+    private final SeekableByteChannel channel;
+
+    private final ChunkIndex index;
+
+    private final char[] passPhrase;
+
+    private final PGPDigestCalculatorProvider digestCalculatorProvider;
+
+    private final Provider contentProvider;
+
+    private final Executor executor;
+
+    private final int window;
+
+    /**
+     * Opens a container file, decrypting on the common fork join pool.
+     *
+     * @param container the container file.
+     * @param decryptor unlocks the content key.
+     * @throws IOException  if the file can not be read or is not a container.
+     * @throws PGPException if the content key can not be decrypted.
+     */
+    public ChunkedDecryptor(Path container, PGPDecryptor decryptor) throws IOException, PGPException {
+        this(FileChannel.open(container, StandardOpenOption.READ), decryptor, ForkJoinPool.commonPool(), Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param channel     the container, closed by {@link #close()}.
+     * @param decryptor   unlocks the content key.
+     * @param executor    runs the chunk decryption.
+     * @param parallelism the number of threads of the executor used at once.
+     * @throws IOException  if the channel can not be read or is not a container.
+     * @throws PGPException if the content key can not be decrypted.
+     */
+    public ChunkedDecryptor(SeekableByteChannel channel, PGPDecryptor decryptor, Executor executor, int parallelism)
+            throws IOException, PGPException {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be positive");
+        }
+        this.channel = channel;
+        this.executor = executor;
+        this.window = 2 * parallelism;
+        try {
+            this.index = ChunkIndex.read(channel);
+            byte[] keyBlock = ChunkIndex.readFully(channel, index.keyBlockOffset, index.keyBlockLength).array();
+            byte[] keyMaterial = decryptor.decrypt(keyBlock);
+            this.passPhrase = new String(keyMaterial, StandardCharsets.US_ASCII).toCharArray();
+            Arrays.fill(keyMaterial, (byte) 0);
+            CryptoProviders providers = CryptoProviders.getDefault();
+            this.digestCalculatorProvider = new JcaPGPDigestCalculatorProviderBuilder().setProvider(providers.getDigest()).build();
+            this.contentProvider = providers.symmetricFor(PGPEncryptedData.AES_256, true);
+        } catch (IOException | PGPException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the number of clear text bytes in the container.
+     */
+    public long size() {
+        return index.plainLength;
+    }
+
+    public int getChunkSize() {
+        return index.chunkSize;
+    }
+
+    public int getChunkCount() {
+        return index.chunkCount();
+    }
+
+    /**
+     * Decrypts the whole container, the chunks in parallel.
+     *
+     * @param out receives the clear text. It is not closed.
+     * @throws IOException  on a problem reading the container or writing the clear text.
+     * @throws PGPException if a chunk can not be decrypted or fails its checks.
+     */
+    public void decrypt(OutputStream out) throws IOException, PGPException {
+        read(0, size(), out);
+    }
+
+    /**
+     * Decrypts a range of the clear text, only the chunks it touches, in parallel.
+     *
+     * @param position the first clear text byte.
+     * @param length   the number of bytes.
+     * @param out      receives the clear text. It is not closed.
+     * @throws IOException  on a problem reading the container or writing the clear text.
+     * @throws PGPException if a chunk can not be decrypted or fails its checks.
+     */
+    public void read(long position, long length, OutputStream out) throws IOException, PGPException {
+        if (position < 0 || length < 0 || position + length > size()) {
+            throw new IndexOutOfBoundsException("range " + position + "+" + length + " outside of 0.." + size());
+        }
+        if (length == 0) {
+            return;
+        }
+        int first = (int) (position / index.chunkSize);
+        int last = (int) ((position + length - 1) / index.chunkSize);
+
+        Deque<CompletableFuture<byte[]>> pending = new ArrayDeque<CompletableFuture<byte[]>>();
+        int next = first;
+        for (int chunk = first; chunk <= last; chunk++) {
+            while (next <= last && pending.size() < window) {
+                final int submitted = next++;
+                pending.add(CompletableFuture.supplyAsync(() -> decryptChunk(submitted), executor));
+            }
+            byte[] data = ChunkedEncryptor.join(pending.poll());
+            long chunkStart = (long) chunk * index.chunkSize;
+            int from = (int) Math.max(0, position - chunkStart);
+            int to = (int) Math.min(data.length, position + length - chunkStart);
+            out.write(data, from, to - from);
+        }
+    }
+
+    /**
+     * Decrypts a range of the clear text into memory.
+     *
+     * @param position the first clear text byte.
+     * @param length   the number of bytes.
+     * @return the clear text.
+     * @throws IOException  on a problem reading the container.
+     * @throws PGPException if a chunk can not be decrypted or fails its checks.
+     */
+    public byte[] read(long position, int length) throws IOException, PGPException {
+        ByteArrayOutputStream bOut = new ByteArrayOutputStream(length);
+        read(position, length, bOut);
+        return bOut.toByteArray();
+    }
+
+    /**
+     * Closes the channel and wipes the content key.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (passPhrase) {
+            Arrays.fill(passPhrase, '\0');
+        }
+        channel.close();
+    }
+
+    static String chunkName(int chunk, boolean last) {
+        return last ? "chunk-" + chunk + "-last" : "chunk-" + chunk;
+    }
+
+    private byte[] decryptChunk(int chunk) {
+        try {
+            byte[] encrypted;
+            synchronized (channel) {
+                encrypted = ChunkIndex.readFully(channel, index.offsets[chunk], index.lengths[chunk]).array();
+            }
+            JcaPGPObjectFactory pgpF = new JcaPGPObjectFactory(encrypted);
+            Object o = pgpF.nextObject();
+            if (!(o instanceof PGPEncryptedDataList) || !(((PGPEncryptedDataList) o).get(0) instanceof PGPPBEEncryptedData)) {
+                throw new PGPException("chunk " + chunk + " is not an encrypted chunk.");
+            }
+            PGPPBEEncryptedData pbe = (PGPPBEEncryptedData) ((PGPEncryptedDataList) o).get(0);
+
+            InputStream clear;
+            synchronized (passPhrase) {
+                clear = pbe.getDataStream(new JcePBEDataDecryptorFactoryBuilder(digestCalculatorProvider).setProvider(contentProvider).build(passPhrase));
+            }
+            JcaPGPObjectFactory pgpFact = new JcaPGPObjectFactory(clear);
+            Object message = pgpFact.nextObject();
+            if (message instanceof PGPCompressedData) {
+                pgpFact = new JcaPGPObjectFactory(((PGPCompressedData) message).getDataStream());
+                message = pgpFact.nextObject();
+            }
+            if (!(message instanceof PGPLiteralData)) {
+                throw new PGPException("chunk " + chunk + " holds no literal data.");
+            }
+            PGPLiteralData literal = (PGPLiteralData) message;
+            if (!chunkName(chunk, chunk == index.chunkCount() - 1).equals(literal.getFileName())) {
+                throw new PGPDataValidationException("chunk " + chunk + " is out of place.");
+            }
+
+            byte[] data = new byte[index.plainLength(chunk)];
+            DataInputStream in = new DataInputStream(literal.getInputStream());
+            try {
+                in.readFully(data);
+            } catch (EOFException e) {
+                throw new PGPDataValidationException("chunk " + chunk + " is shorter than the index says.");
+            }
+            if (in.read() >= 0) {
+                throw new PGPDataValidationException("chunk " + chunk + " is longer than the index says.");
+            }
+            if (!pbe.isIntegrityProtected() || !pbe.verify()) {
+                throw new PGPDataValidationException("chunk " + chunk + " failed integrity check");
+            }
+            return data;
+        } catch (IOException | PGPException e) {
+            throw new CompletionException(e);
+        }
+    }
+}
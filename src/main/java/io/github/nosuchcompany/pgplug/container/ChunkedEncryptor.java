@@ -0,0 +1,259 @@
+package io.github.nosuchcompany.pgplug.container;
+
+import io.github.nosuchcompany.pgplug.buffer.BufferPool;
+import io.github.nosuchcompany.pgplug.utils.Compression;
+import io.github.nosuchcompany.pgplug.utils.CryptoProviders;
+import io.github.nosuchcompany.pgplug.utils.PGPEncryptor;
+import org.bouncycastle.bcpg.HashAlgorithmTags;
+import org.bouncycastle.openpgp.*;
+import org.bouncycastle.openpgp.operator.PGPDigestCalculatorProvider;
+import org.bouncycastle.openpgp.operator.jcajce.JcaPGPDigestCalculatorProviderBuilder;
+import org.bouncycastle.openpgp.operator.jcajce.JcePBEKeyEncryptionMethodGenerator;
+import org.bouncycastle.openpgp.operator.jcajce.JcePGPDataEncryptorBuilder;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.security.Provider;
+import java.security.SecureRandom;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Encrypts into a chunked container, which {@link ChunkedDecryptor} can decrypt on all cores and
+ * read at any position.
+ * The clear data is cut into chunks of a fixed size. Every chunk is a complete OpenPGP message,
+ * encrypted with integrity protection under a random content key; the content key itself is
+ * encrypted to the recipients once, in the key block at the start of the container, so the
+ * expensive public key operations are paid once and not per chunk. An index of the chunk
+ * positions ends the container.
+ * Chunks are encrypted in parallel on the executor, while at most two per core are held in memory.
+ */
+public class ChunkedEncryptor {
+
+    public static final int DEFAULT_CHUNK_SIZE = 4 << 20;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private static final int CONTENT_KEY_SIZE = 32;
+
+    private final PGPEncryptor keyBlockEncryptor;
+
+    private final JcePGPDataEncryptorBuilder dataEncryptorBuilder;
+
+    private final PGPDigestCalculatorProvider digestCalculatorProvider;
+
+    private final Provider provider;
+
+    private final SecureRandom random;
+
+    private final int chunkSize;
+
+    private final Compression compression;
+
+    private final Executor executor;
+
+    private final int window;
+
+    private ChunkedEncryptor(Builder builder) throws PGPException {
+        CryptoProviders providers = CryptoProviders.getDefault();
+        this.provider = providers.getAsymmetric();
+        this.random = builder.secureRandom != null ? builder.secureRandom : new SecureRandom();
+        this.keyBlockEncryptor = new PGPEncryptor.Builder(builder.publicKeys)
+                .setArmor(false)
+                .setCompression(Compression.NONE)
+                .setSecureRandom(random)
+                .build();
+        this.dataEncryptorBuilder = new JcePGPDataEncryptorBuilder(PGPEncryptedData.AES_256)
+                .setWithIntegrityPacket(true)
+                .setSecureRandom(random)
+                .setProvider(providers.symmetricFor(PGPEncryptedData.AES_256, true));
+        this.digestCalculatorProvider = new JcaPGPDigestCalculatorProviderBuilder().setProvider(providers.getDigest()).build();
+        this.chunkSize = builder.chunkSize;
+        this.compression = builder.compression;
+        this.executor = builder.executor;
+        this.window = 2 * builder.parallelism;
+    }
+
+    /**
+     * Encrypts the clear data into a container.
+     *
+     * @param clearIn the data to be encrypted, read until end of stream.
+     * @param out     receives the container. It is not closed.
+     * @throws IOException  on a problem reading or writing the streams.
+     * @throws PGPException if a chunk could not be encrypted.
+     */
+    public void encrypt(InputStream clearIn, OutputStream out) throws IOException, PGPException {
+        byte[] contentKey = new byte[CONTENT_KEY_SIZE];
+        random.nextBytes(contentKey);
+        final char[] passPhrase = Base64.getEncoder().encodeToString(contentKey).toCharArray();
+        byte[] keyMaterial = new String(passPhrase).getBytes(StandardCharsets.US_ASCII);
+        Arrays.fill(contentKey, (byte) 0);
+        try {
+            long position = 0;
+            out.write(ChunkIndex.MAGIC);
+            position += ChunkIndex.MAGIC.length;
+
+            byte[] keyBlock = keyBlockEncryptor.encrypt(keyMaterial);
+            out.write(keyBlock);
+            long keyBlockOffset = position;
+            position += keyBlock.length;
+
+            List<Long> offsets = new ArrayList<Long>();
+            List<Integer> lengths = new ArrayList<Integer>();
+            Deque<CompletableFuture<byte[]>> pending = new ArrayDeque<CompletableFuture<byte[]>>();
+            long plainLength = 0;
+            byte[] data = new byte[chunkSize];
+            int len = Compression.readSample(clearIn, data);
+            for (int chunk = 0; ; chunk++) {
+                // read ahead to know which chunk is the last one, so a dropped tail is noticed
+                byte[] next = new byte[chunkSize];
+                int nextLen = len < chunkSize ? 0 : Compression.readSample(clearIn, next);
+                boolean last = nextLen == 0;
+
+                final byte[] chunkData = data;
+                final int chunkLen = len;
+                final String name = ChunkedDecryptor.chunkName(chunk, last);
+                pending.add(CompletableFuture.supplyAsync(() -> encryptChunk(chunkData, chunkLen, name, passPhrase), executor));
+                plainLength += len;
+
+                while (pending.size() >= window || (last && !pending.isEmpty())) {
+                    byte[] encrypted = join(pending.poll());
+                    out.write(encrypted);
+                    offsets.add(position);
+                    lengths.add(encrypted.length);
+                    position += encrypted.length;
+                }
+                if (last) {
+                    break;
+                }
+                data = next;
+                len = nextLen;
+            }
+
+            long[] offsetArray = new long[offsets.size()];
+            int[] lengthArray = new int[lengths.size()];
+            for (int i = 0; i < offsetArray.length; i++) {
+                offsetArray[i] = offsets.get(i);
+                lengthArray[i] = lengths.get(i);
+            }
+            new ChunkIndex(chunkSize, plainLength, keyBlockOffset, keyBlock.length, offsetArray, lengthArray)
+                    .write(out, position);
+        } finally {
+            Arrays.fill(passPhrase, '\0');
+            Arrays.fill(keyMaterial, (byte) 0);
+        }
+    }
+
+    private byte[] encryptChunk(byte[] data, int len, String name, char[] passPhrase) {
+        BufferPool pool = BufferPool.getDefault();
+        byte[] buffer = pool.acquire(BUFFER_SIZE);
+        try {
+            ByteArrayOutputStream bOut = new ByteArrayOutputStream(len + 256);
+            PGPEncryptedDataGenerator cPk = new PGPEncryptedDataGenerator(dataEncryptorBuilder);
+            // the pass phrase is a random 256 bit key, the cheapest S2K count is enough
+            cPk.addMethod(new JcePBEKeyEncryptionMethodGenerator(passPhrase, digestCalculatorProvider.get(HashAlgorithmTags.SHA256), 0)
+                    .setProvider(provider)
+                    .setSecureRandom(random));
+            OutputStream cOut = cPk.open(bOut, buffer);
+
+            PGPCompressedDataGenerator comData = compression.newGenerator(data, Math.min(len, Compression.SAMPLE_SIZE), pool);
+            PGPLiteralDataGenerator lData = new PGPLiteralDataGenerator();
+            OutputStream pOut = lData.open(comData == null ? cOut : comData.open(cOut), PGPLiteralData.BINARY, name, len, new Date(0));
+            pOut.write(data, 0, len);
+            lData.close();
+            if (comData != null) {
+                comData.close();
+            }
+            cOut.close();
+            return bOut.toByteArray();
+        } catch (IOException | PGPException e) {
+            throw new CompletionException(e);
+        } finally {
+            pool.release(buffer);
+        }
+    }
+
+    static <T> T join(CompletableFuture<T> future) throws IOException, PGPException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof PGPException) {
+                throw (PGPException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Collects the settings of a {@link ChunkedEncryptor}.
+     */
+    public static class Builder {
+        private final List<PGPPublicKey> publicKeys;
+        private int chunkSize = DEFAULT_CHUNK_SIZE;
+        private Compression compression = Compression.NONE;
+        private Executor executor = ForkJoinPool.commonPool();
+        private int parallelism = Runtime.getRuntime().availableProcessors();
+        private SecureRandom secureRandom;
+
+        /**
+         * @param publicKeys the recipients of every container.
+         */
+        public Builder(Collection<PGPPublicKey> publicKeys) {
+            if (publicKeys.isEmpty()) {
+                throw new IllegalArgumentException("at least one recipient is needed");
+            }
+            this.publicKeys = new ArrayList<PGPPublicKey>(publicKeys);
+        }
+
+        /**
+         * @param chunkSize the clear text bytes per chunk, 4 MiB by default. It is also the
+         *                  smallest unit a range read decrypts.
+         */
+        public Builder setChunkSize(int chunkSize) {
+            if (chunkSize < 1) {
+                throw new IllegalArgumentException("chunkSize must be positive");
+            }
+            this.chunkSize = chunkSize;
+            return this;
+        }
+
+        /**
+         * @param compression the compression of every chunk, none by default.
+         */
+        public Builder setCompression(Compression compression) {
+            this.compression = compression;
+            return this;
+        }
+
+        /**
+         * @param executor    runs the chunk encryption, the common fork join pool by default.
+         * @param parallelism the number of threads of the executor used at once.
+         */
+        public Builder setExecutor(Executor executor, int parallelism) {
+            if (parallelism < 1) {
+                throw new IllegalArgumentException("parallelism must be positive");
+            }
+            this.executor = executor;
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        public Builder setSecureRandom(SecureRandom secureRandom) {
+            this.secureRandom = secureRandom;
+            return this;
+        }
+
+        /**
+         * @throws PGPException if the digest calculator can not be created.
+         */
+        public ChunkedEncryptor build() throws PGPException {
+            return new ChunkedEncryptor(this);
+        }
+    }
+}
@@ -1,9 +1,11 @@
 package io.github.nosuchcompany.pgplug.keyPair;
 
+import io.github.nosuchcompany.pgplug.utils.KeyAlgorithm;
 import io.github.nosuchcompany.pgplug.utils.PGPUtils;
 import org.bouncycastle.openpgp.PGPPublicKey;
 
 import java.io.ByteArrayOutputStream;
+import java.security.KeyPair;
 
 /*
     skalski created on 22/01/2021 inside the package - com.nosuchcompany.pgplug.keyPair
@@ -23,6 +25,32 @@ public class KeyPairPGP {
         this.publicKey = publicKey.toByteArray();
     }
 
+    /**
+     * @param pass      passphrase of the secret key.
+     * @param algorithm the key type and strength, elliptic curve keys are much faster to generate and use.
+     */
+    public KeyPairPGP(char[] pass, KeyAlgorithm algorithm) {
+        ByteArrayOutputStream privateKey = new ByteArrayOutputStream();
+        ByteArrayOutputStream publicKey = new ByteArrayOutputStream();
+        PGPUtils.generateKeyPair(algorithm, privateKey, publicKey, pass);
+        this.privateKey = privateKey.toByteArray();
+        this.publicKey = publicKey.toByteArray();
+    }
+
+    /**
+     * Builds the PGP keys on top of already generated key material, e.g. from a {@link KeyPairPool}.
+     *
+     * @param keyPair the raw key material.
+     * @param pass    passphrase of the secret key.
+     */
+    public KeyPairPGP(KeyPair keyPair, char[] pass) {
+        ByteArrayOutputStream privateKey = new ByteArrayOutputStream();
+        ByteArrayOutputStream publicKey = new ByteArrayOutputStream();
+        PGPUtils.generateKeyPair(keyPair, privateKey, publicKey, pass);
+        this.privateKey = privateKey.toByteArray();
+        this.publicKey = publicKey.toByteArray();
+    }
+
     public KeyPairPGP() {
         ByteArrayOutputStream privateKey = new ByteArrayOutputStream();
         ByteArrayOutputStream publicKey = new ByteArrayOutputStream();
@@ -0,0 +1,224 @@
+package io.github.nosuchcompany.pgplug.keyPair;
+
+import io.github.nosuchcompany.pgplug.utils.PGPUtils;
+
+import java.io.Closeable;
+import java.security.KeyPair;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps a bounded pool of pre-generated key material, so handing out a {@link KeyPairPGP}
+ * only costs the cheap passphrase protection of the secret key.
+ * The pool is filled in the background on one thread per core. Whenever it drops below the
+ * low water mark it is refilled up to its capacity.
+ * A failed generation is counted, see {@link #getGenerationFailureCount()}; callers waiting in
+ * {@link #take(char[])} then get an IllegalStateException instead of waiting for key pairs that
+ * may never come, and so do callers still waiting when the pool is closed.
+ */
+public class KeyPairPool implements Closeable {
+
+    /**
+     * How long a waiting caller blocks before it checks whether the pool was closed or a generation failed.
+     */
+    private static final long WAIT_STEP_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final int capacity;
+
+    private final int lowWaterMark;
+
+    private final BlockingQueue<KeyPair> pool;
+
+    private final ExecutorService workers;
+
+    private final AtomicInteger pending = new AtomicInteger();
+
+    private final AtomicLong generationFailures = new AtomicLong();
+
+    private volatile RuntimeException lastGenerationError;
+
+    private volatile boolean closed;
+
+    /**
+     * Creates a pool of the given capacity that refills below half of it, using all cores.
+     *
+     * @param capacity the number of key pairs kept ready.
+     */
+    public KeyPairPool(int capacity) {
+        this(capacity, Math.max(1, capacity / 2), Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param capacity     the number of key pairs kept ready.
+     * @param lowWaterMark the pool is refilled when fewer key pairs than this are left.
+     * @param threads      the number of background threads generating key pairs.
+     */
+    public KeyPairPool(int capacity, int lowWaterMark, int threads) {
+        if (capacity < 1 || lowWaterMark < 1 || lowWaterMark > capacity || threads < 1) {
+            throw new IllegalArgumentException("expected 0 < lowWaterMark <= capacity and at least one thread");
+        }
+        this.capacity = capacity;
+        this.lowWaterMark = lowWaterMark;
+        this.pool = new ArrayBlockingQueue<KeyPair>(capacity);
+        this.workers = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "pgplug-keypair-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                thread.setPriority(Thread.NORM_PRIORITY - 1);
+                return thread;
+            }
+        });
+        refill();
+    }
+
+    /**
+     * Returns a key pair from the pool without waiting.
+     *
+     * @param pass passphrase of the secret key.
+     * @return a new key pair or null, if the pool is empty right now.
+     */
+    public KeyPairPGP tryTake(char[] pass) {
+        KeyPair keyPair = pool.poll();
+        afterTake();
+        return keyPair == null ? null : new KeyPairPGP(keyPair, pass);
+    }
+
+    /**
+     * Returns a key pair from the pool, waiting for one to be generated if it is empty.
+     *
+     * @param pass passphrase of the secret key.
+     * @return a new key pair.
+     * @throws InterruptedException  if the thread was interrupted while waiting.
+     * @throws IllegalStateException if the pool is closed, or a key pair could not be generated while waiting.
+     */
+    public KeyPairPGP take(char[] pass) throws InterruptedException {
+        return new KeyPairPGP(await(0, false), pass);
+    }
+
+    /**
+     * Returns a key pair from the pool, waiting at most the given time for one to be generated.
+     *
+     * @param pass    passphrase of the secret key.
+     * @param timeout how long to wait.
+     * @param unit    the unit of timeout.
+     * @return a new key pair or null, if none was ready in time.
+     * @throws InterruptedException  if the thread was interrupted while waiting.
+     * @throws IllegalStateException if the pool is closed, or a key pair could not be generated while waiting.
+     */
+    public KeyPairPGP take(char[] pass, long timeout, TimeUnit unit) throws InterruptedException {
+        KeyPair keyPair = await(unit.toNanos(timeout), true);
+        return keyPair == null ? null : new KeyPairPGP(keyPair, pass);
+    }
+
+    /**
+     * @return the number of key pairs ready to be taken.
+     */
+    public int available() {
+        return pool.size();
+    }
+
+    /**
+     * @return how often generating a key pair failed since the pool was created.
+     */
+    public long getGenerationFailureCount() {
+        return generationFailures.get();
+    }
+
+    /**
+     * @return why the last generation of a key pair failed, null if none failed.
+     */
+    public RuntimeException getLastGenerationError() {
+        return lastGenerationError;
+    }
+
+    /**
+     * Stops the background generation and drops the pooled key material. Callers waiting for a
+     * key pair get an IllegalStateException.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        workers.shutdownNow();
+        pool.clear();
+    }
+
+    /**
+     * Waits in steps, so a close or a failed generation ends the wait; every step triggers a refill,
+     * which retries the generations that failed.
+     */
+    private KeyPair await(long timeoutNanos, boolean timed) throws InterruptedException {
+        ensureOpen();
+        long failures = generationFailures.get();
+        afterTake();
+        long deadline = System.nanoTime() + timeoutNanos;
+        KeyPair keyPair;
+        while (true) {
+            long step = timed ? Math.min(WAIT_STEP_NANOS, deadline - System.nanoTime()) : WAIT_STEP_NANOS;
+            keyPair = pool.poll(Math.max(0, step), TimeUnit.NANOSECONDS);
+            if (keyPair != null) {
+                break;
+            }
+            ensureOpen();
+            if (generationFailures.get() != failures) {
+                throw new IllegalStateException("key pair generation failed", lastGenerationError);
+            }
+            if (timed && deadline - System.nanoTime() <= 0) {
+                return null;
+            }
+            afterTake();
+        }
+        afterTake();
+        return keyPair;
+    }
+
+    private void afterTake() {
+        if (pool.size() < lowWaterMark) {
+            refill();
+        }
+    }
+
+    private void refill() {
+        while (!closed) {
+            int inFlight = pending.get();
+            if (pool.size() + inFlight >= capacity) {
+                return;
+            }
+            if (pending.compareAndSet(inFlight, inFlight + 1)) {
+                try {
+                    workers.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            generate();
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    pending.decrementAndGet();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void generate() {
+        try {
+            if (!closed) {
+                pool.offer(PGPUtils.generateJcaKeyPair());
+            }
+        } catch (RuntimeException e) {
+            lastGenerationError = e;
+            generationFailures.incrementAndGet();
+        } finally {
+            pending.decrementAndGet();
+        }
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("key pair pool is closed");
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package io.github.nosuchcompany.pgplug.keystore;
+
+import org.bouncycastle.openpgp.*;
+import org.bouncycastle.openpgp.operator.jcajce.JcaKeyFingerprintCalculator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * One key ring of a {@link PGPKeyStore}, with what it is indexed by.
+ * A ring read from the on-disk index is kept in its encoded form and only parsed on its first lookup.
+ */
+final class KeyEntry {
+
+    private final boolean secret;
+
+    private final long[] keyIds;
+
+    private final byte[] fingerprint;
+
+    private final String[] userIds;
+
+    /**
+     * The encoded ring, a slice of the mapped index, or null for a ring parsed from a key file.
+     */
+    private final ByteBuffer encoded;
+
+    private volatile PGPKeyRing ring;
+
+    KeyEntry(boolean secret, long[] keyIds, byte[] fingerprint, String[] userIds, ByteBuffer encoded) {
+        this.secret = secret;
+        this.keyIds = keyIds;
+        this.fingerprint = fingerprint;
+        this.userIds = userIds;
+        this.encoded = encoded;
+    }
+
+    private KeyEntry(PGPKeyRing ring, boolean secret) {
+        List<Long> ids = new ArrayList<Long>();
+        Iterator<?> keys = ring.getPublicKeys();
+        while (keys.hasNext()) {
+            ids.add(((PGPPublicKey) keys.next()).getKeyID());
+        }
+        this.keyIds = new long[ids.size()];
+        for (int i = 0; i < keyIds.length; i++) {
+            keyIds[i] = ids.get(i);
+        }
+        List<String> uids = new ArrayList<String>();
+        Iterator<?> it = ring.getPublicKey().getUserIDs();
+        while (it.hasNext()) {
+            uids.add((String) it.next());
+        }
+        this.secret = secret;
+        this.fingerprint = ring.getPublicKey().getFingerprint();
+        this.userIds = uids.toArray(new String[0]);
+        this.encoded = null;
+        this.ring = ring;
+    }
+
+    static KeyEntry of(PGPPublicKeyRing ring) {
+        return new KeyEntry(ring, false);
+    }
+
+    static KeyEntry of(PGPSecretKeyRing ring) {
+        return new KeyEntry(ring, true);
+    }
+
+    boolean isSecret() {
+        return secret;
+    }
+
+    long[] getKeyIds() {
+        return keyIds;
+    }
+
+    byte[] getFingerprint() {
+        return fingerprint;
+    }
+
+    String[] getUserIds() {
+        return userIds;
+    }
+
+    /**
+     * @return the key ring, parsed on the first call if it came from the index.
+     * @throws PGPException if the encoded ring is corrupt.
+     */
+    PGPKeyRing getRing() throws PGPException {
+        PGPKeyRing parsed = ring;
+        if (parsed == null) {
+            // a race parses twice, both results are equal
+            try {
+                byte[] bytes = getEncoded();
+                parsed = secret
+                        ? new PGPSecretKeyRing(bytes, new JcaKeyFingerprintCalculator())
+                        : new PGPPublicKeyRing(bytes, new JcaKeyFingerprintCalculator());
+            } catch (IOException e) {
+                throw new PGPException("corrupt key ring in the key index", e);
+            }
+            ring = parsed;
+        }
+        return parsed;
+    }
+
+    byte[] getEncoded() throws IOException {
+        if (encoded == null) {
+            return ring.getEncoded();
+        }
+        byte[] bytes = new byte[encoded.remaining()];
+        encoded.duplicate().get(bytes);
+        return bytes;
+    }
+}
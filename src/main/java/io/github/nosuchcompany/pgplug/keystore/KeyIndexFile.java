@@ -0,0 +1,149 @@
+package io.github.nosuchcompany.pgplug.keystore;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Reads and writes the on-disk index of a {@link PGPKeyStore}.
+ * The index lists every key file with its size and modification time, and for every ring of the
+ * file its key IDs, fingerprint, user IDs and encoded form:
+ * <pre>
+ * "PGPLUGKI" version:int files:int
+ *   name size:long modified:long rings:int
+ *     secret:byte ids:int id:long... fingerprint uids:int uid... encoded
+ * </pre>
+ * where strings are UTF-8 and strings and byte arrays are prefixed with their length as int.
+ * It is memory-mapped when read, so a ring costs nothing until it is looked up.
+ */
+final class KeyIndexFile {
+
+    private static final byte[] MAGIC = "PGPLUGKI".getBytes(StandardCharsets.US_ASCII);
+
+    private static final int VERSION = 1;
+
+    private KeyIndexFile() {
+    }
+
+    /**
+     * @param indexFile the index.
+     * @return the key files the index knows, by name, empty if it does not exist or can not be read.
+     */
+    static Map<String, KeySource> read(Path indexFile) {
+        Map<String, KeySource> sources = new TreeMap<String, KeySource>();
+        if (!Files.isRegularFile(indexFile)) {
+            return sources;
+        }
+        try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                return sources;
+            }
+            // the mapping stays valid after the channel is closed
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            byte[] magic = new byte[MAGIC.length];
+            buffer.get(magic);
+            if (!Arrays.equals(MAGIC, magic) || buffer.getInt() != VERSION) {
+                return sources;
+            }
+            int files = buffer.getInt();
+            for (int f = 0; f < files; f++) {
+                String name = readString(buffer);
+                long size = buffer.getLong();
+                long modified = buffer.getLong();
+                int rings = buffer.getInt();
+                List<KeyEntry> entries = new ArrayList<KeyEntry>(rings);
+                for (int r = 0; r < rings; r++) {
+                    boolean secret = buffer.get() != 0;
+                    long[] keyIds = new long[buffer.getInt()];
+                    for (int i = 0; i < keyIds.length; i++) {
+                        keyIds[i] = buffer.getLong();
+                    }
+                    byte[] fingerprint = new byte[buffer.getInt()];
+                    buffer.get(fingerprint);
+                    String[] userIds = new String[buffer.getInt()];
+                    for (int i = 0; i < userIds.length; i++) {
+                        userIds[i] = readString(buffer);
+                    }
+                    entries.add(new KeyEntry(secret, keyIds, fingerprint, userIds, slice(buffer, buffer.getInt())));
+                }
+                sources.put(name, new KeySource(name, size, modified, entries));
+            }
+            return sources;
+        } catch (IOException | BufferUnderflowException | IllegalArgumentException | NegativeArraySizeException e) {
+            // a broken index only costs the parsing it would have saved
+            return new TreeMap<String, KeySource>();
+        }
+    }
+
+    /**
+     * Replaces the index atomically where the file system supports it.
+     *
+     * @param indexFile the index.
+     * @param sources   the key files.
+     * @throws IOException on a problem writing the index.
+     */
+    static void write(Path indexFile, Collection<KeySource> sources) throws IOException {
+        Path dir = indexFile.toAbsolutePath().getParent();
+        Path tmp = Files.createTempFile(dir, indexFile.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+                out.write(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(sources.size());
+                for (KeySource source : sources) {
+                    writeString(out, source.getName());
+                    out.writeLong(source.getSize());
+                    out.writeLong(source.getModified());
+                    out.writeInt(source.getEntries().size());
+                    for (KeyEntry entry : source.getEntries()) {
+                        out.writeByte(entry.isSecret() ? 1 : 0);
+                        out.writeInt(entry.getKeyIds().length);
+                        for (long keyId : entry.getKeyIds()) {
+                            out.writeLong(keyId);
+                        }
+                        writeBytes(out, entry.getFingerprint());
+                        out.writeInt(entry.getUserIds().length);
+                        for (String userId : entry.getUserIds()) {
+                            writeString(out, userId);
+                        }
+                        writeBytes(out, entry.getEncoded());
+                    }
+                }
+            }
+            try {
+                Files.move(tmp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, indexFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int length) {
+        ByteBuffer slice = buffer.duplicate();
+        slice.limit(slice.position() + length);
+        buffer.position(buffer.position() + length);
+        return slice.slice();
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        writeBytes(out, s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+}
@@ -0,0 +1,66 @@
+package io.github.nosuchcompany.pgplug.keystore;
+
+import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.openpgp.PGPPublicKey;
+import org.bouncycastle.openpgp.PGPPublicKeyRingCollection;
+import org.bouncycastle.openpgp.PGPSecretKey;
+import org.bouncycastle.openpgp.PGPSecretKeyRingCollection;
+
+/**
+ * Finds keys by key ID, for the operations that only learn from the message which key they need.
+ * {@link PGPKeyStore} answers from an index; the adapters for key ring collections scan the rings
+ * like the collections themselves do.
+ */
+public interface KeyLookup {
+
+    /**
+     * @param keyId the ID of a primary key or subkey.
+     * @return the public key, null if it is not known.
+     * @throws PGPException if the key ring holding the key could not be read.
+     */
+    PGPPublicKey getPublicKey(long keyId) throws PGPException;
+
+    /**
+     * @param keyId the ID of a primary key or subkey.
+     * @return the secret key, null if it is not known.
+     * @throws PGPException if the key ring holding the key could not be read.
+     */
+    PGPSecretKey getSecretKey(long keyId) throws PGPException;
+
+    /**
+     * @param pgpRing public key rings.
+     * @return a lookup of the public keys of the rings, which knows no secret keys.
+     */
+    static KeyLookup of(final PGPPublicKeyRingCollection pgpRing) {
+        return new KeyLookup() {
+            @Override
+            public PGPPublicKey getPublicKey(long keyId) throws PGPException {
+                return pgpRing.getPublicKey(keyId);
+            }
+
+            @Override
+            public PGPSecretKey getSecretKey(long keyId) {
+                return null;
+            }
+        };
+    }
+
+    /**
+     * @param pgpSec secret key rings.
+     * @return a lookup of the secret keys of the rings and their public keys.
+     */
+    static KeyLookup of(final PGPSecretKeyRingCollection pgpSec) {
+        return new KeyLookup() {
+            @Override
+            public PGPPublicKey getPublicKey(long keyId) throws PGPException {
+                PGPSecretKey secretKey = pgpSec.getSecretKey(keyId);
+                return secretKey != null ? secretKey.getPublicKey() : null;
+            }
+
+            @Override
+            public PGPSecretKey getSecretKey(long keyId) throws PGPException {
+                return pgpSec.getSecretKey(keyId);
+            }
+        };
+    }
+}
@@ -0,0 +1,46 @@
+package io.github.nosuchcompany.pgplug.keystore;
+
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+
+/**
+ * A key file of a {@link PGPKeyStore} and the rings read from it. The size and modification time
+ * tell whether the file changed since.
+ */
+final class KeySource {
+
+    private final String name;
+
+    private final long size;
+
+    private final long modified;
+
+    private final List<KeyEntry> entries;
+
+    KeySource(String name, long size, long modified, List<KeyEntry> entries) {
+        this.name = name;
+        this.size = size;
+        this.modified = modified;
+        this.entries = entries;
+    }
+
+    boolean matches(BasicFileAttributes attributes) {
+        return size == attributes.size() && modified == attributes.lastModifiedTime().toMillis();
+    }
+
+    String getName() {
+        return name;
+    }
+
+    long getSize() {
+        return size;
+    }
+
+    long getModified() {
+        return modified;
+    }
+
+    List<KeyEntry> getEntries() {
+        return entries;
+    }
+}
@@ -0,0 +1,351 @@
+package io.github.nosuchcompany.pgplug.keystore;
+
+import org.bouncycastle.openpgp.*;
+import org.bouncycastle.openpgp.jcajce.JcaPGPObjectFactory;
+import org.bouncycastle.util.encoders.Hex;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The key rings of a directory, loaded once and indexed by key ID, subkey ID, fingerprint and
+ * user ID, so a lookup costs a hash map access instead of a scan of every ring.
+ * Every regular, not hidden file of the directory is read as armored or binary public or secret
+ * key rings, and must hold at least one. {@link #reload()}, or the watcher started by {@link #watch()}, parses the files that
+ * changed and then swaps the complete index at once: readers never block and see either the old
+ * or the new key set. A file that can not be parsed fails the reload and keeps the old index.
+ * With an index file the rings are also written to disk in indexed form; a later start maps it
+ * and only parses a ring when it is looked up, and only key files that changed since.
+ * User IDs match ignoring case, either completely or by the e-mail address between '&lt;' and '&gt;'.
+ * If several files hold the same key, the file first in name order wins.
+ * Instances are safe to be shared between threads. Call {@link #close()} to stop the watcher.
+ */
+public class PGPKeyStore implements KeyLookup, Closeable {
+
+    /**
+     * How long the watcher waits for more changes before it reloads, so a file written in several
+     * steps is read once.
+     */
+    private static final long SETTLE_MILLIS = 200;
+
+    private final Path directory;
+
+    private final Path indexFile;
+
+    private volatile Snapshot snapshot;
+
+    private volatile Exception lastReloadError;
+
+    private WatchService watchService;
+
+    private Thread watcher;
+
+    private PGPKeyStore(Path directory, Path indexFile, Map<String, KeySource> sources) {
+        this.directory = directory;
+        this.indexFile = indexFile != null ? indexFile.toAbsolutePath().normalize() : null;
+        this.snapshot = new Snapshot(sources);
+    }
+
+    /**
+     * Loads the key rings of a directory.
+     *
+     * @param directory the directory holding the key files.
+     * @return the key store.
+     * @throws IOException  on a problem reading the directory.
+     * @throws PGPException if a key file could not be parsed.
+     */
+    public static PGPKeyStore open(Path directory) throws IOException, PGPException {
+        return open(directory, null);
+    }
+
+    /**
+     * Loads the key rings of a directory, starting from the index file if there is one, and keeps
+     * the index file up to date.
+     *
+     * @param directory the directory holding the key files.
+     * @param indexFile the on-disk index, created if it does not exist, or null for none.
+     * @return the key store.
+     * @throws IOException  on a problem reading the directory or writing the index.
+     * @throws PGPException if a key file could not be parsed.
+     */
+    public static PGPKeyStore open(Path directory, Path indexFile) throws IOException, PGPException {
+        if (!Files.isDirectory(directory)) {
+            throw new NoSuchFileException(directory.toString(), null, "not a directory");
+        }
+        Map<String, KeySource> indexed = indexFile != null ? KeyIndexFile.read(indexFile) : new TreeMap<String, KeySource>();
+        PGPKeyStore keyStore = new PGPKeyStore(directory, indexFile, indexed);
+        keyStore.reload();
+        return keyStore;
+    }
+
+    /**
+     * Parses the key files that were added or changed since the last load, drops the removed ones
+     * and then replaces the index at once.
+     *
+     * @return true if the key files changed.
+     * @throws IOException  on a problem reading the directory or writing the index file.
+     * @throws PGPException if a key file could not be parsed. The old index stays in use.
+     */
+    public synchronized boolean reload() throws IOException, PGPException {
+        Snapshot current = snapshot;
+        Map<String, KeySource> sources = new TreeMap<String, KeySource>();
+        boolean changed = false;
+        for (Path file : list()) {
+            String name = file.getFileName().toString();
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            KeySource known = current.sources.get(name);
+            if (known != null && known.matches(attributes)) {
+                sources.put(name, known);
+            } else {
+                sources.put(name, parse(file, name, attributes));
+                changed = true;
+            }
+        }
+        if (!changed && sources.size() == current.sources.size()) {
+            return false;
+        }
+        snapshot = new Snapshot(sources);
+        if (indexFile != null) {
+            KeyIndexFile.write(indexFile, sources.values());
+        }
+        return true;
+    }
+
+    /**
+     * Starts a daemon thread reloading the key store whenever a file of the directory changes.
+     * Calling it again has no effect.
+     *
+     * @throws IOException if the directory can not be watched.
+     */
+    public synchronized void watch() throws IOException {
+        if (watcher != null) {
+            return;
+        }
+        final WatchService service = directory.getFileSystem().newWatchService();
+        directory.register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+        watchService = service;
+        watcher = new Thread(() -> watch(service), "pgplug-keystore-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    private void watch(WatchService service) {
+        try {
+            while (true) {
+                WatchKey key = service.take();
+                Thread.sleep(SETTLE_MILLIS);
+                do {
+                    key.pollEvents();
+                    key.reset();
+                } while ((key = service.poll()) != null);
+                try {
+                    reload();
+                    lastReloadError = null;
+                } catch (IOException | PGPException | RuntimeException e) {
+                    lastReloadError = e;
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // closed
+        }
+    }
+
+    /**
+     * @return why the last reload of the watcher failed, null if it succeeded.
+     */
+    public Exception getLastReloadError() {
+        return lastReloadError;
+    }
+
+    /**
+     * @param keyId the ID of a primary key or subkey.
+     * @return the public key, taken from a secret key ring if no public ring holds it, or null.
+     * @throws PGPException if the key ring could not be read from the index file.
+     */
+    @Override
+    public PGPPublicKey getPublicKey(long keyId) throws PGPException {
+        Snapshot current = snapshot;
+        KeyEntry entry = current.publicKeys.byKeyId.get(keyId);
+        if (entry == null) {
+            entry = current.secretKeys.byKeyId.get(keyId);
+        }
+        return entry != null ? entry.getRing().getPublicKey(keyId) : null;
+    }
+
+    /**
+     * @param keyId the ID of a primary key or subkey.
+     * @return the secret key, or null.
+     * @throws PGPException if the key ring could not be read from the index file.
+     */
+    @Override
+    public PGPSecretKey getSecretKey(long keyId) throws PGPException {
+        PGPSecretKeyRing ring = getSecretKeyRing(keyId);
+        return ring != null ? ring.getSecretKey(keyId) : null;
+    }
+
+    /**
+     * @param keyId the ID of the primary key or one of the subkeys.
+     * @return the public key ring, or null.
+     * @throws PGPException if the key ring could not be read from the index file.
+     */
+    public PGPPublicKeyRing getPublicKeyRing(long keyId) throws PGPException {
+        KeyEntry entry = snapshot.publicKeys.byKeyId.get(keyId);
+        return entry != null ? (PGPPublicKeyRing) entry.getRing() : null;
+    }
+
+    /**
+     * @param fingerprint the fingerprint of the primary key.
+     * @return the public key ring, or null.
+     * @throws PGPException if the key ring could not be read from the index file.
+     */
+    public PGPPublicKeyRing getPublicKeyRing(byte[] fingerprint) throws PGPException {
+        KeyEntry entry = snapshot.publicKeys.byFingerprint.get(Hex.toHexString(fingerprint));
+        return entry != null ? (PGPPublicKeyRing) entry.getRing() : null;
+    }
+
+    /**
+     * @param userId a complete user ID or an e-mail address.
+     * @return the public key rings with the user ID, in the order of the files, empty if there is none.
+     * @throws PGPException if a key ring could not be read from the index file.
+     */
+    public List<PGPPublicKeyRing> getPublicKeyRings(String userId) throws PGPException {
+        List<KeyEntry> entries = snapshot.publicKeys.byUserId.get(normalize(userId));
+        if (entries == null) {
+            return Collections.emptyList();
+        }
+        List<PGPPublicKeyRing> rings = new ArrayList<PGPPublicKeyRing>(entries.size());
+        for (KeyEntry entry : entries) {
+            rings.add((PGPPublicKeyRing) entry.getRing());
+        }
+        return rings;
+    }
+
+    /**
+     * @param keyId the ID of the primary key or one of the subkeys.
+     * @return the secret key ring, or null.
+     * @throws PGPException if the key ring could not be read from the index file.
+     */
+    public PGPSecretKeyRing getSecretKeyRing(long keyId) throws PGPException {
+        KeyEntry entry = snapshot.secretKeys.byKeyId.get(keyId);
+        return entry != null ? (PGPSecretKeyRing) entry.getRing() : null;
+    }
+
+    /**
+     * @return the number of public and secret key rings.
+     */
+    public int size() {
+        Snapshot current = snapshot;
+        return current.publicKeys.rings + current.secretKeys.rings;
+    }
+
+    /**
+     * Stops the watcher.
+     *
+     * @throws IOException on a problem closing the watch service.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (watcher != null) {
+            watchService.close();
+            watcher.interrupt();
+            watcher = null;
+            watchService = null;
+        }
+    }
+
+    private List<Path> list() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(Files::isRegularFile)
+                    .filter(file -> !file.getFileName().toString().startsWith("."))
+                    .filter(file -> indexFile == null || !isIndexFile(file))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private boolean isIndexFile(Path file) {
+        Path absolute = file.toAbsolutePath().normalize();
+        // the temporary file of an index being written
+        return absolute.equals(indexFile)
+                || absolute.getParent().equals(indexFile.getParent())
+                && absolute.getFileName().toString().startsWith(indexFile.getFileName().toString());
+    }
+
+    private static KeySource parse(Path file, String name, BasicFileAttributes attributes) throws IOException, PGPException {
+        List<KeyEntry> entries = new ArrayList<KeyEntry>();
+        try (InputStream in = PGPUtil.getDecoderStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            JcaPGPObjectFactory pgpFact = new JcaPGPObjectFactory(in);
+            Object o;
+            while ((o = pgpFact.nextObject()) != null) {
+                if (o instanceof PGPPublicKeyRing) {
+                    entries.add(KeyEntry.of((PGPPublicKeyRing) o));
+                } else if (o instanceof PGPSecretKeyRing) {
+                    entries.add(KeyEntry.of((PGPSecretKeyRing) o));
+                } else {
+                    throw new PGPException("not a key ring in " + file + ": " + o.getClass().getName());
+                }
+            }
+        }
+        if (entries.isEmpty()) {
+            throw new PGPException("no key ring in " + file);
+        }
+        return new KeySource(name, attributes.size(), attributes.lastModifiedTime().toMillis(), entries);
+    }
+
+    static String normalize(String userId) {
+        return userId.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * The index of one key set, never changed after it was built.
+     */
+    private static final class Snapshot {
+        private final Map<String, KeySource> sources;
+        private final Index publicKeys = new Index();
+        private final Index secretKeys = new Index();
+
+        private Snapshot(Map<String, KeySource> sources) {
+            this.sources = sources;
+            for (KeySource source : sources.values()) {
+                for (KeyEntry entry : source.getEntries()) {
+                    (entry.isSecret() ? secretKeys : publicKeys).add(entry);
+                }
+            }
+        }
+    }
+
+    private static final class Index {
+        private final Map<Long, KeyEntry> byKeyId = new HashMap<Long, KeyEntry>();
+        private final Map<String, KeyEntry> byFingerprint = new HashMap<String, KeyEntry>();
+        private final Map<String, List<KeyEntry>> byUserId = new HashMap<String, List<KeyEntry>>();
+        private int rings;
+
+        private void add(KeyEntry entry) {
+            rings++;
+            for (long keyId : entry.getKeyIds()) {
+                byKeyId.putIfAbsent(keyId, entry);
+            }
+            byFingerprint.putIfAbsent(Hex.toHexString(entry.getFingerprint()), entry);
+            Set<String> names = new LinkedHashSet<String>();
+            for (String userId : entry.getUserIds()) {
+                names.add(normalize(userId));
+                int start = userId.lastIndexOf('<');
+                int end = userId.lastIndexOf('>');
+                if (start >= 0 && end > start + 1) {
+                    names.add(normalize(userId.substring(start + 1, end)));
+                }
+            }
+            for (String name : names) {
+                byUserId.computeIfAbsent(name, k -> new ArrayList<KeyEntry>(1)).add(entry);
+            }
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package io.github.nosuchcompany.pgplug.metrics;
+
+import java.util.List;
+import java.util.ServiceLoader;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The registry of {@link OperationListener}s and the switch for JFR events.
+ * While no listener is registered and JFR events are off, every operation gets a shared no-op
+ * recorder, so the instrumentation costs one volatile read per operation.
+ * JFR events are switched on with {@link #setJfrEnabled(boolean)} or the system property
+ * {@code pgplug.jfr=true}; they are then recorded whenever a flight recording with the
+ * {@code io.github.nosuchcompany.pgplug.Operation} event enabled is running.
+ * A listener that throws does not break the operation; the failure is counted and the last one
+ * kept, see {@link #getListenerFailureCount()}.
+ */
+public final class Instrumentation {
+
+    public static final String JFR_PROPERTY = "pgplug.jfr";
+
+    private static final List<OperationListener> listeners = new CopyOnWriteArrayList<OperationListener>();
+
+    private static volatile boolean jfrEnabled;
+
+    /**
+     * Set before JFR events are first switched on and kept from then on.
+     */
+    private static volatile JfrEvents jfr;
+
+    private static volatile boolean enabled;
+
+    private static final AtomicLong listenerFailures = new AtomicLong();
+
+    private static volatile RuntimeException lastListenerFailure;
+
+    static {
+        for (OperationListener listener : ServiceLoader.load(OperationListener.class)) {
+            listeners.add(listener);
+        }
+        if (Boolean.getBoolean(JFR_PROPERTY)) {
+            setJfrEnabled(true);
+        }
+        update();
+    }
+
+    private Instrumentation() {
+    }
+
+    public static void addListener(OperationListener listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException("listener must not be null");
+        }
+        listeners.add(listener);
+        update();
+    }
+
+    public static void removeListener(OperationListener listener) {
+        listeners.remove(listener);
+        update();
+    }
+
+    /**
+     * @param jfrEnabled whether operations are committed as JFR events.
+     * @throws IllegalStateException if the running JVM has no flight recorder.
+     */
+    public static void setJfrEnabled(boolean jfrEnabled) {
+        if (jfrEnabled && jfr == null) {
+            jfr = loadJfr();
+        }
+        Instrumentation.jfrEnabled = jfrEnabled;
+        update();
+    }
+
+    public static boolean isJfrEnabled() {
+        return jfrEnabled;
+    }
+
+    /**
+     * @return true if a listener is registered or JFR events are on.
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return how often a listener threw since the class was loaded.
+     */
+    public static long getListenerFailureCount() {
+        return listenerFailures.get();
+    }
+
+    /**
+     * @return what the last failing listener threw, null if none did.
+     */
+    public static RuntimeException getLastListenerFailure() {
+        return lastListenerFailure;
+    }
+
+    /**
+     * Starts recording an operation. Called by the library at the start of every instrumented operation.
+     *
+     * @param operation the operation that starts.
+     * @return a recorder to be closed when the operation ends, the no-op recorder if nothing listens.
+     */
+    public static OperationRecorder start(Operation operation) {
+        if (!enabled) {
+            return OperationRecorder.NOOP;
+        }
+        return new OperationRecorder(operation, jfrEnabled ? jfr.begin() : null);
+    }
+
+    static void commitJfr(Object begun, OperationRecord record) {
+        jfr.commit(begun, record);
+    }
+
+    static void completed(OperationRecord record) {
+        for (OperationListener listener : listeners) {
+            try {
+                listener.operationCompleted(record);
+            } catch (RuntimeException e) {
+                // a broken listener must not break the operation
+                listenerFailures.incrementAndGet();
+                lastListenerFailure = e;
+            }
+        }
+    }
+
+    private static JfrEvents loadJfr() {
+        try {
+            Class.forName("jdk.jfr.Event", false, Instrumentation.class.getClassLoader());
+            // by name, so the main sources compile without jdk.jfr
+            return (JfrEvents) Class.forName(Instrumentation.class.getPackage().getName() + ".JfrSupport")
+                    .getDeclaredConstructor().newInstance();
+        } catch (ClassNotFoundException | LinkageError e) {
+            throw new IllegalStateException("the JVM has no flight recorder (jdk.jfr)", e);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("the JFR support could not be loaded", e);
+        }
+    }
+
+    private static void update() {
+        enabled = jfrEnabled || !listeners.isEmpty();
+    }
+}
@@ -0,0 +1,20 @@
+package io.github.nosuchcompany.pgplug.metrics;
+
+/**
+ * Begins and commits the JFR events of operations. The implementation, {@link JfrSupport}, is
+ * compiled apart from the rest of the library, which builds with {@code --release 8} and only
+ * loads it by name once JFR events are switched on.
+ */
+interface JfrEvents {
+
+    /**
+     * @return the begun event, or null if no recording wants it.
+     */
+    Object begin();
+
+    /**
+     * @param begun  an event returned by {@link #begin()}.
+     * @param record the finished operation.
+     */
+    void commit(Object begun, OperationRecord record);
+}
@@ -0,0 +1,53 @@
+package io.github.nosuchcompany.pgplug.metrics;
+
+/**
+ * Keeps every reference to jdk.jfr in one class, which is only loaded once JFR events are switched
+ * on, so the library still runs on JVMs without a flight recorder.
+ * It and {@link OperationEvent} are compiled in a separate step of the build, see the pom.
+ */
+final class JfrSupport implements JfrEvents {
+
+    JfrSupport() {
+    }
+
+    @Override
+    public Object begin() {
+        OperationEvent event = new OperationEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void commit(Object begun, OperationRecord record) {
+        OperationEvent event = (OperationEvent) begun;
+        event.end();
+        if (!event.shouldCommit()) {
+            return;
+        }
+        event.operation = record.getOperation().name();
+        event.success = record.isSuccess();
+        event.error = record.getError() != null ? record.getError().toString() : null;
+        event.bytesIn = record.getBytesIn();
+        event.bytesOut = record.getBytesOut();
+        StringBuilder keyIds = new StringBuilder();
+        for (long keyId : record.getKeyIds()) {
+            if (keyIds.length() > 0) {
+                keyIds.append(',');
+            }
+            keyIds.append(Long.toHexString(keyId).toUpperCase());
+        }
+        event.keyIds = keyIds.toString();
+        event.keyRingParse = record.getPhaseNanos(Phase.KEY_RING_PARSE);
+        event.keyUnlock = record.getPhaseNanos(Phase.KEY_UNLOCK);
+        event.sessionKey = record.getPhaseNanos(Phase.SESSION_KEY);
+        event.symmetricCrypto = record.getPhaseNanos(Phase.SYMMETRIC_CRYPTO);
+        event.compression = record.getPhaseNanos(Phase.COMPRESSION);
+        event.integrityCheck = record.getPhaseNanos(Phase.INTEGRITY_CHECK);
+        event.signature = record.getPhaseNanos(Phase.SIGNATURE);
+        event.keyGeneration = record.getPhaseNanos(Phase.KEY_GENERATION);
+        event.commit();
+    }
+}
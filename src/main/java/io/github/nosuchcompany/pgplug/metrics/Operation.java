@@ -0,0 +1,12 @@
+package io.github.nosuchcompany.pgplug.metrics;
+
+/**
+ * The operations that are instrumented.
+ */
+public enum Operation {
+    ENCRYPT,
+    DECRYPT,
+    SIGN,
+    VERIFY,
+    KEY_GENERATION
+}
@@ -0,0 +1,66 @@
+package io.github.nosuchcompany.pgplug.metrics;
+
+import jdk.jfr.*;
+
+/**
+ * The JFR event of one operation. Its duration is the whole operation, the timespans are the phases.
+ */
+@Name("io.github.nosuchcompany.pgplug.Operation")
+@Label("PGP Operation")
+@Category("PGPlug")
+@Description("An encrypt, decrypt, sign, verify or key generation operation")
+@StackTrace(false)
+class OperationEvent extends Event {
+
+    @Label("Operation")
+    String operation;
+
+    @Label("Success")
+    boolean success;
+
+    @Label("Error")
+    String error;
+
+    @Label("Bytes In")
+    @DataAmount
+    long bytesIn;
+
+    @Label("Bytes Out")
+    @DataAmount
+    long bytesOut;
+
+    @Label("Key IDs")
+    String keyIds;
+
+    @Label("Key Ring Parse")
+    @Timespan
+    long keyRingParse;
+
+    @Label("Key Unlock")
+    @Timespan
+    long keyUnlock;
+
+    @Label("Session Key")
+    @Timespan
+    long sessionKey;
+
+    @Label("Symmetric Crypto")
+    @Timespan
+    long symmetricCrypto;
+
+    @Label("Compression")
+    @Timespan
+    long compression;
+
+    @Label("Integrity Check")
+    @Timespan
+    long integrityCheck;
+
+    @Label("Signature")
+    @Timespan
+    long signature;
+
+    @Label("Key Generation")
+    @Timespan
+    long keyGeneration;
+}
@@ -0,0 +1,12 @@
+package io.github.nosuchcompany.pgplug.metrics;
+
+/**
+ * Receives a record of every finished operation.
+ * Listeners are registered with {@link Instrumentation#addListener(OperationListener)} or found
+ * through the {@link java.util.ServiceLoader} as {@code META-INF/services/io.github.nosuchcompany.pgplug.metrics.OperationListener}.
+ * They are called on the thread that ran the operation and should return quickly.
+ */
+public interface OperationListener {
+
+    void operationCompleted(OperationRecord record);
+}
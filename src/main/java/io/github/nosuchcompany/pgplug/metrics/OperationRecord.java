@@ -0,0 +1,93 @@
+package io.github.nosuchcompany.pgplug.metrics;
+
+import java.util.Arrays;
+
+/**
+ * What happened during one operation: how long it took in total and per phase, how many bytes
+ * went in and out, which keys were involved and whether it succeeded.
+ */
+public class OperationRecord {
+    private final Operation operation;
+    private final long durationNanos;
+    private final long[] phaseNanos;
+    private final long bytesIn;
+    private final long bytesOut;
+    private final long[] keyIds;
+    private final Throwable error;
+
+    OperationRecord(Operation operation, long durationNanos, long[] phaseNanos, long bytesIn, long bytesOut, long[] keyIds, Throwable error) {
+        this.operation = operation;
+        this.durationNanos = durationNanos;
+        this.phaseNanos = phaseNanos;
+        this.bytesIn = bytesIn;
+        this.bytesOut = bytesOut;
+        this.keyIds = keyIds;
+        this.error = error;
+    }
+
+    public Operation getOperation() {
+        return operation;
+    }
+
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    /**
+     * @return the time spent in the phase, 0 if the operation has no such phase.
+     */
+    public long getPhaseNanos(Phase phase) {
+        return phaseNanos[phase.ordinal()];
+    }
+
+    /**
+     * @return the clear text bytes read by encrypt and sign, the message bytes read by decrypt and verify.
+     */
+    public long getBytesIn() {
+        return bytesIn;
+    }
+
+    /**
+     * @return the message bytes written by encrypt and sign, the clear text bytes written by decrypt and verify.
+     */
+    public long getBytesOut() {
+        return bytesOut;
+    }
+
+    /**
+     * @return the IDs of the recipient, decryption, signing or verification keys.
+     */
+    public long[] getKeyIds() {
+        return keyIds.clone();
+    }
+
+    /**
+     * @return false if the operation threw, or a signature or integrity check did not pass.
+     */
+    public boolean isSuccess() {
+        return error == null;
+    }
+
+    /**
+     * @return the exception thrown or describing the failed check, null if the operation succeeded.
+     */
+    public Throwable getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(operation.name())
+                .append("{durationNanos=").append(durationNanos);
+        for (Phase phase : Phase.values()) {
+            if (phaseNanos[phase.ordinal()] != 0) {
+                sb.append(", ").append(phase).append('=').append(phaseNanos[phase.ordinal()]);
+            }
+        }
+        return sb.append(", bytesIn=").append(bytesIn)
+                .append(", bytesOut=").append(bytesOut)
+                .append(", keyIds=").append(Arrays.toString(keyIds))
+                .append(", success=").append(isSuccess())
+                .append('}').toString();
+    }
+}
@@ -0,0 +1,300 @@
+package io.github.nosuchcompany.pgplug.metrics;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Collects what happens during one operation and hands the {@link OperationRecord} to the
+ * listeners when it is closed.
+ * Phases nest: entering a phase pauses the clock of the enclosing one, so the per phase times
+ * add up to at most the duration of the operation. Streams wrapped with
+ * {@link #measure(Phase, InputStream)} enter their phase on every read, which splits the time of
+ * layered streams, e.g. decompression on top of decryption, between the layers.
+ * A recorder belongs to the thread running the operation and is not thread safe.
+ */
+public class OperationRecorder implements AutoCloseable {
+
+    /**
+     * Does nothing; handed out while instrumentation is off.
+     */
+    static final OperationRecorder NOOP = new OperationRecorder();
+
+    private static final int MAX_DEPTH = 8;
+
+    private final boolean active;
+    private final Operation operation;
+    private final Object jfrEvent;
+    private final long start;
+    private final long[] phaseNanos;
+    private final int[] stack;
+    private int depth;
+    private long mark;
+    private long bytesIn;
+    private long bytesOut;
+    private long[] keyIds;
+    private int keyCount;
+    private Throwable error;
+    private boolean closed;
+
+    private OperationRecorder() {
+        this.active = false;
+        this.operation = null;
+        this.jfrEvent = null;
+        this.start = 0;
+        this.phaseNanos = null;
+        this.stack = null;
+    }
+
+    OperationRecorder(Operation operation, Object jfrEvent) {
+        this.active = true;
+        this.operation = operation;
+        this.jfrEvent = jfrEvent;
+        this.phaseNanos = new long[Phase.values().length];
+        this.stack = new int[MAX_DEPTH];
+        this.keyIds = new long[1];
+        this.start = System.nanoTime();
+        this.mark = start;
+    }
+
+    /**
+     * @return false for the no-op recorder, lets callers skip work that only feeds the record.
+     */
+    public boolean isActive() {
+        return active;
+    }
+
+    /**
+     * Starts a phase; has to be paired with {@link #exit()}.
+     */
+    public void enter(Phase phase) {
+        if (!active) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (depth > 0) {
+            phaseNanos[stack[depth - 1]] += now - mark;
+        }
+        if (depth < MAX_DEPTH) {
+            stack[depth] = phase.ordinal();
+        }
+        depth++;
+        mark = now;
+    }
+
+    /**
+     * Ends the phase last entered.
+     */
+    public void exit() {
+        if (!active || depth == 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        depth--;
+        if (depth < MAX_DEPTH) {
+            phaseNanos[stack[depth]] += now - mark;
+        }
+        mark = now;
+    }
+
+    public void addBytesIn(long count) {
+        if (active) {
+            bytesIn += count;
+        }
+    }
+
+    public void addBytesOut(long count) {
+        if (active) {
+            bytesOut += count;
+        }
+    }
+
+    public void addKeyId(long keyId) {
+        if (!active) {
+            return;
+        }
+        if (keyCount == keyIds.length) {
+            keyIds = Arrays.copyOf(keyIds, keyCount * 2);
+        }
+        keyIds[keyCount++] = keyId;
+    }
+
+    /**
+     * Marks the operation as failed.
+     */
+    public void failed(Throwable error) {
+        if (active && this.error == null) {
+            this.error = error;
+        }
+    }
+
+    /**
+     * @return the stream, timing its reads as the phase.
+     */
+    public InputStream measure(final Phase phase, InputStream in) {
+        if (!active) {
+            return in;
+        }
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                enter(phase);
+                try {
+                    return super.read();
+                } finally {
+                    exit();
+                }
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                enter(phase);
+                try {
+                    return super.read(b, off, len);
+                } finally {
+                    exit();
+                }
+            }
+
+            @Override
+            public long skip(long n) throws IOException {
+                enter(phase);
+                try {
+                    return super.skip(n);
+                } finally {
+                    exit();
+                }
+            }
+        };
+    }
+
+    /**
+     * @return the stream, timing its writes, flushes and close as the phase.
+     */
+    public OutputStream measure(final Phase phase, OutputStream out) {
+        if (!active) {
+            return out;
+        }
+        return new FilterOutputStream(out) {
+            @Override
+            public void write(int b) throws IOException {
+                enter(phase);
+                try {
+                    out.write(b);
+                } finally {
+                    exit();
+                }
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                enter(phase);
+                try {
+                    out.write(b, off, len);
+                } finally {
+                    exit();
+                }
+            }
+
+            @Override
+            public void flush() throws IOException {
+                enter(phase);
+                try {
+                    out.flush();
+                } finally {
+                    exit();
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                enter(phase);
+                try {
+                    out.close();
+                } finally {
+                    exit();
+                }
+            }
+        };
+    }
+
+    /**
+     * @return the stream, adding the bytes read to the bytes in.
+     */
+    public InputStream countIn(InputStream in) {
+        if (!active) {
+            return in;
+        }
+        return new FilterInputStream(in) {
+            @Override
+            public boolean markSupported() {
+                // a reset would count the same bytes twice
+                return false;
+            }
+
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b >= 0) {
+                    bytesIn++;
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int n = super.read(b, off, len);
+                if (n > 0) {
+                    bytesIn += n;
+                }
+                return n;
+            }
+        };
+    }
+
+    /**
+     * @return the stream, adding the bytes written to the bytes out.
+     */
+    public OutputStream countOut(OutputStream out) {
+        if (!active) {
+            return out;
+        }
+        return new FilterOutputStream(out) {
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+                bytesOut++;
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+                bytesOut += len;
+            }
+        };
+    }
+
+    /**
+     * Ends the operation and reports it. Only the first call counts.
+     */
+    @Override
+    public void close() {
+        if (!active || closed) {
+            return;
+        }
+        closed = true;
+        long end = System.nanoTime();
+        while (depth > 0) {
+            exit();
+        }
+        OperationRecord record = new OperationRecord(operation, end - start, phaseNanos,
+                bytesIn, bytesOut, Arrays.copyOf(keyIds, keyCount), error);
+        if (jfrEvent != null) {
+            Instrumentation.commitJfr(jfrEvent, record);
+        }
+        Instrumentation.completed(record);
+    }
+}
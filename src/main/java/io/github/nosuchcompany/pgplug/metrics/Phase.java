@@ -0,0 +1,41 @@
+package io.github.nosuchcompany.pgplug.metrics;
+
+/**
+ * The phases the time of an operation is split into.
+ * Phases are exclusive: time spent in a nested phase, e.g. decrypting while decompressing, is only
+ * counted for the nested phase.
+ */
+public enum Phase {
+    /**
+     * Parsing the key ring collection.
+     */
+    KEY_RING_PARSE,
+    /**
+     * S2K passphrase derivation and unwrapping of the secret key.
+     */
+    KEY_UNLOCK,
+    /**
+     * Wrapping or unwrapping the session key with the recipients' public keys.
+     */
+    SESSION_KEY,
+    /**
+     * Symmetric encryption or decryption of the payload.
+     */
+    SYMMETRIC_CRYPTO,
+    /**
+     * Compression or decompression of the payload.
+     */
+    COMPRESSION,
+    /**
+     * The modification detection code check at the end of a message.
+     */
+    INTEGRITY_CHECK,
+    /**
+     * Hashing the payload into a signature and creating or checking it.
+     */
+    SIGNATURE,
+    /**
+     * Generating the raw key material.
+     */
+    KEY_GENERATION
+}
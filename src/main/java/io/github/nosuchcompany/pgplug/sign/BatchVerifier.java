@@ -0,0 +1,167 @@
+package io.github.nosuchcompany.pgplug.sign;
+
+import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.openpgp.PGPPublicKeyRingCollection;
+import org.bouncycastle.openpgp.PGPUtil;
+import org.bouncycastle.openpgp.operator.jcajce.JcaKeyFingerprintCalculator;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Verifies many signed files against one key ring in parallel.
+ * The key ring is parsed once. Every input is verified on the given executor and gets its own
+ * {@link Result}; a broken or badly signed input never stops the others. The signed payloads
+ * are only hashed, not kept.
+ */
+public class BatchVerifier {
+
+    private final PGPPublicKeyRingCollection pgpRing;
+
+    private final Executor executor;
+
+    /**
+     * Creates a verifier running on the common fork join pool.
+     *
+     * @param keyIn The InputStream of the pubKey File
+     * @throws IOException  on a problem reading the key ring.
+     * @throws PGPException if the key ring could not be parsed.
+     */
+    public BatchVerifier(InputStream keyIn) throws IOException, PGPException {
+        this(new PGPPublicKeyRingCollection(PGPUtil.getDecoderStream(keyIn), new JcaKeyFingerprintCalculator()),
+                ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param pgpRing  the public key ring collection holding the signers' keys.
+     * @param executor runs the verifications, e.g. a fixed thread pool or a {@link ForkJoinPool}.
+     */
+    public BatchVerifier(PGPPublicKeyRingCollection pgpRing, Executor executor) {
+        this.pgpRing = pgpRing;
+        this.executor = executor;
+    }
+
+    /**
+     * Verifies signed files.
+     *
+     * @param files the signed files.
+     * @return one result per file, in the order of the collection.
+     */
+    public List<Result> verifyFiles(Collection<File> files) {
+        List<Callable<InputStream>> inputs = new ArrayList<Callable<InputStream>>(files.size());
+        List<String> names = new ArrayList<String>(files.size());
+        for (final File file : files) {
+            inputs.add(new Callable<InputStream>() {
+                @Override
+                public InputStream call() throws IOException {
+                    return new FileInputStream(file);
+                }
+            });
+            names.add(file.getPath());
+        }
+        return verify(inputs, names);
+    }
+
+    /**
+     * Verifies signed streams. Each stream is opened on the worker verifying it and closed afterwards.
+     *
+     * @param inputs opens the signed streams.
+     * @return one result per input, in the order of the list.
+     */
+    public List<Result> verify(List<? extends Callable<? extends InputStream>> inputs) {
+        List<String> names = new ArrayList<String>(inputs.size());
+        for (int i = 0; i < inputs.size(); i++) {
+            names.add("#" + i);
+        }
+        return verify(inputs, names);
+    }
+
+    private List<Result> verify(List<? extends Callable<? extends InputStream>> inputs, List<String> names) {
+        List<CompletableFuture<Result>> futures = new ArrayList<CompletableFuture<Result>>(inputs.size());
+        for (int i = 0; i < inputs.size(); i++) {
+            final int index = i;
+            final String name = names.get(i);
+            final Callable<? extends InputStream> input = inputs.get(i);
+            futures.add(CompletableFuture.supplyAsync(() -> verifyOne(index, name, input), executor));
+        }
+
+        List<Result> results = new ArrayList<Result>(futures.size());
+        for (CompletableFuture<Result> future : futures) {
+            results.add(future.join());
+        }
+        return results;
+    }
+
+    private Result verifyOne(int index, String name, Callable<? extends InputStream> input) {
+        try (InputStream in = new BufferedInputStream(input.call(), 1 << 16)) {
+            return new Result(index, name, SignedFileProcessor.verifyFile(in, pgpRing, NullOutputStream.INSTANCE), null);
+        } catch (Exception e) {
+            return new Result(index, name, false, e);
+        }
+    }
+
+    /**
+     * The outcome of verifying one input.
+     */
+    public static class Result {
+        private final int index;
+        private final String name;
+        private final boolean verified;
+        private final Exception error;
+
+        Result(int index, String name, boolean verified, Exception error) {
+            this.index = index;
+            this.name = name;
+            this.verified = verified;
+            this.error = error;
+        }
+
+        /**
+         * @return the position of the input in the batch.
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * @return the file path, or "#index" for streams.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return true only if the signature is valid and made by a key of the ring.
+         */
+        public boolean isVerified() {
+            return verified;
+        }
+
+        /**
+         * @return why the input could not be verified at all, null if it was read completely.
+         */
+        public Exception getError() {
+            return error;
+        }
+
+        @Override
+        public String toString() {
+            return name + ": " + (verified ? "verified" : error != null ? "failed (" + error + ")" : "not verified");
+        }
+    }
+
+    private static final class NullOutputStream extends OutputStream {
+        private static final NullOutputStream INSTANCE = new NullOutputStream();
+
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    }
+}
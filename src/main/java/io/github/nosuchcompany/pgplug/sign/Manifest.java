@@ -0,0 +1,207 @@
+package io.github.nosuchcompany.pgplug.sign;
+
+import io.github.nosuchcompany.pgplug.buffer.BufferPool;
+import org.bouncycastle.util.encoders.Hex;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The digests of every file of a directory tree.
+ * The canonical form, which is what gets signed, is UTF-8 with LF line endings:
+ * <pre>
+ * PGPLUG-MANIFEST 1
+ * SHA-256
+ * &lt;hex digest&gt;  &lt;path&gt;
+ * ...
+ * </pre>
+ * with one line per file, sorted by path. Paths are relative to the root and separated by '/'.
+ * Instances are immutable.
+ */
+public final class Manifest {
+
+    public static final String SHA256 = "SHA-256";
+
+    public static final String SHA512 = "SHA-512";
+
+    private static final String HEADER = "PGPLUG-MANIFEST 1";
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final String algorithm;
+
+    private final SortedMap<String, String> digests;
+
+    private Manifest(String algorithm, SortedMap<String, String> digests) {
+        this.algorithm = algorithm;
+        this.digests = Collections.unmodifiableSortedMap(digests);
+    }
+
+    /**
+     * Hashes every regular file below the root, the files in parallel.
+     *
+     * @param root      the directory tree.
+     * @param algorithm {@link #SHA256} or {@link #SHA512}.
+     * @param executor  runs the hashing.
+     * @return the manifest of the tree.
+     * @throws IOException on a problem listing or reading the files.
+     */
+    public static Manifest create(Path root, String algorithm, Executor executor) throws IOException {
+        checkAlgorithm(algorithm);
+        return create(root, list(root), algorithm, executor);
+    }
+
+    /**
+     * Hashes the listed files. A listed file that is gone by the time it is hashed fails the
+     * manifest, which must not be signed with a hole in it.
+     */
+    static Manifest create(Path root, List<String> paths, String algorithm, Executor executor) throws IOException {
+        SortedMap<String, String> digests = digest(root, paths, algorithm, executor);
+        for (Map.Entry<String, String> entry : digests.entrySet()) {
+            if (entry.getValue() == null) {
+                throw new NoSuchFileException(root.resolve(entry.getKey()).toString(), null, "file vanished while the manifest was created");
+            }
+        }
+        return new Manifest(algorithm, digests);
+    }
+
+    /**
+     * Parses the canonical form.
+     *
+     * @param in the manifest, read until end of stream.
+     * @return the manifest.
+     * @throws IOException if the manifest can not be read or is malformed.
+     */
+    public static Manifest read(InputStream in) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        if (!HEADER.equals(reader.readLine())) {
+            throw new IOException("not a manifest");
+        }
+        String algorithm = reader.readLine();
+        if (!SHA256.equals(algorithm) && !SHA512.equals(algorithm)) {
+            throw new IOException("unsupported manifest digest: " + algorithm);
+        }
+        SortedMap<String, String> digests = new TreeMap<String, String>();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            int separator = line.indexOf("  ");
+            if (separator < 0 || digests.put(line.substring(separator + 2), line.substring(0, separator)) != null) {
+                throw new IOException("malformed manifest line: " + line);
+            }
+        }
+        return new Manifest(algorithm, digests);
+    }
+
+    /**
+     * Writes the canonical form.
+     *
+     * @param out receives the manifest. It is not closed.
+     * @throws IOException on a problem writing the stream.
+     */
+    public void write(OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        writer.write(HEADER);
+        writer.write('\n');
+        writer.write(algorithm);
+        writer.write('\n');
+        for (Map.Entry<String, String> entry : digests.entrySet()) {
+            writer.write(entry.getValue());
+            writer.write("  ");
+            writer.write(entry.getKey());
+            writer.write('\n');
+        }
+        writer.flush();
+    }
+
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * @return the hex digests by relative path, sorted by path.
+     */
+    public SortedMap<String, String> getDigests() {
+        return digests;
+    }
+
+    /**
+     * @return the relative paths of every regular file below the root, '/' separated.
+     */
+    static List<String> list(Path root) throws IOException {
+        try (Stream<Path> files = Files.walk(root)) {
+            List<String> paths = new ArrayList<String>();
+            for (Path file : files.filter(Files::isRegularFile).collect(Collectors.toList())) {
+                String path = root.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/");
+                if (path.indexOf('\n') >= 0 || path.indexOf('\r') >= 0) {
+                    throw new IOException("file name with a line break can not be listed: " + path);
+                }
+                paths.add(path);
+            }
+            return paths;
+        }
+    }
+
+    /**
+     * Hashes the files in parallel.
+     *
+     * @return the hex digests by relative path, null for files that do not exist, which only
+     * {@link ManifestVerifier} takes as missing.
+     */
+    static SortedMap<String, String> digest(final Path root, Collection<String> paths, final String algorithm, Executor executor) throws IOException {
+        Map<String, CompletableFuture<String>> futures = new LinkedHashMap<String, CompletableFuture<String>>();
+        for (final String path : paths) {
+            futures.put(path, CompletableFuture.supplyAsync(() -> digest(root.resolve(path), algorithm), executor));
+        }
+        SortedMap<String, String> digests = new TreeMap<String, String>();
+        for (Map.Entry<String, CompletableFuture<String>> entry : futures.entrySet()) {
+            try {
+                digests.put(entry.getKey(), entry.getValue().join());
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw e;
+            }
+        }
+        return digests;
+    }
+
+    private static String digest(Path file, String algorithm) {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        BufferPool pool = BufferPool.getDefault();
+        byte[] buffer = pool.acquire(BUFFER_SIZE);
+        try (InputStream in = Files.newInputStream(file)) {
+            MessageDigest md = MessageDigest.getInstance(algorithm);
+            int len;
+            while ((len = in.read(buffer)) >= 0) {
+                md.update(buffer, 0, len);
+            }
+            return Hex.toHexString(md.digest());
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            pool.release(buffer);
+        }
+    }
+
+    static void checkAlgorithm(String algorithm) {
+        if (!SHA256.equals(algorithm) && !SHA512.equals(algorithm)) {
+            throw new IllegalArgumentException("unsupported manifest digest: " + algorithm);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package io.github.nosuchcompany.pgplug.sign;
+
+import org.bouncycastle.bcpg.HashAlgorithmTags;
+import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.openpgp.PGPSecretKey;
+
+import java.io.*;
+import java.nio.file.Path;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Signs a whole directory tree with a single private key operation.
+ * The files are hashed in parallel into a {@link Manifest}, and only the manifest is signed,
+ * with a detached signature using the manifest's digest algorithm. Compared to
+ * {@link SignedFileProcessor#signFile(String, InputStream, OutputStream, char[], boolean)} per file,
+ * there is no compressed copy of any file and one signature instead of one per file.
+ * {@link ManifestVerifier} checks the signature and the files.
+ */
+public class ManifestSigner {
+
+    private final PGPSecretKey pgpSec;
+
+    private final char[] pass;
+
+    private final String algorithm;
+
+    private final Executor executor;
+
+    /**
+     * Creates a signer hashing with SHA-256 on the common fork join pool.
+     *
+     * @param pgpSec the signing key.
+     * @param pass   the password wrt the secret key.
+     */
+    public ManifestSigner(PGPSecretKey pgpSec, char[] pass) {
+        this(pgpSec, pass, Manifest.SHA256, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param pgpSec    the signing key.
+     * @param pass      the password wrt the secret key.
+     * @param algorithm {@link Manifest#SHA256} or {@link Manifest#SHA512}.
+     * @param executor  runs the hashing, e.g. a fixed thread pool or a {@link ForkJoinPool}.
+     */
+    public ManifestSigner(PGPSecretKey pgpSec, char[] pass, String algorithm, Executor executor) {
+        Manifest.checkAlgorithm(algorithm);
+        this.pgpSec = pgpSec;
+        this.pass = pass;
+        this.algorithm = algorithm;
+        this.executor = executor;
+    }
+
+    /**
+     * Hashes the tree, writes its manifest and signs it.
+     *
+     * @param root        the directory tree.
+     * @param manifestOut receives the manifest. It is not closed.
+     * @param sigOut      receives the detached signature of the manifest. It is not closed.
+     * @param armor       whether the signature is ASCII armored.
+     * @return the manifest that was written.
+     * @throws IOException  on a problem reading the files or writing the output.
+     * @throws PGPException if the secret key can not be used.
+     */
+    public Manifest sign(Path root, OutputStream manifestOut, OutputStream sigOut, boolean armor) throws IOException, PGPException {
+        Manifest manifest = Manifest.create(root, algorithm, executor);
+        ByteArrayOutputStream bOut = new ByteArrayOutputStream();
+        manifest.write(bOut);
+        byte[] canonical = bOut.toByteArray();
+
+        manifestOut.write(canonical);
+        manifestOut.flush();
+        SignedFileProcessor.signDetached(new ByteArrayInputStream(canonical), pgpSec, sigOut, pass, armor, hashAlgorithm(algorithm));
+        return manifest;
+    }
+
+    private static int hashAlgorithm(String algorithm) {
+        return Manifest.SHA512.equals(algorithm) ? HashAlgorithmTags.SHA512 : HashAlgorithmTags.SHA256;
+    }
+}
@@ -0,0 +1,157 @@
+package io.github.nosuchcompany.pgplug.sign;
+
+import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.openpgp.PGPPublicKeyRingCollection;
+import org.bouncycastle.openpgp.PGPUtil;
+import org.bouncycastle.openpgp.operator.jcajce.JcaKeyFingerprintCalculator;
+
+import java.io.*;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Verifies a directory tree signed by {@link ManifestSigner}.
+ * The signature of the manifest is checked first; only a correctly signed manifest is trusted,
+ * and the files it lists are then re-hashed in parallel and compared to it.
+ */
+public class ManifestVerifier {
+
+    private final PGPPublicKeyRingCollection pgpRing;
+
+    private final Executor executor;
+
+    /**
+     * Creates a verifier running on the common fork join pool.
+     *
+     * @param keyIn The InputStream of the pubKey File
+     * @throws IOException  on a problem reading the key ring.
+     * @throws PGPException if the key ring could not be parsed.
+     */
+    public ManifestVerifier(InputStream keyIn) throws IOException, PGPException {
+        this(new PGPPublicKeyRingCollection(PGPUtil.getDecoderStream(keyIn), new JcaKeyFingerprintCalculator()),
+                ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param pgpRing  the public key ring collection holding the signer's key.
+     * @param executor runs the hashing, e.g. a fixed thread pool or a {@link ForkJoinPool}.
+     */
+    public ManifestVerifier(PGPPublicKeyRingCollection pgpRing, Executor executor) {
+        this.pgpRing = pgpRing;
+        this.executor = executor;
+    }
+
+    /**
+     * Verifies the manifest's signature and the files of the tree.
+     *
+     * @param root       the directory tree.
+     * @param manifestIn the manifest, read until end of stream.
+     * @param sigIn      the detached signature of the manifest.
+     * @return the outcome. The files are not looked at if the signature is not valid.
+     * @throws IOException  on a problem reading the manifest, the signature or the files.
+     * @throws PGPException if the signature could not be parsed.
+     */
+    public Result verify(Path root, InputStream manifestIn, InputStream sigIn) throws IOException, PGPException {
+        ByteArrayOutputStream bOut = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1 << 16];
+        int len;
+        while ((len = manifestIn.read(buffer)) >= 0) {
+            bOut.write(buffer, 0, len);
+        }
+        byte[] canonical = bOut.toByteArray();
+        if (!SignedFileProcessor.verifyDetached(new ByteArrayInputStream(canonical), sigIn, pgpRing)) {
+            return new Result(false, Collections.<String>emptyList(), Collections.<String>emptyList(), Collections.<String>emptyList());
+        }
+
+        Manifest manifest = Manifest.read(new ByteArrayInputStream(canonical));
+        Path base = root.toAbsolutePath().normalize();
+        for (String path : manifest.getDigests().keySet()) {
+            if (!base.resolve(path).normalize().startsWith(base)) {
+                throw new IOException("manifest path outside of the tree: " + path);
+            }
+        }
+
+        SortedMap<String, String> actual = Manifest.digest(root, manifest.getDigests().keySet(), manifest.getAlgorithm(), executor);
+        List<String> mismatched = new ArrayList<String>();
+        List<String> missing = new ArrayList<String>();
+        for (Map.Entry<String, String> entry : manifest.getDigests().entrySet()) {
+            String digest = actual.get(entry.getKey());
+            if (digest == null) {
+                missing.add(entry.getKey());
+            } else if (!digest.equals(entry.getValue())) {
+                mismatched.add(entry.getKey());
+            }
+        }
+        List<String> unlisted = new ArrayList<String>();
+        for (String path : Manifest.list(root)) {
+            if (!manifest.getDigests().containsKey(path)) {
+                unlisted.add(path);
+            }
+        }
+        Collections.sort(unlisted);
+        return new Result(true, mismatched, missing, unlisted);
+    }
+
+    /**
+     * The outcome of verifying a tree.
+     */
+    public static class Result {
+        private final boolean signatureValid;
+        private final List<String> mismatched;
+        private final List<String> missing;
+        private final List<String> unlisted;
+
+        Result(boolean signatureValid, List<String> mismatched, List<String> missing, List<String> unlisted) {
+            this.signatureValid = signatureValid;
+            this.mismatched = Collections.unmodifiableList(mismatched);
+            this.missing = Collections.unmodifiableList(missing);
+            this.unlisted = Collections.unmodifiableList(unlisted);
+        }
+
+        /**
+         * @return true only if the manifest is signed by a key of the ring and every file matches it exactly.
+         */
+        public boolean isVerified() {
+            return signatureValid && mismatched.isEmpty() && missing.isEmpty() && unlisted.isEmpty();
+        }
+
+        /**
+         * @return true if the manifest's signature is valid and made by a key of the ring.
+         */
+        public boolean isSignatureValid() {
+            return signatureValid;
+        }
+
+        /**
+         * @return the listed files whose content changed, sorted.
+         */
+        public List<String> getMismatched() {
+            return mismatched;
+        }
+
+        /**
+         * @return the listed files that do not exist anymore, sorted.
+         */
+        public List<String> getMissing() {
+            return missing;
+        }
+
+        /**
+         * @return the files of the tree the manifest does not list, sorted.
+         */
+        public List<String> getUnlisted() {
+            return unlisted;
+        }
+
+        @Override
+        public String toString() {
+            if (!signatureValid) {
+                return "signature not valid";
+            }
+            return isVerified() ? "verified"
+                    : "mismatched=" + mismatched + ", missing=" + missing + ", unlisted=" + unlisted;
+        }
+    }
+}
@@ -1,11 +1,23 @@
 package io.github.nosuchcompany.pgplug.sign;
 
 import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
 import java.security.SignatureException;
 import java.util.Iterator;
 
+import io.github.nosuchcompany.pgplug.buffer.BufferPool;
+import io.github.nosuchcompany.pgplug.keystore.KeyLookup;
+import io.github.nosuchcompany.pgplug.metrics.Instrumentation;
+import io.github.nosuchcompany.pgplug.metrics.Operation;
+import io.github.nosuchcompany.pgplug.metrics.OperationRecorder;
+import io.github.nosuchcompany.pgplug.metrics.Phase;
+import io.github.nosuchcompany.pgplug.utils.Compression;
+import io.github.nosuchcompany.pgplug.utils.CryptoProviders;
+import io.github.nosuchcompany.pgplug.utils.FileChannels;
 import io.github.nosuchcompany.pgplug.utils.PGPUtils;
 import org.bouncycastle.bcpg.ArmoredOutputStream;
 import org.bouncycastle.bcpg.BCPGOutputStream;
@@ -23,6 +35,8 @@ import org.bouncycastle.openpgp.operator.jcajce.*;
  */
 public class SignedFileProcessor {
 
+    private static final int BUFFER_SIZE = 1 << 16;
+
     /**
      * Verify that the given file was signed by the owner of the pubKey
      *
@@ -34,34 +48,45 @@ public class SignedFileProcessor {
             InputStream in,
             InputStream keyIn)
             throws Exception {
-        in = PGPUtil.getDecoderStream(in);
-
-        JcaPGPObjectFactory pgpFact = new JcaPGPObjectFactory(in);
-        PGPCompressedData c1 = (PGPCompressedData) pgpFact.nextObject();
-        pgpFact = new JcaPGPObjectFactory(c1.getDataStream());
-        PGPOnePassSignatureList p1 = (PGPOnePassSignatureList) pgpFact.nextObject();
-        PGPOnePassSignature ops = p1.get(0);
-        PGPLiteralData p2 = (PGPLiteralData) pgpFact.nextObject();
-
-        InputStream dIn = p2.getInputStream();
-        int ch;
-        PGPPublicKeyRingCollection pgpRing = new PGPPublicKeyRingCollection(PGPUtil.getDecoderStream(keyIn), new JcaKeyFingerprintCalculator());
-        PGPPublicKey key = pgpRing.getPublicKey(ops.getKeyID());
-        FileOutputStream out = new FileOutputStream(p2.getFileName());
+        OperationRecorder recorder = Instrumentation.start(Operation.VERIFY);
         try {
-            ops.init(new JcaPGPContentVerifierBuilderProvider().setProvider("BC"), key);
+            in = PGPUtil.getDecoderStream(recorder.countIn(in));
 
-            while ((ch = dIn.read()) >= 0) {
-                ops.update((byte) ch);
-                out.write(ch);
+            JcaPGPObjectFactory pgpFact = new JcaPGPObjectFactory(in);
+            Object o = pgpFact.nextObject();
+            if (o instanceof PGPCompressedData) {
+                pgpFact = new JcaPGPObjectFactory(recorder.measure(Phase.COMPRESSION, ((PGPCompressedData) o).getDataStream()));
+                o = pgpFact.nextObject();
             }
+            PGPOnePassSignatureList p1 = (PGPOnePassSignatureList) o;
+            PGPOnePassSignature ops = p1.get(0);
+            PGPLiteralData p2 = (PGPLiteralData) pgpFact.nextObject();
+
+            InputStream dIn = p2.getInputStream();
+            recorder.enter(Phase.KEY_RING_PARSE);
+            PGPPublicKeyRingCollection pgpRing = new PGPPublicKeyRingCollection(PGPUtil.getDecoderStream(keyIn), new JcaKeyFingerprintCalculator());
+            recorder.exit();
+            recorder.addKeyId(ops.getKeyID());
+            PGPPublicKey key = pgpRing.getPublicKey(ops.getKeyID());
+            OutputStream out = new BufferedOutputStream(new FileOutputStream(p2.getFileName()), BUFFER_SIZE);
+            try {
+                ops.init(new JcaPGPContentVerifierBuilderProvider().setProvider(CryptoProviders.getDefault().getAsymmetric()), key);
+                copy(dIn, ops, recorder.countOut(out), recorder);
+            } catch (Exception e) {
+                out.close();
+                recorder.failed(e);
+                return false;
+            }
+
+            out.close();
+            PGPSignatureList p3 = (PGPSignatureList) pgpFact.nextObject();
+            return verify(ops, p3.get(0), recorder);
         } catch (Exception e) {
-            return false;
+            recorder.failed(e);
+            throw e;
+        } finally {
+            recorder.close();
         }
-
-        out.close();
-        PGPSignatureList p3 = (PGPSignatureList) pgpFact.nextObject();
-        return ops.verify(p3.get(0));
     }
 
 
@@ -70,44 +95,134 @@ public class SignedFileProcessor {
      *
      * @param inStream    The InputStream of the file that should be signed
      * @param keyIn The InputStream of the pubKey File
-     * @throws Exception
-     * @return ByteArrayOutputStream
+     * @throws Exception if the key ring could not be read.
+     * @return the signed payload, or null if the signature is not valid or the signed file is corrupt or truncated.
      */
     public static ByteArrayOutputStream verifyFile(
             ByteArrayInputStream inStream,
             InputStream keyIn)
             throws Exception {
-        InputStream in = PGPUtil.getDecoderStream(inStream);
+        PGPPublicKeyRingCollection pgpRing = new PGPPublicKeyRingCollection(PGPUtil.getDecoderStream(keyIn), new JcaKeyFingerprintCalculator());
+        // the payload is about as large as the signed file, unless it was compressed
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(32, inStream.available()));
+        try {
+            if (verifyFile(inStream, pgpRing, out)) {
+                return out;
+            }
+        } catch (IOException | PGPException e) {
+            // a payload that can not be read or checked is not verified
+            return null;
+        }
+
+        return null;
+    }
+
+    /**
+     * Verify a signed file and write its payload from file to file.
+     * The signed file is read through memory-mapped windows and the payload written through a direct buffer.
+     *
+     * @param in      the signed file
+     * @param pgpRing The public key ring collection holding the signer's key
+     * @param out     receives the signed payload, created or replaced. It is deleted unless the signature is valid.
+     * @return true if the signature is valid, false if it is not or the signer's key is not in the ring.
+     * @throws IOException  on a problem reading the signed file or writing the payload.
+     * @throws PGPException if the signed file could not be parsed.
+     */
+    public static boolean verifyFile(
+            Path in,
+            PGPPublicKeyRingCollection pgpRing,
+            Path out)
+            throws IOException, PGPException {
+        FileChannels.checkNotSameFile(out, in);
+        boolean verified = false;
+        try (FileChannel inChannel = FileChannel.open(in, StandardOpenOption.READ);
+             FileChannel outChannel = FileChannels.openForWriting(out, in);
+             OutputStream fOut = FileChannels.newOutputStream(outChannel)) {
+            verified = verifyFile(FileChannels.newInputStream(inChannel), pgpRing, fOut);
+            return verified;
+        } finally {
+            if (!verified) {
+                FileChannels.discard(out);
+            }
+        }
+    }
+
+    /**
+     * Verify that the given file was signed by the owner of one of the keys in the already parsed key ring.
+     * Parsing the key ring once and calling this for every file is much cheaper than passing the key ring
+     * stream to every call.
+     *
+     * @param in      The InputStream of the signed file
+     * @param pgpRing The public key ring collection holding the signer's key
+     * @param out     receives the signed payload. It is not closed.
+     * @return true if the signature is valid, false if it is not or the signer's key is not in the ring.
+     * @throws IOException  on a problem reading the signed file or writing the payload.
+     * @throws PGPException if the signed file could not be parsed.
+     */
+    public static boolean verifyFile(
+            InputStream in,
+            PGPPublicKeyRingCollection pgpRing,
+            OutputStream out)
+            throws IOException, PGPException {
+        return verifyFile(in, KeyLookup.of(pgpRing), out);
+    }
+
+    /**
+     * Verify that the given file was signed by the owner of one of the keys of a lookup, e.g. a
+     * {@link io.github.nosuchcompany.pgplug.keystore.PGPKeyStore}.
+     *
+     * @param in   The InputStream of the signed file
+     * @param keys finds the signer's key
+     * @param out  receives the signed payload. It is not closed.
+     * @return true if the signature is valid, false if it is not or the signer's key is not known.
+     * @throws IOException  on a problem reading the signed file or writing the payload.
+     * @throws PGPException if the signed file could not be parsed.
+     */
+    public static boolean verifyFile(
+            InputStream in,
+            KeyLookup keys,
+            OutputStream out)
+            throws IOException, PGPException {
+        OperationRecorder recorder = Instrumentation.start(Operation.VERIFY);
+        try {
+            return verifyFile(recorder.countIn(in), keys, recorder.countOut(out), recorder);
+        } catch (IOException | PGPException | RuntimeException e) {
+            recorder.failed(e);
+            throw e;
+        } finally {
+            recorder.close();
+        }
+    }
+
+    private static boolean verifyFile(
+            InputStream in,
+            KeyLookup keys,
+            OutputStream out,
+            OperationRecorder recorder)
+            throws IOException, PGPException {
+        in = PGPUtil.getDecoderStream(in);
 
         JcaPGPObjectFactory pgpFact = new JcaPGPObjectFactory(in);
-        PGPCompressedData c1 = (PGPCompressedData) pgpFact.nextObject();
-        pgpFact = new JcaPGPObjectFactory(c1.getDataStream());
-        PGPOnePassSignatureList p1 = (PGPOnePassSignatureList) pgpFact.nextObject();
+        Object o = pgpFact.nextObject();
+        if (o instanceof PGPCompressedData) {
+            pgpFact = new JcaPGPObjectFactory(recorder.measure(Phase.COMPRESSION, ((PGPCompressedData) o).getDataStream()));
+            o = pgpFact.nextObject();
+        }
+        PGPOnePassSignatureList p1 = (PGPOnePassSignatureList) o;
         PGPOnePassSignature ops = p1.get(0);
         PGPLiteralData p2 = (PGPLiteralData) pgpFact.nextObject();
 
-        InputStream dIn = p2.getInputStream();
-        int ch;
-        PGPPublicKeyRingCollection pgpRing = new PGPPublicKeyRingCollection(PGPUtil.getDecoderStream(keyIn), new JcaKeyFingerprintCalculator());
-        PGPPublicKey key = pgpRing.getPublicKey(ops.getKeyID());
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        try {
-            ops.init(new JcaPGPContentVerifierBuilderProvider().setProvider("BC"), key);
-
-            while ((ch = dIn.read()) >= 0) {
-                ops.update((byte) ch);
-                out.write(ch);
-            }
-        } catch (Exception e) {
-            return null;
+        recorder.addKeyId(ops.getKeyID());
+        PGPPublicKey key = keys.getPublicKey(ops.getKeyID());
+        if (key == null) {
+            recorder.failed(new PGPException("signer's key not in the key ring."));
+            return false;
         }
+        ops.init(new JcaPGPContentVerifierBuilderProvider().setProvider(CryptoProviders.getDefault().getAsymmetric()), key);
+        copy(p2.getInputStream(), ops, out, recorder);
 
         PGPSignatureList p3 = (PGPSignatureList) pgpFact.nextObject();
-        if(ops.verify(p3.get(0))){
-            return out;
-        };
-
-        return null;
+        return verify(ops, p3.get(0), recorder);
     }
 
     /**
@@ -131,75 +246,428 @@ public class SignedFileProcessor {
             char[] pass,
             boolean armor)
             throws IOException, NoSuchAlgorithmException, NoSuchProviderException, PGPException, SignatureException {
-        if (armor) {
-            out = new ArmoredOutputStream(out);
+        signFile(fileName, PGPUtils.readSecretKey(keyIn), out, pass, armor);
+    }
+
+    /**
+     * Generate an encapsulated signed file.
+     *
+     * @param fileName  the name of the file, that file that should be signed
+     * @param pgpSec PrivateKeyRing
+     * @param out the outputStream of the file that should be signed
+     * @param pass the password wrt the secrect key
+     * @param armor should be true if you have no idea what you are doing
+     * @throws IOException
+     * @throws NoSuchAlgorithmException
+     * @throws NoSuchProviderException
+     * @throws PGPException
+     * @throws SignatureException
+     */
+    public static void signFile(
+            String fileName,
+            PGPSecretKey pgpSec,
+            OutputStream out,
+            char[] pass,
+            boolean armor)
+            throws IOException, NoSuchAlgorithmException, NoSuchProviderException, PGPException, SignatureException {
+        signFile(fileName, pgpSec, out, pass, armor, Compression.ZLIB);
+    }
+
+    /**
+     * Generate an encapsulated signed file with a chosen compression.
+     *
+     * @param fileName    the name of the file, that file that should be signed
+     * @param pgpSec      PrivateKeyRing
+     * @param out         the outputStream of the file that should be signed
+     * @param pass        the password wrt the secrect key
+     * @param armor       should be true if you have no idea what you are doing
+     * @param compression the compression algorithm and level, {@link Compression#adaptive()} skips
+     *                    compressing files that do not shrink.
+     * @throws IOException  on a problem reading the file or writing the signed file.
+     * @throws PGPException if the secret key can not be used.
+     */
+    public static void signFile(
+            String fileName,
+            PGPSecretKey pgpSec,
+            OutputStream out,
+            char[] pass,
+            boolean armor,
+            Compression compression)
+            throws IOException, PGPException {
+        OperationRecorder recorder = Instrumentation.start(Operation.SIGN);
+        try {
+            signFile(fileName, pgpSec, recorder.countOut(out), pass, armor, compression, recorder);
+        } catch (IOException | PGPException | RuntimeException e) {
+            recorder.failed(e);
+            throw e;
+        } finally {
+            recorder.close();
         }
-        PGPSecretKey pgpSec = PGPUtils.readSecretKey(keyIn);
-        PGPPrivateKey pgpPrivKey = pgpSec.extractPrivateKey(new JcePBESecretKeyDecryptorBuilder().setProvider("BC").build(pass));
-        PGPSignatureGenerator sGen = new PGPSignatureGenerator(new JcaPGPContentSignerBuilder(pgpSec.getPublicKey().getAlgorithm(), PGPUtil.SHA1).setProvider("BC"));
+    }
 
-        sGen.init(PGPSignature.BINARY_DOCUMENT, pgpPrivKey);
+    /**
+     * Generate an encapsulated signed file from file to file.
+     * The file is read through memory-mapped windows and the signed file written through a direct
+     * buffer, which saves the stream copies for large files.
+     *
+     * @param in          the file that should be signed
+     * @param pgpSec      PrivateKeyRing
+     * @param out         the signed file, created or replaced. It is deleted if signing fails, so no
+     *                    truncated signed file is left behind.
+     * @param pass        the password wrt the secrect key
+     * @param armor       whether the signed file is ASCII armored
+     * @param compression the compression algorithm and level.
+     * @throws IOException  on a problem reading the file or writing the signed file.
+     * @throws PGPException if the secret key can not be used.
+     */
+    public static void signFile(
+            Path in,
+            PGPSecretKey pgpSec,
+            Path out,
+            char[] pass,
+            boolean armor,
+            Compression compression)
+            throws IOException, PGPException {
+        FileChannels.checkNotSameFile(out, in);
+        OperationRecorder recorder = Instrumentation.start(Operation.SIGN);
+        try (FileChannel inChannel = FileChannel.open(in, StandardOpenOption.READ);
+             FileChannel outChannel = FileChannels.openForWriting(out, in);
+             OutputStream fOut = FileChannels.newOutputStream(outChannel)) {
+            signFile(FileChannels.newInputStream(inChannel), in.toFile(), pgpSec, recorder.countOut(fOut), pass, armor, compression, recorder);
+        } catch (IOException | PGPException | RuntimeException e) {
+            // the channels are closed here, which covers a failure flushing the end of the signed file
+            recorder.failed(e);
+            FileChannels.discard(out);
+            throw e;
+        } finally {
+            recorder.close();
+        }
+    }
 
-        Iterator it = pgpSec.getPublicKey().getUserIDs();
-        if (it.hasNext()) {
-            PGPSignatureSubpacketGenerator spGen = new PGPSignatureSubpacketGenerator();
+    private static void signFile(
+            String fileName,
+            PGPSecretKey pgpSec,
+            OutputStream out,
+            char[] pass,
+            boolean armor,
+            Compression compression,
+            OperationRecorder recorder)
+            throws IOException, PGPException {
+        File file = new File(fileName);
+        try (InputStream fIn = new FileInputStream(file)) {
+            signFile(fIn, file, pgpSec, out, pass, armor, compression, recorder);
+        }
+    }
 
-            spGen.setSignerUserID(false, (String) it.next());
-            sGen.setHashedSubpackets(spGen.generate());
+    private static void signFile(
+            InputStream fIn,
+            File file,
+            PGPSecretKey pgpSec,
+            OutputStream out,
+            char[] pass,
+            boolean armor,
+            Compression compression,
+            OperationRecorder recorder)
+            throws IOException, PGPException {
+        if (armor) {
+            out = new ArmoredOutputStream(out);
         }
+        PGPSignatureGenerator sGen = initSignatureGenerator(pgpSec, pass, recorder);
+
+        fIn = recorder.countIn(fIn);
+        byte[] sample = new byte[Compression.SAMPLE_SIZE];
+        int sampled = Compression.readSample(fIn, sample);
 
-        PGPCompressedDataGenerator cGen = new PGPCompressedDataGenerator(
-                PGPCompressedData.ZLIB);
+        recorder.enter(Phase.COMPRESSION);
+        PGPCompressedDataGenerator cGen = compression.newGenerator(sample, sampled);
+        recorder.exit();
 
-        BCPGOutputStream bOut = new BCPGOutputStream(cGen.open(out));
+        BCPGOutputStream bOut = new BCPGOutputStream(cGen == null ? out : recorder.measure(Phase.COMPRESSION, cGen.open(out)));
 
         sGen.generateOnePassVersion(false).encode(bOut);
 
-        File file = new File(fileName);
         PGPLiteralDataGenerator lGen = new PGPLiteralDataGenerator();
         OutputStream lOut = lGen.open(bOut, PGPLiteralData.BINARY, file);
-        FileInputStream fIn = new FileInputStream(file);
-        int ch;
-
-        while ((ch = fIn.read()) >= 0) {
-            lOut.write(ch);
-            sGen.update((byte) ch);
-        }
+        lOut.write(sample, 0, sampled);
+        recorder.enter(Phase.SIGNATURE);
+        sGen.update(sample, 0, sampled);
+        recorder.exit();
+        copy(fIn, sGen, lOut, recorder);
 
         lGen.close();
-        sGen.generate().encode(bOut);
-        cGen.close();
+        recorder.enter(Phase.SIGNATURE);
+        PGPSignature signature = sGen.generate();
+        recorder.exit();
+        signature.encode(bOut);
+        if (cGen != null) {
+            recorder.enter(Phase.COMPRESSION);
+            cGen.close();
+            recorder.exit();
+        }
         if (armor) {
             out.close();
         }
     }
 
     /**
-     * Generate an encapsulated signed file.
+     * Generate a detached signature of a file.
+     * Only the file is hashed, it is neither compressed nor copied, and the signature is written on its own.
      *
-     * @param fileName  the name of the file, that file that should be signed
-     * @param pgpSec PrivateKeyRing
-     * @param out the outputStream of the file that should be signed
-     * @param pass the password wrt the secrect key
-     * @param armor should be true if you have no idea what you are doing
-     * @throws IOException
-     * @throws NoSuchAlgorithmException
-     * @throws NoSuchProviderException
-     * @throws PGPException
-     * @throws SignatureException
+     * @param fileName the name of the file that should be signed
+     * @param keyIn    the InputStream of the Secret Key that should sign the file
+     * @param sigOut   receives the signature, e.g. a .sig or .asc file
+     * @param pass     the password wrt the secrect key
+     * @param armor    whether the signature is ASCII armored
+     * @throws IOException  on a problem reading the file or writing the signature.
+     * @throws PGPException if the secret key can not be used.
      */
-    public static void signFile(
+    public static void signDetached(
+            String fileName,
+            InputStream keyIn,
+            OutputStream sigOut,
+            char[] pass,
+            boolean armor)
+            throws IOException, PGPException {
+        signDetached(fileName, PGPUtils.readSecretKey(keyIn), sigOut, pass, armor);
+    }
+
+    /**
+     * Generate a detached signature of a file.
+     *
+     * @param fileName the name of the file that should be signed
+     * @param pgpSec   PrivateKeyRing
+     * @param sigOut   receives the signature, e.g. a .sig or .asc file
+     * @param pass     the password wrt the secrect key
+     * @param armor    whether the signature is ASCII armored
+     * @throws IOException  on a problem reading the file or writing the signature.
+     * @throws PGPException if the secret key can not be used.
+     */
+    public static void signDetached(
             String fileName,
             PGPSecretKey pgpSec,
-            OutputStream out,
+            OutputStream sigOut,
             char[] pass,
             boolean armor)
-            throws IOException, NoSuchAlgorithmException, NoSuchProviderException, PGPException, SignatureException {
-        if (armor) {
-            out = new ArmoredOutputStream(out);
+            throws IOException, PGPException {
+        try (InputStream fIn = new FileInputStream(fileName)) {
+            signDetached(fIn, pgpSec, sigOut, pass, armor);
+        }
+    }
+
+    /**
+     * Generate a detached signature of a stream.
+     *
+     * @param in     the data that should be signed, read until end of stream
+     * @param pgpSec PrivateKeyRing
+     * @param sigOut receives the signature. It is not closed.
+     * @param pass   the password wrt the secrect key
+     * @param armor  whether the signature is ASCII armored
+     * @throws IOException  on a problem reading the data or writing the signature.
+     * @throws PGPException if the secret key can not be used.
+     */
+    public static void signDetached(
+            InputStream in,
+            PGPSecretKey pgpSec,
+            OutputStream sigOut,
+            char[] pass,
+            boolean armor)
+            throws IOException, PGPException {
+        signDetached(in, pgpSec, sigOut, pass, armor, PGPUtil.SHA1);
+    }
+
+    /**
+     * Generate a detached signature of a stream with the given hash algorithm.
+     *
+     * @param hashAlgorithm one of the {@link org.bouncycastle.bcpg.HashAlgorithmTags}.
+     */
+    static void signDetached(
+            InputStream in,
+            PGPSecretKey pgpSec,
+            OutputStream sigOut,
+            char[] pass,
+            boolean armor,
+            int hashAlgorithm)
+            throws IOException, PGPException {
+        OperationRecorder recorder = Instrumentation.start(Operation.SIGN);
+        try {
+            PGPSignatureGenerator sGen = initSignatureGenerator(pgpSec, pass, recorder, hashAlgorithm);
+            update(recorder.countIn(in), sGen, recorder);
+
+            recorder.enter(Phase.SIGNATURE);
+            PGPSignature signature = sGen.generate();
+            recorder.exit();
+            OutputStream out = armor ? new ArmoredOutputStream(recorder.countOut(sigOut)) : recorder.countOut(sigOut);
+            signature.encode(out);
+            if (armor) {
+                out.close();
+            }
+        } catch (IOException | PGPException | RuntimeException e) {
+            recorder.failed(e);
+            throw e;
+        } finally {
+            recorder.close();
+        }
+    }
+
+    /**
+     * Generate a detached signature of a file, read through memory-mapped windows.
+     *
+     * @param file   the file that should be signed
+     * @param pgpSec PrivateKeyRing
+     * @param sigOut receives the signature. It is not closed.
+     * @param pass   the password wrt the secrect key
+     * @param armor  whether the signature is ASCII armored
+     * @throws IOException  on a problem reading the file or writing the signature.
+     * @throws PGPException if the secret key can not be used.
+     */
+    public static void signDetached(
+            Path file,
+            PGPSecretKey pgpSec,
+            OutputStream sigOut,
+            char[] pass,
+            boolean armor)
+            throws IOException, PGPException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            signDetached(FileChannels.newInputStream(channel), pgpSec, sigOut, pass, armor);
         }
+    }
+
+    /**
+     * Verify a detached signature of a file, read through memory-mapped windows.
+     *
+     * @param file    the signed file
+     * @param sigIn   the InputStream of the signature
+     * @param pgpRing The public key ring collection holding the signer's key
+     * @return true if the signature is valid, false if it is not or the signer's key is not in the ring.
+     * @throws IOException  on a problem reading the file or the signature.
+     * @throws PGPException if the signature could not be parsed.
+     */
+    public static boolean verifyDetached(
+            Path file,
+            InputStream sigIn,
+            PGPPublicKeyRingCollection pgpRing)
+            throws IOException, PGPException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return verifyDetached(FileChannels.newInputStream(channel), sigIn, pgpRing);
+        }
+    }
+
+    /**
+     * Verify a detached signature of a file.
+     *
+     * @param fileName the name of the signed file
+     * @param sigIn    the InputStream of the signature
+     * @param keyIn    The InputStream of the pubKey File
+     * @return true if the signature is valid, false if it is not or the signer's key is not in the ring.
+     * @throws IOException  on a problem reading the file, the signature or the key ring.
+     * @throws PGPException if the signature or the key ring could not be parsed.
+     */
+    public static boolean verifyDetached(
+            String fileName,
+            InputStream sigIn,
+            InputStream keyIn)
+            throws IOException, PGPException {
+        PGPPublicKeyRingCollection pgpRing = new PGPPublicKeyRingCollection(PGPUtil.getDecoderStream(keyIn), new JcaKeyFingerprintCalculator());
+        try (InputStream fIn = new FileInputStream(fileName)) {
+            return verifyDetached(fIn, sigIn, pgpRing);
+        }
+    }
+
+    /**
+     * Verify a detached signature of a stream.
+     *
+     * @param in      the signed data, read until end of stream
+     * @param sigIn   the InputStream of the signature
+     * @param pgpRing The public key ring collection holding the signer's key
+     * @return true if the signature is valid, false if it is not or the signer's key is not in the ring.
+     * @throws IOException  on a problem reading the data or the signature.
+     * @throws PGPException if the signature could not be parsed.
+     */
+    public static boolean verifyDetached(
+            InputStream in,
+            InputStream sigIn,
+            PGPPublicKeyRingCollection pgpRing)
+            throws IOException, PGPException {
+        return verifyDetached(in, sigIn, KeyLookup.of(pgpRing));
+    }
+
+    /**
+     * Verify a detached signature of a stream against the keys of a lookup, e.g. a
+     * {@link io.github.nosuchcompany.pgplug.keystore.PGPKeyStore}.
+     *
+     * @param in    the signed data, read until end of stream
+     * @param sigIn the InputStream of the signature
+     * @param keys  finds the signer's key
+     * @return true if the signature is valid, false if it is not or the signer's key is not known.
+     * @throws IOException  on a problem reading the data or the signature.
+     * @throws PGPException if the signature could not be parsed.
+     */
+    public static boolean verifyDetached(
+            InputStream in,
+            InputStream sigIn,
+            KeyLookup keys)
+            throws IOException, PGPException {
+        OperationRecorder recorder = Instrumentation.start(Operation.VERIFY);
+        try {
+            JcaPGPObjectFactory pgpFact = new JcaPGPObjectFactory(PGPUtil.getDecoderStream(sigIn));
+            Object o = pgpFact.nextObject();
+            if (o instanceof PGPCompressedData) {
+                pgpFact = new JcaPGPObjectFactory(((PGPCompressedData) o).getDataStream());
+                o = pgpFact.nextObject();
+            }
+            if (!(o instanceof PGPSignatureList)) {
+                throw new PGPException("not a detached signature.");
+            }
+            PGPSignature sig = ((PGPSignatureList) o).get(0);
+
+            recorder.addKeyId(sig.getKeyID());
+            PGPPublicKey key = keys.getPublicKey(sig.getKeyID());
+            if (key == null) {
+                recorder.failed(new PGPException("signer's key not in the key ring."));
+                return false;
+            }
+            sig.init(new JcaPGPContentVerifierBuilderProvider().setProvider(CryptoProviders.getDefault().getAsymmetric()), key);
+            in = recorder.countIn(in);
+            BufferPool pool = BufferPool.getDefault();
+            byte[] buffer = pool.acquire(BUFFER_SIZE);
+            try {
+                int len;
+                while ((len = in.read(buffer)) >= 0) {
+                    recorder.enter(Phase.SIGNATURE);
+                    sig.update(buffer, 0, len);
+                    recorder.exit();
+                }
+            } finally {
+                pool.release(buffer);
+            }
+            recorder.enter(Phase.SIGNATURE);
+            boolean verified = sig.verify();
+            recorder.exit();
+            if (!verified) {
+                recorder.failed(new PGPException("signature does not match."));
+            }
+            return verified;
+        } catch (IOException | PGPException | RuntimeException e) {
+            recorder.failed(e);
+            throw e;
+        } finally {
+            recorder.close();
+        }
+    }
+
+    private static PGPSignatureGenerator initSignatureGenerator(PGPSecretKey pgpSec, char[] pass, OperationRecorder recorder) throws PGPException {
+        return initSignatureGenerator(pgpSec, pass, recorder, PGPUtil.SHA1);
+    }
+
+    private static PGPSignatureGenerator initSignatureGenerator(PGPSecretKey pgpSec, char[] pass, OperationRecorder recorder, int hashAlgorithm) throws PGPException {
+        recorder.addKeyId(pgpSec.getKeyID());
+        recorder.enter(Phase.KEY_UNLOCK);
         PGPPrivateKey pgpPrivKey = pgpSec.extractPrivateKey(new JcePBESecretKeyDecryptorBuilder().setProvider("BC").build(pass));
-        PGPSignatureGenerator sGen = new PGPSignatureGenerator(new JcaPGPContentSignerBuilder(pgpSec.getPublicKey().getAlgorithm(), PGPUtil.SHA1).setProvider("BC"));
+        recorder.exit();
+        CryptoProviders providers = CryptoProviders.getDefault();
+        PGPSignatureGenerator sGen = new PGPSignatureGenerator(new JcaPGPContentSignerBuilder(pgpSec.getPublicKey().getAlgorithm(), hashAlgorithm)
+                .setProvider(providers.getAsymmetric())
+                .setDigestProvider(providers.getDigest()));
 
         sGen.init(PGPSignature.BINARY_DOCUMENT, pgpPrivKey);
 
@@ -210,32 +678,72 @@ public class SignedFileProcessor {
             spGen.setSignerUserID(false, (String) it.next());
             sGen.setHashedSubpackets(spGen.generate());
         }
+        return sGen;
+    }
 
-        PGPCompressedDataGenerator cGen = new PGPCompressedDataGenerator(
-                PGPCompressedData.ZLIB);
-
-        BCPGOutputStream bOut = new BCPGOutputStream(cGen.open(out));
-
-        sGen.generateOnePassVersion(false).encode(bOut);
-
-        File file = new File(fileName);
-        PGPLiteralDataGenerator lGen = new PGPLiteralDataGenerator();
-        OutputStream lOut = lGen.open(bOut, PGPLiteralData.BINARY, file);
-        FileInputStream fIn = new FileInputStream(file);
-        int ch;
-
-        while ((ch = fIn.read()) >= 0) {
-            lOut.write(ch);
-            sGen.update((byte) ch);
+    /**
+     * Hashes the payload block-wise into the signature generator.
+     */
+    private static void update(InputStream in, PGPSignatureGenerator sGen, OperationRecorder recorder) throws IOException {
+        BufferPool pool = BufferPool.getDefault();
+        byte[] buffer = pool.acquire(BUFFER_SIZE);
+        try {
+            int len;
+            while ((len = in.read(buffer)) >= 0) {
+                recorder.enter(Phase.SIGNATURE);
+                sGen.update(buffer, 0, len);
+                recorder.exit();
+            }
+        } finally {
+            pool.release(buffer);
         }
+    }
 
-        lGen.close();
-        sGen.generate().encode(bOut);
-        cGen.close();
-        if (armor) {
-            out.close();
+    /**
+     * Moves the payload block-wise into the signature generator and the literal data stream.
+     */
+    private static void copy(InputStream in, PGPSignatureGenerator sGen, OutputStream out, OperationRecorder recorder) throws IOException {
+        BufferPool pool = BufferPool.getDefault();
+        byte[] buffer = pool.acquire(BUFFER_SIZE);
+        try {
+            int len;
+            while ((len = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, len);
+                recorder.enter(Phase.SIGNATURE);
+                sGen.update(buffer, 0, len);
+                recorder.exit();
+            }
+        } finally {
+            pool.release(buffer);
         }
     }
 
+    /**
+     * Moves the payload block-wise into the one pass signature and the sink.
+     */
+    private static void copy(InputStream in, PGPOnePassSignature ops, OutputStream out, OperationRecorder recorder) throws IOException {
+        BufferPool pool = BufferPool.getDefault();
+        byte[] buffer = pool.acquire(BUFFER_SIZE);
+        try {
+            int len;
+            while ((len = in.read(buffer)) >= 0) {
+                recorder.enter(Phase.SIGNATURE);
+                ops.update(buffer, 0, len);
+                recorder.exit();
+                out.write(buffer, 0, len);
+            }
+        } finally {
+            pool.release(buffer);
+        }
+    }
 
-}
\ No newline at end of file
+    private static boolean verify(PGPOnePassSignature ops, PGPSignature signature, OperationRecorder recorder) throws PGPException {
+        recorder.enter(Phase.SIGNATURE);
+        boolean verified = ops.verify(signature);
+        recorder.exit();
+        if (!verified) {
+            recorder.failed(new PGPException("signature does not match."));
+        }
+        return verified;
+    }
+}
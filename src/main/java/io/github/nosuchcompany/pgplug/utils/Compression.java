@@ -0,0 +1,231 @@
+package io.github.nosuchcompany.pgplug.utils;
+
+import io.github.nosuchcompany.pgplug.buffer.BufferPool;
+import org.bouncycastle.bcpg.CompressionAlgorithmTags;
+import org.bouncycastle.openpgp.PGPCompressedDataGenerator;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.Executor;
+import java.util.zip.Deflater;
+
+/**
+ * How the literal data of a message is compressed.
+ * Next to a fixed algorithm and level, a compression can be adaptive: it then compresses a sample
+ * of the first block and leaves the compressed data packet out if the sample does not shrink,
+ * which saves the deflate work for already compressed or encrypted payloads.
+ * ZIP and ZLIB can also be {@link #parallel(Executor) parallel}: the data is then deflated in blocks
+ * on an executor, pigz style, into one standard deflate stream.
+ * Instances are immutable.
+ */
+public final class Compression {
+
+    /**
+     * The size of the sample the adaptive mode compresses.
+     */
+    public static final int SAMPLE_SIZE = 1 << 16;
+
+    /**
+     * The adaptive mode compresses if the sample shrinks to at most this share of its size.
+     */
+    private static final double MAX_RATIO = 0.95;
+
+    /**
+     * The block size of the parallel mode, large enough that priming every block with the 32 KiB
+     * before it costs little, small enough to keep the workers busy on inputs of a few MiB.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 1 << 17;
+
+    public static final Compression NONE = new Compression(CompressionAlgorithmTags.UNCOMPRESSED, Deflater.DEFAULT_COMPRESSION, false);
+
+    public static final Compression ZIP = new Compression(CompressionAlgorithmTags.ZIP, Deflater.DEFAULT_COMPRESSION, false);
+
+    public static final Compression ZLIB = new Compression(CompressionAlgorithmTags.ZLIB, Deflater.DEFAULT_COMPRESSION, false);
+
+    public static final Compression BZIP2 = new Compression(CompressionAlgorithmTags.BZIP2, Deflater.DEFAULT_COMPRESSION, false);
+
+    private final int algorithm;
+
+    private final int level;
+
+    private final boolean adaptive;
+
+    private final Executor executor;
+
+    private final int blockSize;
+
+    /**
+     * @param algorithm one of the {@link CompressionAlgorithmTags}.
+     * @param level     the deflate level 1 (fastest) to 9 (smallest), or {@link Deflater#DEFAULT_COMPRESSION}.
+     *                  It is ignored for BZIP2.
+     * @param adaptive  whether the compressed data packet is left out when a sample of the data does not shrink.
+     */
+    public Compression(int algorithm, int level, boolean adaptive) {
+        this(algorithm, level, adaptive, null, DEFAULT_BLOCK_SIZE);
+    }
+
+    private Compression(int algorithm, int level, boolean adaptive, Executor executor, int blockSize) {
+        if (algorithm < CompressionAlgorithmTags.UNCOMPRESSED || algorithm > CompressionAlgorithmTags.BZIP2) {
+            throw new IllegalArgumentException("unknown compression algorithm: " + algorithm);
+        }
+        if (level != Deflater.DEFAULT_COMPRESSION && (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION)) {
+            throw new IllegalArgumentException("unknown compression level: " + level);
+        }
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("blockSize must be positive");
+        }
+        this.algorithm = algorithm;
+        this.level = level;
+        this.adaptive = adaptive;
+        this.executor = executor;
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * @param algorithm one of the {@link CompressionAlgorithmTags}.
+     * @return the compression with the given algorithm at its default level.
+     */
+    public static Compression of(int algorithm) {
+        return new Compression(algorithm, Deflater.DEFAULT_COMPRESSION, false);
+    }
+
+    public Compression withLevel(int level) {
+        return new Compression(algorithm, level, adaptive, executor, blockSize);
+    }
+
+    /**
+     * @return the same compression, but only used when a sample of the data shrinks.
+     */
+    public Compression adaptive() {
+        return new Compression(algorithm, level, true, executor, blockSize);
+    }
+
+    /**
+     * Deflates large payloads on several threads. The data is cut into blocks of
+     * {@link #DEFAULT_BLOCK_SIZE} which are compressed on the executor and joined into one deflate
+     * stream, readable by every OpenPGP implementation; the output is a few bytes per block larger
+     * than a serial stream. Payloads of a single block are compressed on the calling thread.
+     * BZIP2 and NONE ignore the executor.
+     *
+     * @param executor compresses the blocks, e.g. a {@link java.util.concurrent.ForkJoinPool}.
+     * @return the same compression, run on the executor.
+     */
+    public Compression parallel(Executor executor) {
+        return parallel(executor, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * @param executor  compresses the blocks.
+     * @param blockSize the size of the blocks.
+     * @return the same compression, run on the executor.
+     * @see #parallel(Executor)
+     */
+    public Compression parallel(Executor executor, int blockSize) {
+        if (executor == null) {
+            throw new IllegalArgumentException("executor must not be null");
+        }
+        return new Compression(algorithm, level, adaptive, executor, blockSize);
+    }
+
+    public int getAlgorithm() {
+        return algorithm;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public boolean isAdaptive() {
+        return adaptive;
+    }
+
+    /**
+     * @return the executor of the parallel mode, null if the data is compressed on the calling thread.
+     */
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * Creates the generator of the compressed data packet, with the buffers of the parallel mode
+     * taken from {@link BufferPool#getDefault()}.
+     *
+     * @param sample the first bytes of the data, only looked at in the adaptive mode.
+     * @param len    the number of bytes in the sample.
+     * @return the generator, or null if no compressed data packet should be written.
+     */
+    public PGPCompressedDataGenerator newGenerator(byte[] sample, int len) {
+        return newGenerator(sample, len, BufferPool.getDefault());
+    }
+
+    /**
+     * Creates the generator of the compressed data packet.
+     *
+     * @param sample the first bytes of the data, only looked at in the adaptive mode.
+     * @param len    the number of bytes in the sample.
+     * @param pool   the pool the block buffers of the parallel mode are taken from.
+     * @return the generator, or null if no compressed data packet should be written.
+     */
+    public PGPCompressedDataGenerator newGenerator(byte[] sample, int len, BufferPool pool) {
+        if (algorithm == CompressionAlgorithmTags.UNCOMPRESSED) {
+            return null;
+        }
+        if (adaptive && !shrinks(sample, len)) {
+            return null;
+        }
+        if (executor != null && algorithm != CompressionAlgorithmTags.BZIP2) {
+            return new ParallelCompressedDataGenerator(algorithm, level, executor, blockSize, PGPEncryptor.parallelism(executor), pool);
+        }
+        return new PGPCompressedDataGenerator(algorithm, level);
+    }
+
+    /**
+     * Reads as many bytes as fit into the sample buffer, or fewer at the end of the stream.
+     *
+     * @param in     the data.
+     * @param sample receives the first bytes.
+     * @return the number of bytes read.
+     * @throws IOException on a problem reading the stream.
+     */
+    public static int readSample(InputStream in, byte[] sample) throws IOException {
+        int off = 0;
+        int len;
+        while (off < sample.length && (len = in.read(sample, off, sample.length - off)) >= 0) {
+            off += len;
+        }
+        return off;
+    }
+
+    private boolean shrinks(byte[] sample, int len) {
+        if (len == 0) {
+            return false;
+        }
+        // BZIP2 has no cheap trial, deflate tells just as well whether the data is compressible
+        Deflater deflater = new Deflater(algorithm == CompressionAlgorithmTags.BZIP2 ? Deflater.BEST_SPEED : level, true);
+        try {
+            deflater.setInput(sample, 0, len);
+            deflater.finish();
+            byte[] out = new byte[4096];
+            long limit = (long) (len * MAX_RATIO);
+            while (!deflater.finished()) {
+                deflater.deflate(out);
+                if (deflater.getBytesWritten() > limit) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Compression{algorithm=" + algorithm + ", level=" + level + ", adaptive=" + adaptive
+                + (executor != null ? ", parallel, blockSize=" + blockSize : "") + "}";
+    }
+}
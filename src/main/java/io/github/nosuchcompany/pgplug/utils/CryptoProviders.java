@@ -0,0 +1,195 @@
+package io.github.nosuchcompany.pgplug.utils;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.openpgp.PGPPrivateKey;
+import org.bouncycastle.openpgp.PGPPublicKey;
+import org.bouncycastle.openpgp.PGPUtil;
+import org.bouncycastle.openpgp.operator.PGPDataDecryptor;
+import org.bouncycastle.openpgp.operator.PublicKeyDataDecryptorFactory;
+import org.bouncycastle.openpgp.operator.jcajce.JcePublicKeyDataDecryptorFactoryBuilder;
+
+import javax.crypto.Cipher;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.Provider;
+import java.security.Security;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Which JCA providers do the work, split into three roles: asymmetric operations (session key
+ * wrapping, signatures, key conversion), symmetric ciphers (the bulk encryption of the message) and
+ * digests (the hashes computed next to signatures and for S2K).
+ * {@link #BOUNCY_CASTLE} runs everything in Bouncy Castle, as before. {@link #jdk()} sends ciphers
+ * and digests to the JDK's SunJCE and SUN providers, whose AES and SHA implementations use the
+ * HotSpot intrinsics (AES-NI, SHA extensions), and keeps the asymmetric operations in Bouncy Castle.
+ * A symmetric algorithm or mode the symmetric provider does not offer - e.g. CAST5, or the
+ * OpenPGP CFB mode of messages without integrity packet - falls back to Bouncy Castle.
+ * The default is read from the system property {@code pgplug.providers} ({@code bc} or {@code jdk})
+ * and can be replaced with {@link #setDefault(CryptoProviders)}. Instances are immutable.
+ */
+public final class CryptoProviders {
+
+    public static final CryptoProviders BOUNCY_CASTLE;
+
+    private static volatile CryptoProviders defaultProviders;
+
+    static {
+        if (Security.getProvider("BC") == null) {
+            Security.addProvider(new BouncyCastleProvider());
+        }
+        Provider bc = Security.getProvider("BC");
+        BOUNCY_CASTLE = new CryptoProviders(bc, bc, bc);
+        defaultProviders = "jdk".equalsIgnoreCase(System.getProperty("pgplug.providers")) ? jdk() : BOUNCY_CASTLE;
+    }
+
+    private final Provider asymmetric;
+
+    private final Provider symmetric;
+
+    private final Provider digest;
+
+    private final ConcurrentMap<String, Boolean> supported = new ConcurrentHashMap<String, Boolean>();
+
+    /**
+     * @param asymmetric the provider of public key ciphers, signatures and key factories.
+     * @param symmetric  the provider of the bulk ciphers.
+     * @param digest     the provider of message digests.
+     */
+    public CryptoProviders(Provider asymmetric, Provider symmetric, Provider digest) {
+        if (asymmetric == null || symmetric == null || digest == null) {
+            throw new IllegalArgumentException("every provider must be set");
+        }
+        this.asymmetric = asymmetric;
+        this.symmetric = symmetric;
+        this.digest = digest;
+    }
+
+    /**
+     * @return SunJCE for ciphers and SUN for digests where the JVM has them, Bouncy Castle for the rest.
+     */
+    public static CryptoProviders jdk() {
+        Provider bc = BOUNCY_CASTLE.asymmetric;
+        Provider sunJce = Security.getProvider("SunJCE");
+        Provider sun = Security.getProvider("SUN");
+        return new CryptoProviders(bc, sunJce != null ? sunJce : bc, sun != null ? sun : bc);
+    }
+
+    public static CryptoProviders getDefault() {
+        return defaultProviders;
+    }
+
+    /**
+     * @param providers the providers used by every operation that is not given its own.
+     */
+    public static void setDefault(CryptoProviders providers) {
+        if (providers == null) {
+            throw new IllegalArgumentException("providers must not be null");
+        }
+        defaultProviders = providers;
+    }
+
+    public Provider getAsymmetric() {
+        return asymmetric;
+    }
+
+    public Provider getSymmetric() {
+        return symmetric;
+    }
+
+    /**
+     * @return the digest provider if it offers the digests OpenPGP signatures use, Bouncy Castle otherwise.
+     */
+    public Provider getDigest() {
+        if (digest != BOUNCY_CASTLE.digest && !supports("MessageDigest", "SHA256", digest)) {
+            return BOUNCY_CASTLE.digest;
+        }
+        return digest;
+    }
+
+    /**
+     * Picks the provider for the bulk cipher of a message.
+     *
+     * @param algorithm           one of {@link org.bouncycastle.openpgp.PGPEncryptedData}'s algorithm tags.
+     * @param withIntegrityPacket whether the message is integrity protected, which uses plain CFB mode.
+     * @return the symmetric provider if it has the cipher, Bouncy Castle otherwise.
+     */
+    public Provider symmetricFor(int algorithm, boolean withIntegrityPacket) {
+        String transformation = PGPUtil.getSymmetricCipherName(algorithm) + (withIntegrityPacket ? "/CFB/NoPadding" : "/OpenPGPCFB/NoPadding");
+        if (symmetric != BOUNCY_CASTLE.symmetric && !supports("Cipher", transformation, symmetric)) {
+            return BOUNCY_CASTLE.symmetric;
+        }
+        return symmetric;
+    }
+
+    /**
+     * Creates the factory that unwraps session keys with the asymmetric provider and decrypts the
+     * message with the provider {@link #symmetricFor(int, boolean)} picks once the algorithm is known.
+     *
+     * @param pgpKey     the unlocked key.
+     * @param privateKey the same key converted with the asymmetric provider.
+     * @return the decryptor factory.
+     */
+    public PublicKeyDataDecryptorFactory newDecryptorFactory(PGPPrivateKey pgpKey, PrivateKey privateKey) {
+        PublicKeyDataDecryptorFactory fast = newDecryptorFactory(pgpKey, privateKey, symmetric);
+        if (symmetric == BOUNCY_CASTLE.symmetric) {
+            return fast;
+        }
+        return new SwitchingDecryptorFactory(fast, newDecryptorFactory(pgpKey, privateKey, BOUNCY_CASTLE.symmetric));
+    }
+
+    private PublicKeyDataDecryptorFactory newDecryptorFactory(PGPPrivateKey pgpKey, PrivateKey privateKey, Provider content) {
+        JcePublicKeyDataDecryptorFactoryBuilder builder = new JcePublicKeyDataDecryptorFactoryBuilder()
+                .setProvider(asymmetric)
+                .setContentProvider(content);
+        // ECDH needs the public key packet for the KDF, so it only works from the PGPPrivateKey
+        return pgpKey.getPublicKeyPacket().getAlgorithm() == PGPPublicKey.ECDH || privateKey == null
+                ? builder.build(pgpKey) : builder.build(privateKey);
+    }
+
+    private boolean supports(String type, String name, Provider provider) {
+        Boolean known = supported.get(type + ":" + name);
+        if (known == null) {
+            try {
+                if ("Cipher".equals(type)) {
+                    Cipher.getInstance(name, provider);
+                } else {
+                    MessageDigest.getInstance(name, provider);
+                }
+                known = Boolean.TRUE;
+            } catch (GeneralSecurityException e) {
+                known = Boolean.FALSE;
+            }
+            supported.put(type + ":" + name, known);
+        }
+        return known;
+    }
+
+    @Override
+    public String toString() {
+        return "CryptoProviders{asymmetric=" + asymmetric.getName() + ", symmetric=" + symmetric.getName() + ", digest=" + digest.getName() + "}";
+    }
+
+    private final class SwitchingDecryptorFactory implements PublicKeyDataDecryptorFactory {
+        private final PublicKeyDataDecryptorFactory fast;
+        private final PublicKeyDataDecryptorFactory fallback;
+
+        private SwitchingDecryptorFactory(PublicKeyDataDecryptorFactory fast, PublicKeyDataDecryptorFactory fallback) {
+            this.fast = fast;
+            this.fallback = fallback;
+        }
+
+        @Override
+        public byte[] recoverSessionData(int keyAlgorithm, byte[][] secKeyData) throws PGPException {
+            return fast.recoverSessionData(keyAlgorithm, secKeyData);
+        }
+
+        @Override
+        public PGPDataDecryptor createDataDecryptor(boolean withIntegrityPacket, int encAlgorithm, byte[] key) throws PGPException {
+            return (symmetricFor(encAlgorithm, withIntegrityPacket) == symmetric ? fast : fallback)
+                    .createDataDecryptor(withIntegrityPacket, encAlgorithm, key);
+        }
+    }
+}
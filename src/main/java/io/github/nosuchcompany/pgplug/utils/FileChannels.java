@@ -0,0 +1,227 @@
+package io.github.nosuchcompany.pgplug.utils;
+
+import io.github.nosuchcompany.pgplug.buffer.BufferPool;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Streams over file channels for the {@link Path} based APIs.
+ * Input is memory-mapped window by window, so the bytes go straight from the page cache into the
+ * caller's array; output is gathered in a large pooled direct buffer and written to the
+ * channel without the temporary direct copy the JDK makes for heap buffers.
+ */
+public final class FileChannels {
+
+    /**
+     * How much of the input is mapped at once.
+     */
+    static final int MAP_WINDOW = 1 << 26;
+
+    /**
+     * The size of the direct output buffer.
+     */
+    static final int DIRECT_BUFFER_SIZE = 1 << 20;
+
+    private FileChannels() {
+    }
+
+    /**
+     * @param channel a channel opened for reading. It is read from its current position to its end
+     *                and not closed by the stream.
+     * @return a stream over the memory-mapped content.
+     * @throws IOException on a problem reading the size of the channel.
+     */
+    public static InputStream newInputStream(FileChannel channel) throws IOException {
+        return new MappedInputStream(channel);
+    }
+
+    /**
+     * @param channel a channel opened for writing. It is not closed by the stream, closing the stream
+     *                writes the rest of the buffer.
+     * @return a stream writing through a direct buffer of the {@link BufferPool#getDefault() default pool}.
+     */
+    public static OutputStream newOutputStream(FileChannel channel) {
+        return new DirectOutputStream(channel, BufferPool.getDefault());
+    }
+
+    /**
+     * @param file  the output file, created or truncated.
+     * @param input the file the same operation reads, which must not be the output.
+     * @return a channel writing the file from its start.
+     * @throws IOException if the file can not be opened.
+     */
+    public static FileChannel openForWriting(Path file, Path input) throws IOException {
+        checkNotSameFile(file, input);
+        return FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Rejects an output that is the input of the same operation. Callers that {@link #discard(Path) discard}
+     * the output on failure check this before they open anything, so a rejected call leaves the input alone.
+     *
+     * @param file  the output file.
+     * @param input the file the same operation reads.
+     * @throws IOException if the files can not be compared.
+     * @throws IllegalArgumentException if both are the same file.
+     */
+    public static void checkNotSameFile(Path file, Path input) throws IOException {
+        if (Files.exists(file) && Files.isSameFile(file, input)) {
+            throw new IllegalArgumentException("input and output are the same file: " + file);
+        }
+    }
+
+    /**
+     * Deletes an output that must not be used, e.g. the payload of a message that did not verify.
+     *
+     * @param file the output file.
+     */
+    public static void discard(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException ignored) {
+            // the failure of the operation is what the caller reports
+        }
+    }
+
+    private static final class MappedInputStream extends InputStream {
+        private final FileChannel channel;
+        private final long size;
+        private long position;
+        private MappedByteBuffer window;
+
+        private MappedInputStream(FileChannel channel) throws IOException {
+            this.channel = channel;
+            this.size = channel.size();
+            this.position = channel.position();
+        }
+
+        private boolean fill() throws IOException {
+            if (window != null && window.hasRemaining()) {
+                return true;
+            }
+            if (position >= size) {
+                return false;
+            }
+            long length = Math.min(MAP_WINDOW, size - position);
+            window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+            position += length;
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return fill() ? window.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            int n = Math.min(len, window.remaining());
+            window.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = 0;
+            while (skipped < n && fill()) {
+                int step = (int) Math.min(n - skipped, window.remaining());
+                window.position(window.position() + step);
+                skipped += step;
+            }
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            long remaining = (window != null ? window.remaining() : 0) + size - position;
+            return (int) Math.min(Integer.MAX_VALUE, remaining);
+        }
+
+        @Override
+        public void close() {
+            window = null;
+        }
+    }
+
+    private static final class DirectOutputStream extends OutputStream {
+        private final FileChannel channel;
+        private final BufferPool pool;
+        private ByteBuffer buffer;
+
+        private DirectOutputStream(FileChannel channel, BufferPool pool) {
+            this.channel = channel;
+            this.pool = pool;
+            this.buffer = pool.acquireDirect(DIRECT_BUFFER_SIZE);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            ensureOpen();
+            if (!buffer.hasRemaining()) {
+                drain();
+            }
+            buffer.put((byte) b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            ensureOpen();
+            while (len > 0) {
+                if (!buffer.hasRemaining()) {
+                    drain();
+                }
+                int n = Math.min(len, buffer.remaining());
+                buffer.put(b, off, n);
+                off += n;
+                len -= n;
+            }
+        }
+
+        private void drain() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        @Override
+        public void flush() throws IOException {
+            ensureOpen();
+            drain();
+        }
+
+        private void ensureOpen() throws IOException {
+            if (buffer == null) {
+                throw new IOException("stream closed");
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (buffer == null) {
+                return;
+            }
+            try {
+                drain();
+            } finally {
+                pool.releaseBuffer(buffer);
+                buffer = null;
+            }
+        }
+    }
+}
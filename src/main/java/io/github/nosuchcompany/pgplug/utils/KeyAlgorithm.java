@@ -0,0 +1,85 @@
+package io.github.nosuchcompany.pgplug.utils;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Security;
+import java.security.spec.ECGenParameterSpec;
+
+/**
+ * The key types {@link PGPUtils#generateKeyPair(KeyAlgorithm, java.io.OutputStream, java.io.OutputStream, char[])}
+ * can create.
+ * RSA keys are a single RSA_GENERAL key used for signing and encryption. Elliptic curve keys are
+ * an ECDSA signing primary key with an ECDH encryption subkey on the same curve, which are much
+ * faster to generate and to use than RSA keys of comparable strength.
+ */
+public enum KeyAlgorithm {
+    RSA_1024(1024),
+    RSA_2048(2048),
+    RSA_3072(3072),
+    RSA_4096(4096),
+    ECC_P256("P-256"),
+    ECC_P384("P-384"),
+    ECC_P521("P-521");
+
+    private final int bits;
+
+    private final String curve;
+
+    /**
+     * KeyPairGenerator is not thread safe, so every thread gets its own.
+     */
+    private final ThreadLocal<KeyPairGenerator> generator = new ThreadLocal<KeyPairGenerator>() {
+        @Override
+        protected KeyPairGenerator initialValue() {
+            try {
+                if (Security.getProvider("BC") == null) {
+                    Security.addProvider(new BouncyCastleProvider());
+                }
+                KeyPairGenerator kpg;
+                if (isElliptic()) {
+                    kpg = KeyPairGenerator.getInstance("EC", "BC");
+                    kpg.initialize(new ECGenParameterSpec(curve));
+                } else {
+                    kpg = KeyPairGenerator.getInstance("RSA", "BC");
+                    kpg.initialize(bits);
+                }
+                return kpg;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    };
+
+    KeyAlgorithm(int bits) {
+        this.bits = bits;
+        this.curve = null;
+    }
+
+    KeyAlgorithm(String curve) {
+        this.bits = 0;
+        this.curve = curve;
+    }
+
+    public boolean isElliptic() {
+        return curve != null;
+    }
+
+    /**
+     * @return the NIST name of the curve, null for RSA.
+     */
+    public String getCurve() {
+        return curve;
+    }
+
+    /**
+     * Generates raw key material of this type on the calling thread.
+     *
+     * @return a new key pair.
+     */
+    public KeyPair generateJcaKeyPair() {
+        return generator.get().generateKeyPair();
+    }
+}
@@ -0,0 +1,741 @@
+package io.github.nosuchcompany.pgplug.utils;
+
+import io.github.nosuchcompany.pgplug.buffer.BufferPool;
+import io.github.nosuchcompany.pgplug.buffer.PooledOutputStream;
+import io.github.nosuchcompany.pgplug.cache.CacheStats;
+import io.github.nosuchcompany.pgplug.keystore.KeyLookup;
+import io.github.nosuchcompany.pgplug.metrics.Instrumentation;
+import io.github.nosuchcompany.pgplug.metrics.Operation;
+import io.github.nosuchcompany.pgplug.metrics.OperationRecorder;
+import io.github.nosuchcompany.pgplug.metrics.Phase;
+import org.bouncycastle.bcpg.*;
+import org.bouncycastle.openpgp.*;
+import org.bouncycastle.openpgp.operator.PublicKeyDataDecryptorFactory;
+import org.bouncycastle.openpgp.operator.jcajce.JcaKeyFingerprintCalculator;
+import org.bouncycastle.openpgp.operator.jcajce.JcaPGPContentVerifierBuilderProvider;
+import org.bouncycastle.openpgp.operator.jcajce.JcaPGPKeyConverter;
+import org.bouncycastle.openpgp.operator.jcajce.JcePBESecretKeyDecryptorBuilder;
+import org.bouncycastle.openpgp.operator.jcajce.JcePublicKeyKeyEncryptionMethodGenerator;
+
+import javax.security.auth.DestroyFailedException;
+import javax.security.auth.Destroyable;
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.PrivateKey;
+import java.security.SecureRandom;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decrypts a stream of messages with one secret key ring.
+ * The key ring is parsed once, and a secret key is unlocked (S2K derivation and unwrap) only
+ * the first time a message addressed to its key ID shows up. Unlocked keys are kept for a
+ * limited time and up to a maximum count; evicted keys are destroyed where the provider
+ * supports it and their references dropped.
+ * Instances are safe to be shared between threads. Call {@link #close()} to wipe the
+ * passphrase and every unlocked key.
+ */
+public class PGPDecryptor implements Closeable {
+
+    public static final long DEFAULT_TTL_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    public static final int DEFAULT_MAX_KEYS = 16;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final KeyLookup secretKeys;
+
+    private final char[] passPhrase;
+
+    private final long ttlNanos;
+
+    private final int maxKeys;
+
+    private final LinkedHashMap<Long, UnlockedKey> unlocked;
+
+    /**
+     * The unlocks in progress, so threads missing on the same key ID wait for one S2K derivation.
+     */
+    private final ConcurrentHashMap<Long, CompletableFuture<UnlockedKey>> unlocking = new ConcurrentHashMap<Long, CompletableFuture<UnlockedKey>>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    private final CryptoProviders providers;
+
+    private volatile boolean closed;
+
+    public PGPDecryptor(byte[] privateKey, char[] passPhrase) throws IOException, PGPException {
+        this(new ByteArrayInputStream(privateKey), passPhrase);
+    }
+
+    public PGPDecryptor(InputStream privateKeyIn, char[] passPhrase) throws IOException, PGPException {
+        this(privateKeyIn, passPhrase, DEFAULT_TTL_MILLIS, TimeUnit.MILLISECONDS, DEFAULT_MAX_KEYS);
+    }
+
+    /**
+     * @param privateKeyIn the secret key ring collection, armored or binary.
+     * @param passPhrase   passphrase of the secret keys. It is copied and wiped on {@link #close()}.
+     * @param ttl          how long an unlocked key is kept after it was unlocked.
+     * @param unit         the unit of ttl.
+     * @param maxKeys      how many unlocked keys are kept at most.
+     * @throws IOException  on a problem reading the key ring.
+     * @throws PGPException if the key ring could not be parsed.
+     */
+    public PGPDecryptor(InputStream privateKeyIn, char[] passPhrase, long ttl, TimeUnit unit, int maxKeys)
+            throws IOException, PGPException {
+        this(privateKeyIn, passPhrase, ttl, unit, maxKeys, CryptoProviders.getDefault());
+    }
+
+    /**
+     * @param privateKeyIn the secret key ring collection, armored or binary.
+     * @param passPhrase   passphrase of the secret keys. It is copied and wiped on {@link #close()}.
+     * @param ttl          how long an unlocked key is kept after it was unlocked.
+     * @param unit         the unit of ttl.
+     * @param maxKeys      how many unlocked keys are kept at most.
+     * @param providers    the providers of the asymmetric, symmetric and digest operations.
+     * @throws IOException  on a problem reading the key ring.
+     * @throws PGPException if the key ring could not be parsed.
+     */
+    public PGPDecryptor(InputStream privateKeyIn, char[] passPhrase, long ttl, TimeUnit unit, int maxKeys, CryptoProviders providers)
+            throws IOException, PGPException {
+        this(KeyLookup.of(new PGPSecretKeyRingCollection(PGPUtil.getDecoderStream(privateKeyIn), new JcaKeyFingerprintCalculator())),
+                passPhrase, ttl, unit, maxKeys, providers);
+    }
+
+    /**
+     * Decrypts with the secret keys of a lookup, e.g. a {@link io.github.nosuchcompany.pgplug.keystore.PGPKeyStore}.
+     *
+     * @param secretKeys finds the secret key a message is addressed to.
+     * @param passPhrase passphrase of the secret keys. It is copied and wiped on {@link #close()}.
+     */
+    public PGPDecryptor(KeyLookup secretKeys, char[] passPhrase) {
+        this(secretKeys, passPhrase, DEFAULT_TTL_MILLIS, TimeUnit.MILLISECONDS, DEFAULT_MAX_KEYS, CryptoProviders.getDefault());
+    }
+
+    /**
+     * @param secretKeys finds the secret key a message is addressed to.
+     * @param passPhrase passphrase of the secret keys. It is copied and wiped on {@link #close()}.
+     * @param ttl        how long an unlocked key is kept after it was unlocked.
+     * @param unit       the unit of ttl.
+     * @param maxKeys    how many unlocked keys are kept at most.
+     * @param providers  the providers of the asymmetric, symmetric and digest operations.
+     */
+    public PGPDecryptor(KeyLookup secretKeys, char[] passPhrase, long ttl, TimeUnit unit, int maxKeys, CryptoProviders providers) {
+        if (ttl < 0 || maxKeys < 1) {
+            throw new IllegalArgumentException("ttl must not be negative and maxKeys must be positive");
+        }
+        this.secretKeys = secretKeys;
+        this.passPhrase = passPhrase.clone();
+        this.ttlNanos = unit.toNanos(ttl);
+        this.maxKeys = maxKeys;
+        this.providers = providers;
+        this.unlocked = new LinkedHashMap<Long, UnlockedKey>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, UnlockedKey> eldest) {
+                if (size() > PGPDecryptor.this.maxKeys) {
+                    evictions.incrementAndGet();
+                    eldest.getValue().destroy();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * decrypt the passed in message
+     *
+     * @param encrypted The message to be decrypted.
+     * @return the clear text.
+     * @throws IOException  on a problem reading the message.
+     * @throws PGPException if the message can not be decrypted or fails the integrity check.
+     */
+    public byte[] decrypt(byte[] encrypted) throws IOException, PGPException {
+        try (PooledOutputStream bOut = new PooledOutputStream()) {
+            decrypt(new ByteArrayInputStream(encrypted), bOut);
+            return bOut.toByteArray();
+        }
+    }
+
+    /**
+     * decrypt the passed in message stream
+     *
+     * @param encrypted The message to be decrypted.
+     * @param out       receives the clear text. It is not closed.
+     * @throws IOException  on a problem reading or writing the streams.
+     * @throws PGPException if the message can not be decrypted or fails the integrity check.
+     */
+    public void decrypt(InputStream encrypted, OutputStream out) throws IOException, PGPException {
+        OperationRecorder recorder = Instrumentation.start(Operation.DECRYPT);
+        try {
+            decrypt(recorder.countIn(encrypted), recorder.countOut(out), recorder);
+        } catch (IOException | PGPException | RuntimeException e) {
+            recorder.failed(e);
+            throw e;
+        } finally {
+            recorder.close();
+        }
+    }
+
+    /**
+     * decrypt from file to file. The message is read through memory-mapped windows and the clear
+     * text written through a direct buffer.
+     *
+     * @param encrypted the encrypted file.
+     * @param out       receives the clear text, created or replaced. It is deleted if the message
+     *                  can not be decrypted or fails the integrity check.
+     * @throws IOException  on a problem reading or writing the files.
+     * @throws PGPException if the message can not be decrypted or fails the integrity check.
+     */
+    public void decrypt(Path encrypted, Path out) throws IOException, PGPException {
+        FileChannels.checkNotSameFile(out, encrypted);
+        boolean decrypted = false;
+        try (FileChannel inChannel = FileChannel.open(encrypted, StandardOpenOption.READ);
+             FileChannel outChannel = FileChannels.openForWriting(out, encrypted);
+             OutputStream os = FileChannels.newOutputStream(outChannel)) {
+            decrypt(FileChannels.newInputStream(inChannel), os);
+            decrypted = true;
+        } finally {
+            if (!decrypted) {
+                FileChannels.discard(out);
+            }
+        }
+    }
+
+    /**
+     * decrypt lazily: the returned stream decrypts and decompresses the message as it is read, so
+     * the memory used stays flat and a caller that stops early does not pay for the rest.
+     * When the end of the clear text is reached the integrity check runs, and a message that fails
+     * it makes that last read throw an IOException caused by a {@link PGPDataValidationException}.
+     * Closing the stream before its end skips the check. {@link java.nio.channels.Channels#newChannel(InputStream)}
+     * turns the stream into a channel.
+     *
+     * @param encrypted The message to be decrypted. It is read as the clear text is read and closed with it.
+     * @return the clear text.
+     * @throws IOException  on a problem reading the start of the message.
+     * @throws PGPException if the message can not be decrypted.
+     */
+    public InputStream open(InputStream encrypted) throws IOException, PGPException {
+        OperationRecorder recorder = Instrumentation.start(Operation.DECRYPT);
+        try {
+            Match match = findEncryptedData(recorder.countIn(encrypted), recorder);
+            InputStream unc = PGPUtils.openLiteralData(match.pbe, match.key.decryptorFactory, recorder);
+            return new DecryptingInputStream(encrypted, unc, match.pbe, recorder);
+        } catch (IOException | PGPException | RuntimeException e) {
+            recorder.failed(e);
+            recorder.close();
+            throw e;
+        }
+    }
+
+    private void decrypt(InputStream encrypted, OutputStream out, OperationRecorder recorder) throws IOException, PGPException {
+        Match match = findEncryptedData(encrypted, recorder);
+
+        InputStream unc = PGPUtils.openLiteralData(match.pbe, match.key.decryptorFactory, recorder);
+        BufferPool pool = BufferPool.getDefault();
+        byte[] buffer = pool.acquire(BUFFER_SIZE);
+        try {
+            int len;
+            while ((len = unc.read(buffer)) >= 0) {
+                out.write(buffer, 0, len);
+            }
+        } finally {
+            pool.release(buffer);
+        }
+
+        checkIntegrity(match.pbe, recorder);
+    }
+
+    /**
+     * decrypt a signed and encrypted message and verify its signature in the same pass.
+     * The clear text is written while it is read, so it reaches out before the signature is
+     * checked: it must not be trusted unless this returns true.
+     *
+     * @param encrypted        The message to be decrypted, e.g. from {@link PGPEncryptor.Builder#setSigningKey(PGPSecretKey, char[])}.
+     * @param verificationKeys The public key ring collection holding the signer's key.
+     * @param out              receives the clear text. It is not closed.
+     * @return true if the signature is valid, false if it is not or the signer's key is not in the ring.
+     * @throws IOException  on a problem reading or writing the streams.
+     * @throws PGPException if the message can not be decrypted, is not signed or fails the integrity check.
+     */
+    public boolean decryptAndVerify(InputStream encrypted, PGPPublicKeyRingCollection verificationKeys, OutputStream out)
+            throws IOException, PGPException {
+        return decryptAndVerify(encrypted, KeyLookup.of(verificationKeys), out);
+    }
+
+    /**
+     * decrypt a signed and encrypted message and verify its signature against the keys of a lookup,
+     * e.g. a {@link io.github.nosuchcompany.pgplug.keystore.PGPKeyStore}.
+     *
+     * @param encrypted        The message to be decrypted.
+     * @param verificationKeys finds the signer's key.
+     * @param out              receives the clear text. It is not closed.
+     * @return true if the signature is valid, false if it is not or the signer's key is not known.
+     * @throws IOException  on a problem reading or writing the streams.
+     * @throws PGPException if the message can not be decrypted, is not signed or fails the integrity check.
+     */
+    public boolean decryptAndVerify(InputStream encrypted, KeyLookup verificationKeys, OutputStream out)
+            throws IOException, PGPException {
+        OperationRecorder recorder = Instrumentation.start(Operation.DECRYPT);
+        try {
+            boolean verified = decryptAndVerify(recorder.countIn(encrypted), verificationKeys, recorder.countOut(out), recorder);
+            if (!verified) {
+                recorder.failed(new PGPException("signature does not match."));
+            }
+            return verified;
+        } catch (IOException | PGPException | RuntimeException e) {
+            recorder.failed(e);
+            throw e;
+        } finally {
+            recorder.close();
+        }
+    }
+
+    private boolean decryptAndVerify(InputStream encrypted, KeyLookup verificationKeys, OutputStream out, OperationRecorder recorder)
+            throws IOException, PGPException {
+        Match match = findEncryptedData(encrypted, recorder);
+
+        PGPUtils.Payload payload = PGPUtils.openPayload(match.pbe, match.key.decryptorFactory, recorder);
+        Object message = payload.nextObject();
+        if (!(message instanceof PGPOnePassSignatureList)) {
+            throw new PGPException("encrypted message is not signed.");
+        }
+        PGPOnePassSignature ops = ((PGPOnePassSignatureList) message).get(0);
+        recorder.addKeyId(ops.getKeyID());
+        PGPPublicKey key = verificationKeys.getPublicKey(ops.getKeyID());
+        if (key != null) {
+            ops.init(new JcaPGPContentVerifierBuilderProvider().setProvider(providers.getAsymmetric()), key);
+        }
+
+        message = payload.nextObject();
+        if (!(message instanceof PGPLiteralData)) {
+            throw new PGPException("signed message contains no literal data.");
+        }
+        InputStream unc = ((PGPLiteralData) message).getInputStream();
+        BufferPool pool = BufferPool.getDefault();
+        byte[] buffer = pool.acquire(BUFFER_SIZE);
+        try {
+            int len;
+            while ((len = unc.read(buffer)) >= 0) {
+                if (key != null) {
+                    recorder.enter(Phase.SIGNATURE);
+                    ops.update(buffer, 0, len);
+                    recorder.exit();
+                }
+                out.write(buffer, 0, len);
+            }
+        } finally {
+            pool.release(buffer);
+        }
+
+        message = payload.nextObject();
+        if (!(message instanceof PGPSignatureList)) {
+            throw new PGPException("signed message contains no signature.");
+        }
+        boolean verified = false;
+        if (key != null) {
+            recorder.enter(Phase.SIGNATURE);
+            verified = ops.verify(((PGPSignatureList) message).get(0));
+            recorder.exit();
+        }
+
+        checkIntegrity(match.pbe, recorder);
+        return verified;
+    }
+
+    /**
+     * Re-addresses a message to a new set of recipients without touching its content.
+     * The session key is recovered from the first key packet addressed to one of the secret keys
+     * and encrypted again for every new recipient; the encrypted data packet is copied byte for
+     * byte. The cost depends on the number of recipients, not on the size of the message.
+     * The old key packets are dropped, so the recipients have to include everyone who should
+     * still be able to read the message. The output is armored if the message is.
+     *
+     * @param encrypted  The message to be re-addressed.
+     * @param recipients the complete new set of recipients.
+     * @param out        receives the re-addressed message. It is not closed.
+     * @throws IOException  on a problem reading or writing the streams.
+     * @throws PGPException if the session key can not be recovered or the message has no encrypted data.
+     */
+    public void rewrap(InputStream encrypted, Collection<PGPPublicKey> recipients, OutputStream out) throws IOException, PGPException {
+        if (recipients.isEmpty()) {
+            throw new IllegalArgumentException("at least one recipient is needed");
+        }
+        InputStream decoded = PGPUtil.getDecoderStream(encrypted);
+        BCPGInputStream in = new BCPGInputStream(decoded);
+
+        byte[] sessionInfo = null;
+        try {
+            int tag;
+            while ((tag = in.nextPacketTag()) == PacketTags.PUBLIC_KEY_ENC_SESSION
+                    || tag == PacketTags.SYMMETRIC_KEY_ENC_SESSION
+                    || tag == PacketTags.MARKER) {
+                Packet packet = in.readPacket();
+                if (sessionInfo == null && packet instanceof PublicKeyEncSessionPacket) {
+                    sessionInfo = recoverSessionInfo((PublicKeyEncSessionPacket) packet);
+                }
+            }
+            if (tag != PacketTags.SYM_ENC_INTEGRITY_PRO && tag != PacketTags.SYMMETRIC_KEY_ENC) {
+                throw new PGPException("message has no encrypted data packet.");
+            }
+            if (sessionInfo == null) {
+                throw new IllegalArgumentException("secret key for message not found.");
+            }
+
+            OutputStream target = decoded instanceof ArmoredInputStream ? new ArmoredOutputStream(out) : out;
+            SecureRandom random = new SecureRandom();
+            for (PGPPublicKey recipient : recipients) {
+                target.write(new JcePublicKeyKeyEncryptionMethodGenerator(recipient)
+                        .setProvider(providers.getAsymmetric())
+                        .setSecureRandom(random)
+                        .generate(sessionInfo[0], sessionInfo)
+                        .getEncoded());
+            }
+
+            BufferPool pool = BufferPool.getDefault();
+            byte[] buffer = pool.acquire(BUFFER_SIZE);
+            try {
+                int len;
+                while ((len = in.read(buffer)) >= 0) {
+                    target.write(buffer, 0, len);
+                }
+            } finally {
+                pool.release(buffer);
+            }
+            if (target != out) {
+                target.close();
+            }
+        } finally {
+            if (sessionInfo != null) {
+                Arrays.fill(sessionInfo, (byte) 0);
+            }
+        }
+    }
+
+    /**
+     * @return the algorithm, key and checksum of the session key, or null if the packet is not addressed to one of the secret keys.
+     */
+    private byte[] recoverSessionInfo(PublicKeyEncSessionPacket packet) throws PGPException {
+        UnlockedKey key = lookup(packet.getKeyID());
+        if (key == null) {
+            key = unlock(packet.getKeyID());
+        }
+        if (key == null) {
+            return null;
+        }
+        byte[] sessionInfo = key.decryptorFactory.recoverSessionData(packet.getAlgorithm(), packet.getEncSessionKey());
+        int check = 0;
+        for (int i = 1; i < sessionInfo.length - 2; i++) {
+            check += sessionInfo[i] & 0xff;
+        }
+        if (sessionInfo.length < 4
+                || ((sessionInfo[sessionInfo.length - 2] & 0xff) << 8 | (sessionInfo[sessionInfo.length - 1] & 0xff)) != (check & 0xffff)) {
+            throw new PGPException("session key checksum failed.");
+        }
+        return sessionInfo;
+    }
+
+    /**
+     * Finds the encrypted data addressed to one of the secret keys, preferring keys that are
+     * already unlocked, and unlocks the key if needed.
+     */
+    private Match findEncryptedData(InputStream encrypted, OperationRecorder recorder) throws IOException, PGPException {
+        PGPEncryptedDataList enc = PGPUtils.readEncryptedDataList(encrypted);
+
+        PGPPublicKeyEncryptedData pbe = null;
+        UnlockedKey key = null;
+        List<PGPPublicKeyEncryptedData> candidates = new ArrayList<PGPPublicKeyEncryptedData>();
+        Iterator it = enc.getEncryptedDataObjects();
+        while (key == null && it.hasNext()) {
+            Object o = it.next();
+            if (o instanceof PGPPublicKeyEncryptedData) {
+                pbe = (PGPPublicKeyEncryptedData) o;
+                key = lookup(pbe.getKeyID());
+                candidates.add(pbe);
+            }
+        }
+
+        if (key == null) {
+            recorder.enter(Phase.KEY_UNLOCK);
+            for (PGPPublicKeyEncryptedData candidate : candidates) {
+                key = unlock(candidate.getKeyID());
+                if (key != null) {
+                    pbe = candidate;
+                    break;
+                }
+            }
+            recorder.exit();
+        }
+
+        if (key == null) {
+            throw new IllegalArgumentException("secret key for message not found.");
+        }
+        recorder.addKeyId(pbe.getKeyID());
+        return new Match(pbe, key);
+    }
+
+    private static void checkIntegrity(PGPPublicKeyEncryptedData pbe, OperationRecorder recorder) throws IOException, PGPException {
+        if (pbe.isIntegrityProtected()) {
+            recorder.enter(Phase.INTEGRITY_CHECK);
+            boolean verified = pbe.verify();
+            recorder.exit();
+            if (!verified) {
+                throw new PGPDataValidationException("message failed integrity check");
+            }
+        }
+    }
+
+    /**
+     * Destroys every unlocked key whose time to live has passed.
+     * Expired keys are also dropped when they are looked up, so calling this is only needed
+     * to release them earlier.
+     */
+    public void evictExpired() {
+        long now = System.nanoTime();
+        synchronized (unlocked) {
+            Iterator<UnlockedKey> it = unlocked.values().iterator();
+            while (it.hasNext()) {
+                UnlockedKey key = it.next();
+                if (key.isExpired(now)) {
+                    evictions.incrementAndGet();
+                    key.destroy();
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return hit and miss counts of unlocked key lookups and the number of keys held.
+     */
+    public CacheStats stats() {
+        int size;
+        synchronized (unlocked) {
+            size = unlocked.size();
+        }
+        return new CacheStats(hits.get(), misses.get(), evictions.get(), size);
+    }
+
+    /**
+     * Wipes the passphrase and destroys every unlocked key.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        synchronized (unlocked) {
+            for (UnlockedKey key : unlocked.values()) {
+                key.destroy();
+            }
+            unlocked.clear();
+        }
+        synchronized (passPhrase) {
+            Arrays.fill(passPhrase, '\0');
+        }
+    }
+
+    private UnlockedKey lookup(long keyID) {
+        synchronized (unlocked) {
+            UnlockedKey key = unlocked.get(keyID);
+            if (key == null) {
+                return null;
+            }
+            if (key.isExpired(System.nanoTime())) {
+                evictions.incrementAndGet();
+                key.destroy();
+                unlocked.remove(keyID);
+                return null;
+            }
+            hits.incrementAndGet();
+            return key;
+        }
+    }
+
+    private UnlockedKey unlock(long keyID) throws PGPException {
+        PGPSecretKey pgpSecKey = secretKeys.getSecretKey(keyID);
+        if (pgpSecKey == null) {
+            return null;
+        }
+        if (closed) {
+            throw new IllegalStateException("decryptor is closed");
+        }
+
+        CompletableFuture<UnlockedKey> mine = new CompletableFuture<UnlockedKey>();
+        CompletableFuture<UnlockedKey> running = unlocking.putIfAbsent(keyID, mine);
+        if (running != null) {
+            UnlockedKey key = await(running);
+            hits.incrementAndGet();
+            return key;
+        }
+        try {
+            UnlockedKey key = doUnlock(keyID, pgpSecKey);
+            mine.complete(key);
+            return key;
+        } catch (PGPException | RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            unlocking.remove(keyID, mine);
+        }
+    }
+
+    private UnlockedKey doUnlock(long keyID, PGPSecretKey pgpSecKey) throws PGPException {
+        // an unlock that finished since our lookup has already cached the key
+        synchronized (unlocked) {
+            UnlockedKey cached = unlocked.get(keyID);
+            if (cached != null && !cached.isExpired(System.nanoTime())) {
+                hits.incrementAndGet();
+                return cached;
+            }
+        }
+        misses.incrementAndGet();
+
+        PGPPrivateKey sKey;
+        synchronized (passPhrase) {
+            sKey = pgpSecKey.extractPrivateKey(new JcePBESecretKeyDecryptorBuilder().setProvider("BC").build(passPhrase));
+        }
+        PrivateKey privateKey = new JcaPGPKeyConverter().setProvider(providers.getAsymmetric()).getPrivateKey(sKey);
+        UnlockedKey key = new UnlockedKey(privateKey, providers.newDecryptorFactory(sKey, privateKey), System.nanoTime() + ttlNanos);
+
+        synchronized (unlocked) {
+            if (closed) {
+                key.destroy();
+                throw new IllegalStateException("decryptor is closed");
+            }
+            UnlockedKey previous = unlocked.put(keyID, key);
+            if (previous != null) {
+                // only an expired key can be left, a live one is found above
+                previous.destroy();
+            }
+        }
+        return key;
+    }
+
+    private static UnlockedKey await(CompletableFuture<UnlockedKey> running) throws PGPException {
+        try {
+            return running.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof PGPException) {
+                throw (PGPException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * The clear text of {@link #open(InputStream)}, checked against the MDC at its end.
+     */
+    private static final class DecryptingInputStream extends InputStream {
+        private final InputStream source;
+        private final InputStream clear;
+        private final PGPPublicKeyEncryptedData pbe;
+        private final OperationRecorder recorder;
+        private boolean finished;
+        private boolean recorded;
+
+        private DecryptingInputStream(InputStream source, InputStream clear, PGPPublicKeyEncryptedData pbe, OperationRecorder recorder) {
+            this.source = source;
+            this.clear = clear;
+            this.pbe = pbe;
+            this.recorder = recorder;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (finished) {
+                return -1;
+            }
+            try {
+                int n = clear.read(b, off, len);
+                if (n < 0) {
+                    finished = true;
+                    checkIntegrity(pbe, recorder);
+                    record();
+                    return -1;
+                }
+                recorder.addBytesOut(n);
+                return n;
+            } catch (PGPException e) {
+                recorder.failed(e);
+                record();
+                throw new IOException(e.getMessage(), e);
+            } catch (IOException | RuntimeException e) {
+                finished = true;
+                recorder.failed(e);
+                record();
+                throw e;
+            }
+        }
+
+        @Override
+        public int available() throws IOException {
+            return finished ? 0 : clear.available();
+        }
+
+        @Override
+        public void close() throws IOException {
+            finished = true;
+            record();
+            source.close();
+        }
+
+        private void record() {
+            if (!recorded) {
+                recorded = true;
+                recorder.close();
+            }
+        }
+    }
+
+    private static final class Match {
+        private final PGPPublicKeyEncryptedData pbe;
+        private final UnlockedKey key;
+
+        private Match(PGPPublicKeyEncryptedData pbe, UnlockedKey key) {
+            this.pbe = pbe;
+            this.key = key;
+        }
+    }
+
+    private static final class UnlockedKey {
+        private final PrivateKey privateKey;
+        private final PublicKeyDataDecryptorFactory decryptorFactory;
+        private final long expiresAt;
+
+        private UnlockedKey(PrivateKey privateKey, PublicKeyDataDecryptorFactory decryptorFactory, long expiresAt) {
+            this.privateKey = privateKey;
+            this.decryptorFactory = decryptorFactory;
+            this.expiresAt = expiresAt;
+        }
+
+        private boolean isExpired(long now) {
+            return now - expiresAt >= 0;
+        }
+
+        private void destroy() {
+            if (privateKey instanceof Destroyable && !((Destroyable) privateKey).isDestroyed()) {
+                try {
+                    ((Destroyable) privateKey).destroy();
+                } catch (DestroyFailedException e) {
+                    // the provider keeps the key material in immutable values, dropping the reference is all we can do
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,370 @@
+package io.github.nosuchcompany.pgplug.utils;
+
+import io.github.nosuchcompany.pgplug.buffer.BufferPool;
+import io.github.nosuchcompany.pgplug.metrics.Instrumentation;
+import io.github.nosuchcompany.pgplug.metrics.Operation;
+import io.github.nosuchcompany.pgplug.metrics.OperationRecorder;
+import io.github.nosuchcompany.pgplug.metrics.Phase;
+import org.bouncycastle.bcpg.ArmoredOutputStream;
+import org.bouncycastle.bcpg.HashAlgorithmTags;
+import org.bouncycastle.openpgp.*;
+import org.bouncycastle.openpgp.operator.PGPKeyEncryptionMethodGenerator;
+import org.bouncycastle.openpgp.operator.jcajce.JcaPGPContentSignerBuilder;
+import org.bouncycastle.openpgp.operator.jcajce.JcePBESecretKeyDecryptorBuilder;
+import org.bouncycastle.openpgp.operator.jcajce.JcePGPDataEncryptorBuilder;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
+import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * An immutable encryptor for a fixed set of recipients.
+ * Everything that does not depend on the message - the provider, the data encryptor builder,
+ * the random source and the key encryption method of every recipient - is set up once when the
+ * encryptor is built. One instance can be shared by any number of threads; each message only
+ * pays for its fresh session key and the encryption itself.
+ * With a signing key every message is signed in the same pass: a one pass signature, the
+ * literal data and the signature are written inside the compressed and encrypted data, which
+ * {@link PGPDecryptor#decryptAndVerify(InputStream, PGPPublicKeyRingCollection, OutputStream)} reads back.
+ */
+public class PGPEncryptor {
+
+    private static final int BUFFER_SIZE = Compression.SAMPLE_SIZE;
+
+    private static final String LITERAL_DATA_NAME = "sealKey";
+
+    private final JcePGPDataEncryptorBuilder dataEncryptorBuilder;
+
+    private final List<PGPKeyEncryptionMethodGenerator> methods;
+
+    private final long[] keyIds;
+
+    private final Compression compression;
+
+    private final boolean armor;
+
+    private final PGPPrivateKey signingKey;
+
+    private final String signerUserID;
+
+    private final CryptoProviders providers;
+
+    private final BufferPool bufferPool;
+
+    private final ParallelKeyWrap keyWrap;
+
+    private PGPEncryptor(Builder builder) {
+        CryptoProviders providers = builder.providers != null ? builder.providers : CryptoProviders.getDefault();
+        SecureRandom random = builder.secureRandom != null ? builder.secureRandom : new SecureRandom();
+
+        this.dataEncryptorBuilder = new JcePGPDataEncryptorBuilder(builder.symmetricAlgorithm)
+                .setWithIntegrityPacket(builder.withIntegrityCheck)
+                .setSecureRandom(random)
+                .setProvider(providers.symmetricFor(builder.symmetricAlgorithm, builder.withIntegrityCheck));
+
+        this.keyIds = new long[builder.publicKeys.size()];
+        for (int i = 0; i < keyIds.length; i++) {
+            keyIds[i] = builder.publicKeys.get(i).getKeyID();
+        }
+        this.methods = Collections.unmodifiableList(
+                PreparedKeyEncryptionMethodGenerator.prepare(builder.publicKeys, providers.getAsymmetric(), random));
+        this.compression = builder.compression;
+        this.armor = builder.armor;
+        this.signingKey = builder.signingKey;
+        this.signerUserID = builder.signerUserID;
+        this.providers = providers;
+        this.bufferPool = builder.bufferPool != null ? builder.bufferPool : BufferPool.getDefault();
+        this.keyWrap = builder.keyWrapExecutor != null && methods.size() > 1
+                ? new ParallelKeyWrap(this.methods, builder.keyWrapExecutor, 4 * parallelism(builder.keyWrapExecutor))
+                : null;
+    }
+
+    /**
+     * Encrypts the clear data in memory.
+     *
+     * @param clearData The data need to be encrypted
+     * @return the encrypted message.
+     * @throws IOException  never for in memory data, declared for the stream path.
+     * @throws PGPException if the message could not be encrypted.
+     */
+    public byte[] encrypt(byte[] clearData) throws IOException, PGPException {
+        ByteArrayOutputStream bOut = new ByteArrayOutputStream(clearData.length + 1024);
+        encrypt(bOut, new ByteArrayInputStream(clearData));
+        return bOut.toByteArray();
+    }
+
+    /**
+     * Encrypts between channels.
+     *
+     * @param out     channel the encrypted message is written to. It is not closed.
+     * @param clearIn channel the clear data is read from until end of stream.
+     * @throws IOException  on a problem reading or writing the channels.
+     * @throws PGPException if the message could not be encrypted.
+     */
+    public void encrypt(WritableByteChannel out, ReadableByteChannel clearIn) throws IOException, PGPException {
+        OutputStream os = Channels.newOutputStream(out);
+        encrypt(os, Channels.newInputStream(clearIn));
+        os.flush();
+    }
+
+    /**
+     * Encrypts from file to file. The clear file is read through memory-mapped windows and the
+     * message written through a direct buffer.
+     *
+     * @param in  the file that should be encrypted.
+     * @param out the encrypted file, created or replaced.
+     * @throws IOException  on a problem reading or writing the files.
+     * @throws PGPException if the message could not be encrypted.
+     */
+    public void encrypt(Path in, Path out) throws IOException, PGPException {
+        try (FileChannel inChannel = FileChannel.open(in, StandardOpenOption.READ);
+             FileChannel outChannel = FileChannels.openForWriting(out, in);
+             OutputStream os = FileChannels.newOutputStream(outChannel)) {
+            encrypt(os, FileChannels.newInputStream(inChannel));
+        }
+    }
+
+    /**
+     * Encrypts between streams.
+     * The clear data is written as partial length literal packets, so the memory used stays the
+     * same no matter how large the input is.
+     *
+     * @param out     store encrypted data. It is not closed.
+     * @param clearIn The data need to be encrypted, read until end of stream.
+     * @throws IOException  on a problem reading or writing the streams.
+     * @throws PGPException if the message could not be encrypted.
+     */
+    public void encrypt(OutputStream out, InputStream clearIn) throws IOException, PGPException {
+        OperationRecorder recorder = Instrumentation.start(Operation.ENCRYPT);
+        try {
+            encrypt(recorder.countOut(out), recorder.countIn(clearIn), recorder);
+        } catch (IOException | PGPException | RuntimeException e) {
+            recorder.failed(e);
+            throw e;
+        } finally {
+            recorder.close();
+        }
+    }
+
+    private void encrypt(OutputStream out, InputStream clearIn, OperationRecorder recorder) throws IOException, PGPException {
+        // the generators keep the buffers while the message is written
+        byte[][] buffer = {bufferPool.acquire(BUFFER_SIZE), bufferPool.acquire(BUFFER_SIZE), bufferPool.acquire(BUFFER_SIZE)};
+        try {
+            encrypt(out, clearIn, recorder, buffer);
+        } finally {
+            for (byte[] b : buffer) {
+                bufferPool.release(b);
+            }
+        }
+    }
+
+    private void encrypt(OutputStream out, InputStream clearIn, OperationRecorder recorder, byte[][] buffer)
+            throws IOException, PGPException {
+        if (armor) {
+            out = new ArmoredOutputStream(out);
+        }
+
+        PGPEncryptedDataGenerator cPk = new PGPEncryptedDataGenerator(dataEncryptorBuilder);
+        for (PGPKeyEncryptionMethodGenerator method : keyWrap != null ? keyWrap.forMessage() : methods) {
+            cPk.addMethod(method);
+        }
+        for (long keyId : keyIds) {
+            recorder.addKeyId(keyId);
+        }
+        PGPSignatureGenerator sGen = signingKey != null ? initSignatureGenerator(recorder) : null;
+        int sampled = Compression.readSample(clearIn, buffer[2]);
+        recorder.enter(Phase.SESSION_KEY);
+        OutputStream cOut = recorder.measure(Phase.SYMMETRIC_CRYPTO, cPk.open(out, buffer[0]));
+        recorder.exit();
+
+        recorder.enter(Phase.COMPRESSION);
+        PGPCompressedDataGenerator comData = compression.newGenerator(buffer[2], sampled, bufferPool);
+        recorder.exit();
+
+        OutputStream lIn = comData == null ? cOut : recorder.measure(Phase.COMPRESSION, comData.open(cOut));
+        if (sGen != null) {
+            sGen.generateOnePassVersion(false).encode(lIn);
+        }
+
+        PGPLiteralDataGenerator lData = new PGPLiteralDataGenerator();
+        OutputStream pOut = lData.open(lIn, PGPLiteralData.BINARY, LITERAL_DATA_NAME, new Date(), buffer[1]);
+        int len = sampled;
+        do {
+            pOut.write(buffer[2], 0, len);
+            if (sGen != null) {
+                recorder.enter(Phase.SIGNATURE);
+                sGen.update(buffer[2], 0, len);
+                recorder.exit();
+            }
+        } while ((len = clearIn.read(buffer[2])) >= 0);
+        lData.close();
+
+        if (sGen != null) {
+            recorder.enter(Phase.SIGNATURE);
+            PGPSignature signature = sGen.generate();
+            recorder.exit();
+            signature.encode(lIn);
+        }
+
+        if (comData != null) {
+            recorder.enter(Phase.COMPRESSION);
+            comData.close();
+            recorder.exit();
+        }
+
+        cOut.close();
+
+        if (armor) {
+            out.close();
+        }
+    }
+
+    private PGPSignatureGenerator initSignatureGenerator(OperationRecorder recorder) throws PGPException {
+        recorder.addKeyId(signingKey.getKeyID());
+        PGPSignatureGenerator sGen = new PGPSignatureGenerator(
+                new JcaPGPContentSignerBuilder(signingKey.getPublicKeyPacket().getAlgorithm(), HashAlgorithmTags.SHA256)
+                        .setProvider(providers.getAsymmetric())
+                        .setDigestProvider(providers.getDigest()));
+        sGen.init(PGPSignature.BINARY_DOCUMENT, signingKey);
+        if (signerUserID != null) {
+            PGPSignatureSubpacketGenerator spGen = new PGPSignatureSubpacketGenerator();
+            spGen.setSignerUserID(false, signerUserID);
+            sGen.setHashedSubpackets(spGen.generate());
+        }
+        return sGen;
+    }
+
+    /**
+     * @return how many tasks the executor runs at the same time, the number of cores if it does not tell.
+     */
+    static int parallelism(Executor executor) {
+        return executor instanceof ForkJoinPool ? ((ForkJoinPool) executor).getParallelism() : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Collects the settings of a {@link PGPEncryptor}.
+     */
+    public static class Builder {
+        private final List<PGPPublicKey> publicKeys;
+        private int symmetricAlgorithm = PGPEncryptedData.AES_256;
+        private Compression compression = Compression.ZIP;
+        private boolean armor = true;
+        private boolean withIntegrityCheck = true;
+        private SecureRandom secureRandom;
+        private PGPPrivateKey signingKey;
+        private String signerUserID;
+        private CryptoProviders providers;
+        private BufferPool bufferPool;
+        private Executor keyWrapExecutor;
+
+        /**
+         * @param publicKeys the recipients of every message.
+         */
+        public Builder(Collection<PGPPublicKey> publicKeys) {
+            if (publicKeys.isEmpty()) {
+                throw new IllegalArgumentException("at least one recipient is needed");
+            }
+            this.publicKeys = new ArrayList<PGPPublicKey>(publicKeys);
+        }
+
+        /**
+         * @param symmetricAlgorithm one of {@link PGPEncryptedData}'s algorithm tags, AES_256 by default.
+         */
+        public Builder setSymmetricAlgorithm(int symmetricAlgorithm) {
+            this.symmetricAlgorithm = symmetricAlgorithm;
+            return this;
+        }
+
+        /**
+         * @param compressionAlgorithm one of {@link PGPCompressedData}'s algorithm tags, ZIP by default.
+         */
+        public Builder setCompressionAlgorithm(int compressionAlgorithm) {
+            this.compression = Compression.of(compressionAlgorithm);
+            return this;
+        }
+
+        /**
+         * @param compression the compression algorithm, level and whether it adapts to the data, ZIP by default.
+         */
+        public Builder setCompression(Compression compression) {
+            this.compression = compression;
+            return this;
+        }
+
+        /**
+         * @param armor whether the message is ASCII armored, true by default.
+         */
+        public Builder setArmor(boolean armor) {
+            this.armor = armor;
+            return this;
+        }
+
+        public Builder setWithIntegrityCheck(boolean withIntegrityCheck) {
+            this.withIntegrityCheck = withIntegrityCheck;
+            return this;
+        }
+
+        /**
+         * @param secureRandom the random source for session keys, shared by all threads.
+         */
+        public Builder setSecureRandom(SecureRandom secureRandom) {
+            this.secureRandom = secureRandom;
+            return this;
+        }
+
+        /**
+         * @param providers the providers of the asymmetric, symmetric and digest operations,
+         *                  {@link CryptoProviders#getDefault()} by default.
+         */
+        public Builder setCryptoProviders(CryptoProviders providers) {
+            this.providers = providers;
+            return this;
+        }
+
+        /**
+         * @param bufferPool the pool the I/O buffers of every message are taken from,
+         *                   {@link BufferPool#getDefault()} by default.
+         */
+        public Builder setBufferPool(BufferPool bufferPool) {
+            this.bufferPool = bufferPool;
+            return this;
+        }
+
+        /**
+         * Encrypts the session key of every message to the recipients in parallel, which pays off from
+         * a few dozen recipients on, or from a handful of elliptic curve ones.
+         *
+         * @param executor runs the public key operations, e.g. {@link ForkJoinPool#commonPool()}.
+         */
+        public Builder setParallelKeyWrapping(Executor executor) {
+            this.keyWrapExecutor = executor;
+            return this;
+        }
+
+        /**
+         * Signs every message with the key. The key is unlocked here, once for all messages.
+         *
+         * @param secretKey  a signing key, e.g. from {@link PGPUtils#readSecretKey(InputStream)}.
+         * @param passPhrase passphrase of the secret key.
+         * @throws PGPException if the key can not be unlocked.
+         */
+        public Builder setSigningKey(PGPSecretKey secretKey, char[] passPhrase) throws PGPException {
+            this.signingKey = secretKey.extractPrivateKey(new JcePBESecretKeyDecryptorBuilder().setProvider("BC").build(passPhrase));
+            Iterator it = secretKey.getPublicKey().getUserIDs();
+            this.signerUserID = it.hasNext() ? (String) it.next() : null;
+            return this;
+        }
+
+        public PGPEncryptor build() {
+            return new PGPEncryptor(this);
+        }
+    }
+}
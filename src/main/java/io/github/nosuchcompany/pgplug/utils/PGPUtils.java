@@ -1,15 +1,25 @@
 package io.github.nosuchcompany.pgplug.utils;
 
+import io.github.nosuchcompany.pgplug.cache.PublicKeyCache;
+import io.github.nosuchcompany.pgplug.metrics.Instrumentation;
+import io.github.nosuchcompany.pgplug.metrics.Operation;
+import io.github.nosuchcompany.pgplug.metrics.OperationRecorder;
+import io.github.nosuchcompany.pgplug.metrics.Phase;
 import org.bouncycastle.bcpg.ArmoredOutputStream;
 import org.bouncycastle.bcpg.HashAlgorithmTags;
+import org.bouncycastle.bcpg.sig.KeyFlags;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.bouncycastle.openpgp.*;
 import org.bouncycastle.openpgp.jcajce.JcaPGPObjectFactory;
 import org.bouncycastle.openpgp.operator.PGPDigestCalculator;
+import org.bouncycastle.openpgp.operator.PublicKeyDataDecryptorFactory;
 import org.bouncycastle.openpgp.operator.jcajce.*;
 import org.bouncycastle.util.io.Streams;
 
 import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.security.*;
 import java.util.*;
 
@@ -20,7 +30,7 @@ import java.util.*;
 
 public class PGPUtils {
 
-    private static KeyPairGenerator kpg;
+    private static final KeyAlgorithm defaultKeyAlgorithm = KeyAlgorithm.RSA_1024;
 
     private static final boolean isArmored = true;
 
@@ -28,60 +38,172 @@ public class PGPUtils {
 
     private static final boolean withIntegrityCheck = true;
 
+    private static final PublicKeyCache publicKeyCache = new PublicKeyCache();
+
     static {
         try {
             Security.addProvider(new BouncyCastleProvider());
-            kpg = KeyPairGenerator.getInstance("RSA", "BC");
-            kpg.initialize(1024);
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
 
     public static final void generateKeyPair(OutputStream privateOut, OutputStream publicOut, char[] passPhrase){
-        try {
-            KeyPair pair = kpg.generateKeyPair();
+        generateKeyPair(defaultKeyAlgorithm, privateOut, publicOut, passPhrase);
+    }
 
-            if (isArmored) {
-                privateOut = new ArmoredOutputStream(privateOut);
+    /**
+     * Generates a key pair of the given type.
+     * RSA keys are written the same way as {@link #generateKeyPair(OutputStream, OutputStream, char[])} does,
+     * elliptic curve keys are written as key ring of an ECDSA signing key with an ECDH encryption subkey.
+     *
+     * @param algorithm  the key type and strength.
+     * @param privateOut receives the secret key (ring), protected by the passPhrase.
+     * @param publicOut  receives the public key (ring).
+     * @param passPhrase passphrase of the secret key.
+     */
+    public static final void generateKeyPair(KeyAlgorithm algorithm, OutputStream privateOut, OutputStream publicOut, char[] passPhrase){
+        OperationRecorder recorder = Instrumentation.start(Operation.KEY_GENERATION);
+        try {
+            if (!algorithm.isElliptic()) {
+                recorder.enter(Phase.KEY_GENERATION);
+                KeyPair pair = algorithm.generateJcaKeyPair();
+                recorder.exit();
+                writeKeyPair(pair, privateOut, publicOut, passPhrase, recorder);
+                return;
             }
-
-            Calendar cal = Calendar.getInstance();
-            cal.add(Calendar.YEAR, 5);
+            Date now = new Date();
+            recorder.enter(Phase.KEY_GENERATION);
+            PGPKeyPair signKey = new JcaPGPKeyPair(PGPPublicKey.ECDSA, algorithm.generateJcaKeyPair(), now);
+            PGPKeyPair encryptKey = new JcaPGPKeyPair(PGPPublicKey.ECDH, algorithm.generateJcaKeyPair(), now);
+            recorder.exit();
+            recorder.addKeyId(signKey.getKeyID());
+            recorder.addKeyId(encryptKey.getKeyID());
+
+            PGPSignatureSubpacketGenerator signFlags = new PGPSignatureSubpacketGenerator();
+            signFlags.setKeyFlags(false, KeyFlags.CERTIFY_OTHER | KeyFlags.SIGN_DATA);
+            PGPSignatureSubpacketGenerator encryptFlags = new PGPSignatureSubpacketGenerator();
+            encryptFlags.setKeyFlags(false, KeyFlags.ENCRYPT_COMMS | KeyFlags.ENCRYPT_STORAGE);
 
             PGPDigestCalculator sha1Calc = new JcaPGPDigestCalculatorProviderBuilder().build().get(HashAlgorithmTags.SHA1);
-            PGPKeyPair keyPair = new JcaPGPKeyPair(PGPPublicKey.RSA_GENERAL, pair, cal.getTime());
-            PGPSecretKey secretKey = new PGPSecretKey(PGPSignature.DEFAULT_CERTIFICATION,
-                    keyPair,
+            PGPKeyRingGenerator keyRingGen = new PGPKeyRingGenerator(PGPSignature.POSITIVE_CERTIFICATION,
+                    signKey,
                     identity,
                     sha1Calc,
+                    signFlags.generate(),
                     null,
-                    null,
-                    new JcaPGPContentSignerBuilder(keyPair.getPublicKey().getAlgorithm(), HashAlgorithmTags.SHA1),
+                    new JcaPGPContentSignerBuilder(signKey.getPublicKey().getAlgorithm(), HashAlgorithmTags.SHA256).setProvider("BC"),
                     new JcePBESecretKeyEncryptorBuilder(PGPEncryptedData.AES_256, sha1Calc).setProvider("BC").build(passPhrase));
+            keyRingGen.addSubKey(encryptKey, encryptFlags.generate(), null);
 
-            secretKey.encode(privateOut);
-
+            if (isArmored) {
+                privateOut = new ArmoredOutputStream(privateOut);
+            }
+            keyRingGen.generateSecretKeyRing().encode(privateOut);
             privateOut.close();
 
             if (isArmored) {
                 publicOut = new ArmoredOutputStream(publicOut);
             }
+            keyRingGen.generatePublicKeyRing().encode(publicOut);
+            publicOut.close();
+        } catch (PGPException e) {
+            recorder.failed(e);
+            e.printStackTrace();
+        } catch (IOException e) {
+            recorder.failed(e);
+            e.printStackTrace();
+        } finally {
+            recorder.close();
+        }
+    }
 
-            PGPPublicKey key = secretKey.getPublicKey();
-
-            key.encode(publicOut);
+    /**
+     * Generates the raw key material for {@link #generateKeyPair(KeyPair, OutputStream, OutputStream, char[])}.
+     * This is the expensive part of the key generation, it may be called from several threads at once.
+     *
+     * @return a new RSA key pair.
+     */
+    public static KeyPair generateJcaKeyPair() {
+        return defaultKeyAlgorithm.generateJcaKeyPair();
+    }
 
-            publicOut.close();
+    /**
+     * Writes an already generated key pair as PGP secret and public key.
+     *
+     * @param pair       the raw key material, see {@link #generateJcaKeyPair()}.
+     * @param privateOut receives the secret key, protected by the passPhrase.
+     * @param publicOut  receives the public key.
+     * @param passPhrase passphrase of the secret key.
+     */
+    public static final void generateKeyPair(KeyPair pair, OutputStream privateOut, OutputStream publicOut, char[] passPhrase){
+        OperationRecorder recorder = Instrumentation.start(Operation.KEY_GENERATION);
+        try {
+            writeKeyPair(pair, privateOut, publicOut, passPhrase, recorder);
         } catch (PGPException e) {
+            recorder.failed(e);
             e.printStackTrace();
         } catch (IOException e) {
+            recorder.failed(e);
             e.printStackTrace();
+        } finally {
+            recorder.close();
+        }
+    }
+
+    private static void writeKeyPair(KeyPair pair, OutputStream privateOut, OutputStream publicOut, char[] passPhrase, OperationRecorder recorder)
+            throws PGPException, IOException {
+        if (isArmored) {
+            privateOut = new ArmoredOutputStream(privateOut);
         }
+
+        Calendar cal = Calendar.getInstance();
+        cal.add(Calendar.YEAR, 5);
+
+        PGPDigestCalculator sha1Calc = new JcaPGPDigestCalculatorProviderBuilder().build().get(HashAlgorithmTags.SHA1);
+        PGPKeyPair keyPair = new JcaPGPKeyPair(PGPPublicKey.RSA_GENERAL, pair, cal.getTime());
+        recorder.addKeyId(keyPair.getKeyID());
+        PGPSecretKey secretKey = new PGPSecretKey(PGPSignature.DEFAULT_CERTIFICATION,
+                keyPair,
+                identity,
+                sha1Calc,
+                null,
+                null,
+                new JcaPGPContentSignerBuilder(keyPair.getPublicKey().getAlgorithm(), HashAlgorithmTags.SHA1),
+                new JcePBESecretKeyEncryptorBuilder(PGPEncryptedData.AES_256, sha1Calc).setProvider("BC").build(passPhrase));
+
+        secretKey.encode(privateOut);
+
+        privateOut.close();
+
+        if (isArmored) {
+            publicOut = new ArmoredOutputStream(publicOut);
+        }
+
+        PGPPublicKey key = secretKey.getPublicKey();
+
+        key.encode(publicOut);
+
+        publicOut.close();
     }
 
+    /**
+     * Loads the first encryption key of the given key ring bytes.
+     * Parsed keys are kept in the {@link #getPublicKeyCache() public key cache}, so reading
+     * the same bytes again is a lookup.
+     *
+     * @param data the public key data
+     * @return the first public key found.
+     */
     public static PGPPublicKey readPublicKey(byte[] data){
-        return readPublicKey(new ByteArrayInputStream(data));
+        return publicKeyCache.get(data);
+    }
+
+    /**
+     * @return the cache behind {@link #readPublicKey(byte[])}, for statistics and invalidation.
+     */
+    public static PublicKeyCache getPublicKeyCache() {
+        return publicKeyCache;
     }
 
     /**
@@ -178,6 +300,7 @@ public class PGPUtils {
     }
 
     public static byte[] decrypt(InputStream encrypted, InputStream privateKeyIn, char[] passPhrase) throws IOException{
+        // the stream decrypt closes its output, so a pooled stream would be released before it is read
         ByteArrayOutputStream bOut = new ByteArrayOutputStream();
         decrypt(encrypted, privateKeyIn, bOut, passPhrase);
         return bOut.toByteArray();
@@ -197,21 +320,9 @@ public class PGPUtils {
             char[] passPhrase)
             {
 
+        OperationRecorder recorder = Instrumentation.start(Operation.DECRYPT);
         try {
-            encrypted = PGPUtil.getDecoderStream(encrypted);
-
-            JcaPGPObjectFactory pgpF = new JcaPGPObjectFactory(encrypted);
-            PGPEncryptedDataList enc;
-
-            Object o = pgpF.nextObject();
-            //
-            // the first object might be a PGP marker packet.
-            //
-            if (o instanceof PGPEncryptedDataList) {
-                enc = (PGPEncryptedDataList) o;
-            } else {
-                enc = (PGPEncryptedDataList) pgpF.nextObject();
-            }
+            PGPEncryptedDataList enc = readEncryptedDataList(recorder.countIn(encrypted));
 
             //
             // find the secret key
@@ -219,42 +330,33 @@ public class PGPUtils {
             Iterator it = enc.getEncryptedDataObjects();
             PGPPrivateKey sKey = null;
             PGPPublicKeyEncryptedData pbe = null;
+            recorder.enter(Phase.KEY_RING_PARSE);
             PGPSecretKeyRingCollection pgpSec = new PGPSecretKeyRingCollection(PGPUtil.getDecoderStream(privateKeyIn), new JcaKeyFingerprintCalculator());
+            recorder.exit();
 
+            recorder.enter(Phase.KEY_UNLOCK);
             while (sKey == null && it.hasNext()) {
                 pbe = (PGPPublicKeyEncryptedData) it.next();
 
                 sKey = PGPUtils.findSecretKey(pgpSec, pbe.getKeyID(), passPhrase);
             }
+            recorder.exit();
 
             if (sKey == null) {
                 throw new IllegalArgumentException("secret key for message not found.");
             }
+            recorder.addKeyId(pbe.getKeyID());
 
-            InputStream clear = pbe.getDataStream(new JcePublicKeyDataDecryptorFactoryBuilder().setProvider("BC").build(sKey));
-
-            JcaPGPObjectFactory plainFact = new JcaPGPObjectFactory(clear);
-
-            PGPCompressedData cData = (PGPCompressedData) plainFact.nextObject();
-
-            InputStream compressedStream = new BufferedInputStream(cData.getDataStream());
-            JcaPGPObjectFactory pgpFact = new JcaPGPObjectFactory(compressedStream);
-
-            Object message = pgpFact.nextObject();
-
-            if (message instanceof PGPLiteralData) {
-                PGPLiteralData ld = (PGPLiteralData) message;
-                InputStream unc = ld.getInputStream();
-                Streams.pipeAll(unc, fOut);
-                fOut.close();
-            } else if (message instanceof PGPOnePassSignatureList) {
-                throw new PGPException("encrypted message contains a signed message - not literal data.");
-            } else {
-                throw new PGPException("message is not a simple encrypted file - type unknown.");
-            }
+            InputStream unc = openLiteralData(pbe, CryptoProviders.getDefault().newDecryptorFactory(sKey, null), recorder);
+            Streams.pipeAll(unc, recorder.countOut(fOut));
+            fOut.close();
 
             if (pbe.isIntegrityProtected()) {
-                if (!pbe.verify()) {
+                recorder.enter(Phase.INTEGRITY_CHECK);
+                boolean verified = pbe.verify();
+                recorder.exit();
+                if (!verified) {
+                    recorder.failed(new PGPDataValidationException("message failed integrity check"));
                     System.err.println("message failed integrity check");
                 } else {
                     System.err.println("message integrity check passed");
@@ -263,7 +365,107 @@ public class PGPUtils {
                 System.err.println("no message integrity check");
             }
         } catch (Exception e) {
+            recorder.failed(e);
             System.err.println(e);
+        } finally {
+            recorder.close();
+        }
+    }
+
+    /**
+     * Reads the encrypted data list (the PKESK packets) at the start of a message.
+     *
+     * @param encrypted the armored or binary message.
+     * @return the encrypted data list of the message.
+     * @throws IOException on a problem reading the stream.
+     */
+    static PGPEncryptedDataList readEncryptedDataList(InputStream encrypted) throws IOException {
+        encrypted = PGPUtil.getDecoderStream(encrypted);
+
+        JcaPGPObjectFactory pgpF = new JcaPGPObjectFactory(encrypted);
+
+        Object o = pgpF.nextObject();
+        //
+        // the first object might be a PGP marker packet.
+        //
+        if (o instanceof PGPEncryptedDataList) {
+            return (PGPEncryptedDataList) o;
+        }
+        return (PGPEncryptedDataList) pgpF.nextObject();
+    }
+
+    /**
+     * Opens the encrypted data with the given decryptor and returns the literal data in it.
+     *
+     * @param pbe       the encrypted data matching the decryptor's private key.
+     * @param decryptor the decryptor factory built on the unlocked private key.
+     * @param recorder  times the session key unwrap, the decryption and the decompression.
+     * @return the clear text stream.
+     * @throws PGPException if the message is not a simple encrypted message.
+     * @throws IOException  on a problem reading the stream.
+     */
+    static InputStream openLiteralData(PGPPublicKeyEncryptedData pbe, PublicKeyDataDecryptorFactory decryptor, OperationRecorder recorder) throws PGPException, IOException {
+        Object message = openPayload(pbe, decryptor, recorder).nextObject();
+
+        if (message instanceof PGPLiteralData) {
+            return ((PGPLiteralData) message).getInputStream();
+        } else if (message instanceof PGPOnePassSignatureList) {
+            throw new PGPException("encrypted message contains a signed message - not literal data.");
+        } else {
+            throw new PGPException("message is not a simple encrypted file - type unknown.");
+        }
+    }
+
+    /**
+     * Opens the encrypted data with the given decryptor and returns its packets, decompressed if
+     * the message is compressed.
+     *
+     * @param pbe       the encrypted data matching the decryptor's private key.
+     * @param decryptor the decryptor factory built on the unlocked private key.
+     * @param recorder  times the session key unwrap, the decryption and the decompression.
+     * @return the literal data and, for signed messages, the signature packets.
+     * @throws PGPException if the session key can not be unwrapped.
+     * @throws IOException  on a problem reading the stream.
+     */
+    static Payload openPayload(PGPPublicKeyEncryptedData pbe, PublicKeyDataDecryptorFactory decryptor, OperationRecorder recorder) throws PGPException, IOException {
+        recorder.enter(Phase.SESSION_KEY);
+        InputStream clear = pbe.getDataStream(decryptor);
+        recorder.exit();
+        clear = recorder.measure(Phase.SYMMETRIC_CRYPTO, clear);
+
+        JcaPGPObjectFactory pgpFact = new JcaPGPObjectFactory(clear);
+
+        Object message = pgpFact.nextObject();
+
+        //
+        // the compressed data packet is left out for incompressible data.
+        //
+        if (message instanceof PGPCompressedData) {
+            InputStream compressedStream = new BufferedInputStream(recorder.measure(Phase.COMPRESSION, ((PGPCompressedData) message).getDataStream()));
+            return new Payload(new JcaPGPObjectFactory(compressedStream), null);
+        }
+        return new Payload(pgpFact, message);
+    }
+
+    /**
+     * The packets inside the encrypted data, after the compressed data packet if there is one.
+     */
+    static final class Payload {
+        private final JcaPGPObjectFactory pgpFact;
+        private Object first;
+
+        private Payload(JcaPGPObjectFactory pgpFact, Object first) {
+            this.pgpFact = pgpFact;
+            this.first = first;
+        }
+
+        Object nextObject() throws IOException {
+            if (first != null) {
+                Object o = first;
+                first = null;
+                return o;
+            }
+            return pgpFact.nextObject();
         }
     }
 
@@ -297,46 +499,129 @@ public class PGPUtils {
             Collection<PGPPublicKey> publicKeys
             )
             {
-        if (isArmored) {
-            out = new ArmoredOutputStream(out);
-        }
-
         try {
-            PGPEncryptedDataGenerator cPk = new
-                    PGPEncryptedDataGenerator(
-                            new JcePGPDataEncryptorBuilder(PGPEncryptedData.AES_256)
-                                    .setWithIntegrityPacket(withIntegrityCheck)
-                                    .setSecureRandom(new SecureRandom())
-                                    .setProvider("BC")
-            );
-
-            for (PGPPublicKey publicKey : publicKeys) {
-                cPk.addMethod(new JcePublicKeyKeyEncryptionMethodGenerator(publicKey).setProvider("BC"));
-            }
-            OutputStream cOut = cPk.open(out, new byte[1 << 16]);
-
-            PGPCompressedDataGenerator comData = new PGPCompressedDataGenerator(PGPCompressedData.ZIP);
+            encrypt(out, new ByteArrayInputStream(clearData), publicKeys);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
 
-            writeBytesToLiteralData(comData.open(cOut), PGPLiteralData.BINARY,"sealKey", clearData);
+    /**
+     * Streaming PGP encryptor between channels.
+     *
+     * @param out        channel the encrypted message is written to. It is not closed.
+     * @param clearIn    channel the clear data is read from until end of stream.
+     * @param publicKeys Public Key Collection.
+     * @throws IOException  on a problem reading or writing the channels.
+     * @throws PGPException if the message could not be encrypted.
+     */
+    public static void encrypt(
+            WritableByteChannel out,
+            ReadableByteChannel clearIn,
+            Collection<PGPPublicKey> publicKeys)
+            throws IOException, PGPException {
+        OutputStream os = Channels.newOutputStream(out);
+        encrypt(os, Channels.newInputStream(clearIn), publicKeys);
+        os.flush();
+    }
 
-            comData.close();
+    /**
+     * Streaming PGP encryptor between streams.
+     * The clear data is written as partial length literal packets, so the memory
+     * used stays the same no matter how large the input is.
+     *
+     * @param out        store encrypted data. It is not closed.
+     * @param clearIn    The data need to be encrypted, read until end of stream.
+     * @param publicKeys Public Key Collection.
+     * @throws IOException  on a problem reading or writing the streams.
+     * @throws PGPException if the message could not be encrypted.
+     * @see PGPEncryptor for encrypting many messages to the same recipients.
+     */
+    public static void encrypt(
+            OutputStream out,
+            InputStream clearIn,
+            Collection<PGPPublicKey> publicKeys)
+            throws IOException, PGPException {
+        encrypt(out, clearIn, publicKeys, Compression.ZIP);
+    }
 
-            cOut.close();
+    /**
+     * Streaming PGP encryptor between streams with a chosen compression.
+     *
+     * @param out         store encrypted data. It is not closed.
+     * @param clearIn     The data need to be encrypted, read until end of stream.
+     * @param publicKeys  Public Key Collection.
+     * @param compression the compression algorithm and level, {@link Compression#adaptive()} skips
+     *                    compressing data that does not shrink.
+     * @throws IOException  on a problem reading or writing the streams.
+     * @throws PGPException if the message could not be encrypted.
+     */
+    public static void encrypt(
+            OutputStream out,
+            InputStream clearIn,
+            Collection<PGPPublicKey> publicKeys,
+            Compression compression)
+            throws IOException, PGPException {
+        new PGPEncryptor.Builder(publicKeys)
+                .setArmor(isArmored)
+                .setWithIntegrityCheck(withIntegrityCheck)
+                .setCompression(compression)
+                .build()
+                .encrypt(out, clearIn);
+    }
 
-            if (isArmored) {
-                out.close();
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+    /**
+     * Streaming PGP sign and encrypt in one pass.
+     * The message carries a one pass signature inside the compressed and encrypted data, so the
+     * clear data is read once and no intermediate signed file is needed.
+     *
+     * @param out        store the signed and encrypted data. It is not closed.
+     * @param clearIn    The data need to be signed and encrypted, read until end of stream.
+     * @param publicKeys Public Key Collection.
+     * @param signingKey the signer's secret key, see {@link #readSecretKey(InputStream)}.
+     * @param passPhrase passphrase of the signing key.
+     * @throws IOException  on a problem reading or writing the streams.
+     * @throws PGPException if the signing key can not be unlocked or the message not be encrypted.
+     */
+    public static void signAndEncrypt(
+            OutputStream out,
+            InputStream clearIn,
+            Collection<PGPPublicKey> publicKeys,
+            PGPSecretKey signingKey,
+            char[] passPhrase)
+            throws IOException, PGPException {
+        new PGPEncryptor.Builder(publicKeys)
+                .setArmor(isArmored)
+                .setWithIntegrityCheck(withIntegrityCheck)
+                .setSigningKey(signingKey, passPhrase)
+                .build()
+                .encrypt(out, clearIn);
     }
 
-    private static void writeBytesToLiteralData(OutputStream out,
-                                                char fileType,
-                                                String name,
-                                                byte[] bytes) throws IOException {
-        PGPLiteralDataGenerator lData = new PGPLiteralDataGenerator();
-        OutputStream pOut = lData.open(out, fileType, name,bytes.length, new Date());
-        pOut.write(bytes);
+    /**
+     * Streaming PGP decrypt and verify in one pass, the counterpart of
+     * {@link #signAndEncrypt(OutputStream, InputStream, Collection, PGPSecretKey, char[])}.
+     * The clear text is written while it is read: it must not be trusted unless this returns true.
+     *
+     * @param encrypted    The message to be decrypted.
+     * @param privateKeyIn private key InputStream.
+     * @param publicKeyIn  the InputStream of the signer's public key ring.
+     * @param out          receives the clear text. It is not closed.
+     * @param passPhrase   passphrase of the private key.
+     * @return true if the signature is valid, false if it is not or the signer's key is not in the ring.
+     * @throws IOException  on a problem reading or writing the streams.
+     * @throws PGPException if the message can not be decrypted, is not signed or fails the integrity check.
+     */
+    public static boolean decryptAndVerify(
+            InputStream encrypted,
+            InputStream privateKeyIn,
+            InputStream publicKeyIn,
+            OutputStream out,
+            char[] passPhrase)
+            throws IOException, PGPException {
+        PGPPublicKeyRingCollection pgpRing = new PGPPublicKeyRingCollection(PGPUtil.getDecoderStream(publicKeyIn), new JcaKeyFingerprintCalculator());
+        try (PGPDecryptor decryptor = new PGPDecryptor(privateKeyIn, passPhrase)) {
+            return decryptor.decryptAndVerify(encrypted, pgpRing, out);
+        }
     }
 }
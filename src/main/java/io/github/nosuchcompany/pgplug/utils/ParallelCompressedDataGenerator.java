@@ -0,0 +1,116 @@
+package io.github.nosuchcompany.pgplug.utils;
+
+import io.github.nosuchcompany.pgplug.buffer.BufferPool;
+import org.bouncycastle.bcpg.BCPGOutputStream;
+import org.bouncycastle.bcpg.CompressionAlgorithmTags;
+import org.bouncycastle.bcpg.PacketTags;
+import org.bouncycastle.openpgp.PGPCompressedDataGenerator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.Executor;
+
+/**
+ * Writes a ZIP or ZLIB compressed data packet whose deflate stream is compressed by a
+ * {@link ParallelDeflaterOutputStream}. The packet is framed exactly like the one of
+ * {@link PGPCompressedDataGenerator}, so every OpenPGP implementation reads it.
+ */
+final class ParallelCompressedDataGenerator extends PGPCompressedDataGenerator {
+
+    private final int algorithm;
+
+    private final int level;
+
+    private final Executor executor;
+
+    private final int blockSize;
+
+    private final int parallelism;
+
+    private final BufferPool pool;
+
+    private BCPGOutputStream pkOut;
+
+    private ParallelDeflaterOutputStream dOut;
+
+    /**
+     * @param algorithm   {@link CompressionAlgorithmTags#ZIP} or {@link CompressionAlgorithmTags#ZLIB}.
+     * @param level       the deflate level, or {@link java.util.zip.Deflater#DEFAULT_COMPRESSION}.
+     * @param executor    compresses the blocks.
+     * @param blockSize   the size of the blocks.
+     * @param parallelism how many blocks are compressed at the same time at most.
+     * @param pool        the pool the block buffers are taken from.
+     */
+    ParallelCompressedDataGenerator(int algorithm, int level, Executor executor, int blockSize, int parallelism, BufferPool pool) {
+        super(algorithm, level);
+        if (algorithm != CompressionAlgorithmTags.ZIP && algorithm != CompressionAlgorithmTags.ZLIB) {
+            throw new IllegalArgumentException("only ZIP and ZLIB can be compressed in parallel");
+        }
+        this.algorithm = algorithm;
+        this.level = level;
+        this.executor = executor;
+        this.blockSize = blockSize;
+        this.parallelism = parallelism;
+        this.pool = pool;
+    }
+
+    @Override
+    public OutputStream open(OutputStream out) throws IOException {
+        if (dOut != null) {
+            throw new IllegalStateException("generator already in open state");
+        }
+        return doOpen(new BCPGOutputStream(out, PacketTags.COMPRESSED_DATA));
+    }
+
+    @Override
+    public OutputStream open(OutputStream out, byte[] buffer) throws IOException {
+        if (dOut != null) {
+            throw new IllegalStateException("generator already in open state");
+        }
+        return doOpen(new BCPGOutputStream(out, PacketTags.COMPRESSED_DATA, buffer));
+    }
+
+    private OutputStream doOpen(BCPGOutputStream packetOut) throws IOException {
+        pkOut = packetOut;
+        pkOut.write(algorithm);
+        dOut = new ParallelDeflaterOutputStream(pkOut, level, algorithm == CompressionAlgorithmTags.ZLIB,
+                executor, blockSize, parallelism, pool);
+        return new GeneratorStream();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (dOut != null) {
+            dOut.close();
+            dOut = null;
+            pkOut.finish();
+            pkOut.flush();
+            pkOut = null;
+        }
+    }
+
+    /**
+     * Hands the writes to the deflater and closes the generator when closed.
+     */
+    private final class GeneratorStream extends OutputStream {
+        @Override
+        public void write(int b) throws IOException {
+            dOut.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            dOut.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            dOut.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            ParallelCompressedDataGenerator.this.close();
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package io.github.nosuchcompany.pgplug.utils;
+
+import io.github.nosuchcompany.pgplug.buffer.BufferPool;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.zip.Adler32;
+import java.util.zip.Deflater;
+
+/**
+ * Deflates in the manner of pigz: the data is cut into blocks which are compressed independently on
+ * an executor and written in order as one deflate stream.
+ * Every block is primed with the last 32 KiB of the data before it, so matches reach across block
+ * borders as in a serial stream, and ends with a sync flush, which byte aligns it; the last block
+ * ends the stream. The result is a plain raw deflate (ZIP) or zlib (ZLIB) stream any inflater
+ * reads. The adler-32 checksum of the zlib trailer is computed on the writing thread.
+ * If all data fits into one block it is compressed on the writing thread.
+ * Closing the stream finishes it, but does not close the underlying stream.
+ */
+final class ParallelDeflaterOutputStream extends OutputStream {
+
+    /**
+     * The deflate window, the most data a block can refer back to.
+     */
+    private static final int DICTIONARY_SIZE = 1 << 15;
+
+    private final OutputStream out;
+
+    private final int level;
+
+    private final boolean zlib;
+
+    private final Executor executor;
+
+    private final int blockSize;
+
+    private final int maxPending;
+
+    private final BufferPool pool;
+
+    private final Adler32 adler = new Adler32();
+
+    private final ArrayDeque<CompletableFuture<Block>> pending = new ArrayDeque<CompletableFuture<Block>>();
+
+    private final ConcurrentLinkedQueue<Deflater> deflaters = new ConcurrentLinkedQueue<Deflater>();
+
+    private Block block;
+
+    private boolean submitted;
+
+    private boolean closed;
+
+    /**
+     * @param out         receives the compressed stream.
+     * @param level       the deflate level, or {@link Deflater#DEFAULT_COMPRESSION}.
+     * @param zlib        whether the stream gets the zlib header and trailer, otherwise it is raw deflate.
+     * @param executor    compresses the blocks.
+     * @param blockSize   the size of the blocks.
+     * @param parallelism how many blocks are compressed at the same time at most.
+     * @param pool        the pool the block buffers are taken from.
+     * @throws IOException on a problem writing the zlib header.
+     */
+    ParallelDeflaterOutputStream(OutputStream out, int level, boolean zlib, Executor executor, int blockSize,
+                                 int parallelism, BufferPool pool) throws IOException {
+        this.out = out;
+        this.level = level;
+        this.zlib = zlib;
+        this.executor = executor;
+        this.blockSize = blockSize;
+        this.maxPending = 2 * Math.max(1, parallelism);
+        this.pool = pool;
+        this.block = new Block(null);
+        if (zlib) {
+            out.write(0x78);
+            out.write(zlibFlags(level));
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (closed) {
+            throw new IOException("stream closed");
+        }
+        if (zlib) {
+            adler.update(b, off, len);
+        }
+        while (len > 0) {
+            if (block.len == blockSize) {
+                submit();
+            }
+            int n = Math.min(len, blockSize - block.len);
+            System.arraycopy(b, off, block.data, block.len, n);
+            block.len += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Writes the blocks compressed so far. Data of the block being filled stays buffered.
+     */
+    @Override
+    public void flush() throws IOException {
+        while (!pending.isEmpty() && pending.peekFirst().isDone()) {
+            writeBlock(pending.pollFirst());
+        }
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            Block last = block;
+            block = null;
+            last.last = true;
+            if (submitted) {
+                pending.addLast(CompletableFuture.supplyAsync(() -> compress(last), executor));
+                while (!pending.isEmpty()) {
+                    writeBlock(pending.pollFirst());
+                }
+            } else {
+                writeBlock(CompletableFuture.completedFuture(compress(last)));
+            }
+            if (zlib) {
+                long checksum = adler.getValue();
+                out.write((int) (checksum >>> 24));
+                out.write((int) (checksum >>> 16));
+                out.write((int) (checksum >>> 8));
+                out.write((int) checksum);
+            }
+        } finally {
+            for (CompletableFuture<Block> future : pending) {
+                future.handle((b, e) -> {
+                    if (b != null) {
+                        b.release();
+                    }
+                    return null;
+                }).join();
+            }
+            pending.clear();
+            if (block != null) {
+                block.release();
+            }
+            Deflater deflater;
+            while ((deflater = deflaters.poll()) != null) {
+                deflater.end();
+            }
+        }
+    }
+
+    private void submit() throws IOException {
+        // the next block has to copy its dictionary before the worker may release this one
+        final Block full = block;
+        block = new Block(full);
+        pending.addLast(CompletableFuture.supplyAsync(() -> compress(full), executor));
+        submitted = true;
+        while (pending.size() > maxPending) {
+            writeBlock(pending.pollFirst());
+        }
+    }
+
+    private void writeBlock(CompletableFuture<Block> future) throws IOException {
+        Block done;
+        try {
+            done = future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("block could not be compressed", e.getCause());
+        }
+        try {
+            out.write(done.compressed, 0, done.compressedLen);
+        } finally {
+            done.release();
+        }
+    }
+
+    private Block compress(Block b) {
+        Deflater deflater = deflaters.poll();
+        if (deflater == null) {
+            deflater = new Deflater(level, true);
+        }
+        try {
+            if (b.dictLen > 0) {
+                deflater.setDictionary(b.dict, 0, b.dictLen);
+            }
+            deflater.setInput(b.data, 0, b.len);
+            b.compressed = pool.acquire(b.len + (b.len >> 6) + 64);
+            if (b.last) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    if (b.compressedLen == b.compressed.length) {
+                        b.grow();
+                    }
+                    b.compressedLen += deflater.deflate(b.compressed, b.compressedLen, b.compressed.length - b.compressedLen);
+                }
+            } else {
+                // a sync flush fills the buffer completely if it may have more to write
+                do {
+                    if (b.compressedLen == b.compressed.length) {
+                        b.grow();
+                    }
+                    b.compressedLen += deflater.deflate(b.compressed, b.compressedLen, b.compressed.length - b.compressedLen, Deflater.SYNC_FLUSH);
+                } while (b.compressedLen == b.compressed.length);
+            }
+            deflater.reset();
+            deflaters.offer(deflater);
+            deflater = null;
+            return b;
+        } finally {
+            if (deflater != null) {
+                deflater.end();
+            }
+            b.releaseInput();
+        }
+    }
+
+    private static int zlibFlags(int level) {
+        int flevel;
+        if (level == Deflater.DEFAULT_COMPRESSION || level == 6) {
+            flevel = 2;
+        } else if (level < 2) {
+            flevel = 0;
+        } else if (level < 6) {
+            flevel = 1;
+        } else {
+            flevel = 3;
+        }
+        int flags = flevel << 6;
+        return flags + (31 - (0x78 * 256 + flags) % 31) % 31;
+    }
+
+    /**
+     * One block of data, the end of the data before it and, once compressed, its deflate output.
+     */
+    private final class Block {
+        private byte[] data;
+        private int len;
+        private byte[] dict;
+        private int dictLen;
+        private byte[] compressed;
+        private int compressedLen;
+        private boolean last;
+
+        private Block(Block previous) {
+            data = pool.acquire(blockSize);
+            if (previous == null) {
+                return;
+            }
+            dict = pool.acquire(DICTIONARY_SIZE);
+            int fromData = Math.min(previous.len, DICTIONARY_SIZE);
+            int fromDict = Math.min(previous.dictLen, DICTIONARY_SIZE - fromData);
+            if (fromDict > 0) {
+                System.arraycopy(previous.dict, previous.dictLen - fromDict, dict, 0, fromDict);
+            }
+            System.arraycopy(previous.data, previous.len - fromData, dict, fromDict, fromData);
+            dictLen = fromDict + fromData;
+        }
+
+        private void grow() {
+            byte[] larger = pool.acquire(2 * compressed.length);
+            System.arraycopy(compressed, 0, larger, 0, compressedLen);
+            pool.release(compressed);
+            compressed = larger;
+        }
+
+        private void releaseInput() {
+            pool.release(data);
+            pool.release(dict);
+            data = null;
+            dict = null;
+        }
+
+        private void release() {
+            releaseInput();
+            pool.release(compressed);
+            compressed = null;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package io.github.nosuchcompany.pgplug.utils;
+
+import org.bouncycastle.bcpg.ContainedPacket;
+import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.openpgp.operator.PGPKeyEncryptionMethodGenerator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Wraps the session key of a message for many recipients in parallel.
+ * {@link org.bouncycastle.openpgp.PGPEncryptedDataGenerator} asks its methods for their packets one
+ * after another; the methods of {@link #forMessage()} answer the first request by encrypting the
+ * session key to every recipient at once, in batches on the executor, and hand out the results in
+ * the order of the recipients. The recipient method generators are prepared once and reused for
+ * every message; the packets themselves can not be, since every message has its own session key.
+ */
+final class ParallelKeyWrap {
+
+    private final List<PGPKeyEncryptionMethodGenerator> methods;
+
+    private final Executor executor;
+
+    private final int batchSize;
+
+    /**
+     * @param methods  the method generators of the recipients, safe to be used by several threads.
+     * @param executor runs the batches.
+     * @param batches  into how many batches the recipients are split.
+     */
+    ParallelKeyWrap(List<PGPKeyEncryptionMethodGenerator> methods, Executor executor, int batches) {
+        this.methods = methods;
+        this.executor = executor;
+        this.batchSize = Math.max(1, (methods.size() + batches - 1) / batches);
+    }
+
+    /**
+     * @return the method generators to add to the generator of one message.
+     */
+    List<PGPKeyEncryptionMethodGenerator> forMessage() {
+        Batch batch = new Batch();
+        List<PGPKeyEncryptionMethodGenerator> slots = new ArrayList<PGPKeyEncryptionMethodGenerator>(methods.size());
+        for (int i = 0; i < methods.size(); i++) {
+            slots.add(new Slot(batch, i));
+        }
+        return slots;
+    }
+
+    private ContainedPacket[] wrapAll(final int encAlgorithm, final byte[] sessionInfo) throws PGPException {
+        final ContainedPacket[] packets = new ContainedPacket[methods.size()];
+        List<CompletableFuture<Void>> futures = new ArrayList<CompletableFuture<Void>>();
+        for (int start = 0; start < packets.length; start += batchSize) {
+            final int from = start;
+            final int to = Math.min(packets.length, start + batchSize);
+            futures.add(CompletableFuture.runAsync(() -> {
+                for (int i = from; i < to; i++) {
+                    try {
+                        packets[i] = methods.get(i).generate(encAlgorithm, sessionInfo);
+                    } catch (PGPException e) {
+                        throw new CompletionException(e);
+                    }
+                }
+            }, executor));
+        }
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof PGPException) {
+                throw (PGPException) e.getCause();
+            }
+            throw new PGPException("session key could not be encrypted", e.getCause() instanceof Exception ? (Exception) e.getCause() : e);
+        }
+        return packets;
+    }
+
+    /**
+     * The packets of one message, computed on the first request.
+     */
+    private final class Batch {
+        private ContainedPacket[] packets;
+
+        private ContainedPacket get(int index, int encAlgorithm, byte[] sessionInfo) throws PGPException {
+            if (packets == null) {
+                packets = wrapAll(encAlgorithm, sessionInfo);
+            }
+            return packets[index];
+        }
+    }
+
+    private static final class Slot extends PGPKeyEncryptionMethodGenerator {
+        private final Batch batch;
+        private final int index;
+
+        private Slot(Batch batch, int index) {
+            this.batch = batch;
+            this.index = index;
+        }
+
+        @Override
+        public ContainedPacket generate(int encAlgorithm, byte[] sessionInfo) throws PGPException {
+            return batch.get(index, encAlgorithm, sessionInfo);
+        }
+    }
+}
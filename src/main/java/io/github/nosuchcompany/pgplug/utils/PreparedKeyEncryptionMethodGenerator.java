@@ -0,0 +1,254 @@
+package io.github.nosuchcompany.pgplug.utils;
+
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.x509.SubjectPublicKeyInfo;
+import org.bouncycastle.asn1.x9.ECNamedCurveTable;
+import org.bouncycastle.asn1.x9.X962Parameters;
+import org.bouncycastle.asn1.x9.X9ECParameters;
+import org.bouncycastle.asn1.x9.X9ECPoint;
+import org.bouncycastle.bcpg.ECDHPublicBCPGKey;
+import org.bouncycastle.bcpg.MPInteger;
+import org.bouncycastle.bcpg.PublicKeyAlgorithmTags;
+import org.bouncycastle.bcpg.SymmetricKeyAlgorithmTags;
+import org.bouncycastle.jcajce.spec.UserKeyingMaterialSpec;
+import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.openpgp.PGPPublicKey;
+import org.bouncycastle.openpgp.PGPUtil;
+import org.bouncycastle.openpgp.operator.PGPKeyEncryptionMethodGenerator;
+import org.bouncycastle.openpgp.operator.PGPPad;
+import org.bouncycastle.openpgp.operator.PublicKeyKeyEncryptionMethodGenerator;
+import org.bouncycastle.openpgp.operator.RFC6637Utils;
+import org.bouncycastle.openpgp.operator.jcajce.JcaKeyFingerprintCalculator;
+import org.bouncycastle.openpgp.operator.jcajce.JcaPGPKeyConverter;
+import org.bouncycastle.openpgp.operator.jcajce.JcePublicKeyKeyEncryptionMethodGenerator;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyAgreement;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.*;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Encrypts session keys to one recipient, like {@link JcePublicKeyKeyEncryptionMethodGenerator},
+ * but prepares what does not depend on the message once: the converted recipient key, the ECDH
+ * parameters, initialized RSA and ElGamal ciphers, and per curve the ephemeral key generators,
+ * which keep their precomputed multiples of the base point. The packets are the same; padding and
+ * ECDH ephemeral keys are still fresh for every message.
+ * Instances are safe to be used by several threads.
+ */
+final class PreparedKeyEncryptionMethodGenerator extends PublicKeyKeyEncryptionMethodGenerator {
+
+    private final Provider provider;
+
+    private final SecureRandom random;
+
+    private final PublicKey recipientKey;
+
+    private final String cipherName;
+
+    /**
+     * Initialized ciphers, one per thread using this recipient at the same time, for RSA and ElGamal.
+     */
+    private final ConcurrentLinkedQueue<Cipher> ciphers = new ConcurrentLinkedQueue<Cipher>();
+
+    /**
+     * The ECDH parameters, null for RSA and ElGamal.
+     */
+    private final Ecdh ecdh;
+
+    private PreparedKeyEncryptionMethodGenerator(PGPPublicKey key, Provider provider, SecureRandom random,
+                                                 String cipherName, Ecdh ecdh) throws PGPException {
+        super(key);
+        this.provider = provider;
+        this.random = random;
+        this.recipientKey = new JcaPGPKeyConverter().setProvider(provider).getPublicKey(key);
+        this.cipherName = cipherName;
+        this.ecdh = ecdh;
+    }
+
+    /**
+     * @param keys     the recipients' encryption keys.
+     * @param provider the provider of the public key operations.
+     * @param random   the random source for padding and ephemeral keys.
+     * @return one generator per key, in the same order; the plain one for keys that can not be prepared.
+     */
+    static List<PGPKeyEncryptionMethodGenerator> prepare(Collection<PGPPublicKey> keys, Provider provider, SecureRandom random) {
+        Map<ASN1ObjectIdentifier, EphemeralKeys> curves = new HashMap<ASN1ObjectIdentifier, EphemeralKeys>();
+        List<PGPKeyEncryptionMethodGenerator> methods = new ArrayList<PGPKeyEncryptionMethodGenerator>(keys.size());
+        for (PGPPublicKey key : keys) {
+            methods.add(prepare(key, provider, random, curves));
+        }
+        return methods;
+    }
+
+    private static PGPKeyEncryptionMethodGenerator prepare(PGPPublicKey key, Provider provider, SecureRandom random,
+                                                           Map<ASN1ObjectIdentifier, EphemeralKeys> curves) {
+        try {
+            switch (key.getAlgorithm()) {
+                case PublicKeyAlgorithmTags.RSA_GENERAL:
+                case PublicKeyAlgorithmTags.RSA_ENCRYPT:
+                    return new PreparedKeyEncryptionMethodGenerator(key, provider, random, "RSA/ECB/PKCS1Padding", null);
+                case PublicKeyAlgorithmTags.ELGAMAL_ENCRYPT:
+                case PublicKeyAlgorithmTags.ELGAMAL_GENERAL:
+                    return new PreparedKeyEncryptionMethodGenerator(key, provider, random, "ElGamal/ECB/PKCS1Padding", null);
+                case PublicKeyAlgorithmTags.ECDH:
+                    Ecdh ecdh = Ecdh.of(key, provider, random, curves);
+                    if (ecdh != null) {
+                        return new PreparedKeyEncryptionMethodGenerator(key, provider, random, ecdh.wrapAlgorithm, ecdh);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        } catch (PGPException e) {
+            // the plain generator reports the problem when a message is encrypted
+        }
+        return new JcePublicKeyKeyEncryptionMethodGenerator(key).setProvider(provider).setSecureRandom(random);
+    }
+
+    @Override
+    protected byte[] encryptSessionInfo(PGPPublicKey pubKey, byte[] sessionInfo) throws PGPException {
+        try {
+            if (ecdh != null) {
+                return ecdh.wrap(sessionInfo, recipientKey, provider, random);
+            }
+            // a cipher returns to its initialized state after doFinal, the padding is random every time
+            Cipher c = ciphers.poll();
+            if (c == null) {
+                c = Cipher.getInstance(cipherName, provider);
+                c.init(Cipher.ENCRYPT_MODE, recipientKey, random);
+            }
+            byte[] encrypted = c.doFinal(sessionInfo);
+            ciphers.offer(c);
+            return encrypted;
+        } catch (GeneralSecurityException | IOException e) {
+            throw new PGPException("exception encrypting session info: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * What the RFC 6637 key wrap of one recipient needs, derived once.
+     */
+    private static final class Ecdh {
+        private final X9ECParameters curve;
+        private final EphemeralKeys ephemeralKeys;
+        private final String agreementAlgorithm;
+        private final UserKeyingMaterialSpec userKeyingMaterial;
+        private final String keyEncryptionOid;
+        private final String wrapAlgorithm;
+
+        private Ecdh(X9ECParameters curve, EphemeralKeys ephemeralKeys, String agreementAlgorithm,
+                     UserKeyingMaterialSpec userKeyingMaterial, String keyEncryptionOid, String wrapAlgorithm) {
+            this.curve = curve;
+            this.ephemeralKeys = ephemeralKeys;
+            this.agreementAlgorithm = agreementAlgorithm;
+            this.userKeyingMaterial = userKeyingMaterial;
+            this.keyEncryptionOid = keyEncryptionOid;
+            this.wrapAlgorithm = wrapAlgorithm;
+        }
+
+        private byte[] wrap(byte[] sessionInfo, PublicKey recipientKey, Provider provider, SecureRandom random)
+                throws GeneralSecurityException, IOException {
+            KeyPair ephemeral = ephemeralKeys.generate();
+
+            KeyAgreement agreement = KeyAgreement.getInstance(agreementAlgorithm, provider);
+            agreement.init(ephemeral.getPrivate(), userKeyingMaterial);
+            agreement.doPhase(recipientKey, true);
+            SecretKey kek = agreement.generateSecret(keyEncryptionOid);
+
+            Cipher c = Cipher.getInstance(wrapAlgorithm, provider);
+            c.init(Cipher.WRAP_MODE, kek, random);
+            byte[] wrapped = c.wrap(new SecretKeySpec(PGPPad.padSessionData(sessionInfo), PGPUtil.getSymmetricCipherName(sessionInfo[0])));
+
+            SubjectPublicKeyInfo info = SubjectPublicKeyInfo.getInstance(ephemeral.getPublic().getEncoded());
+            byte[] point = new X9ECPoint(curve.getCurve(), info.getPublicKeyData().getBytes()).getPoint().getEncoded(false);
+            byte[] mpi = new MPInteger(new BigInteger(1, point)).getEncoded();
+
+            byte[] out = new byte[mpi.length + 1 + wrapped.length];
+            System.arraycopy(mpi, 0, out, 0, mpi.length);
+            out[mpi.length] = (byte) wrapped.length;
+            System.arraycopy(wrapped, 0, out, mpi.length + 1, wrapped.length);
+            return out;
+        }
+
+        /**
+         * @return the parameters, or null if the curve or key wrap algorithm is not known here.
+         */
+        private static Ecdh of(PGPPublicKey key, Provider provider, SecureRandom random,
+                               Map<ASN1ObjectIdentifier, EphemeralKeys> curves) throws PGPException {
+            ECDHPublicBCPGKey ecKey = (ECDHPublicBCPGKey) key.getPublicKeyPacket().getKey();
+            ASN1ObjectIdentifier oid = ecKey.getCurveOID();
+            X9ECParameters curve = ECNamedCurveTable.getByOID(oid);
+            String wrapAlgorithm = wrapAlgorithm(ecKey.getSymmetricKeyAlgorithm());
+            if (curve == null || wrapAlgorithm == null) {
+                return null;
+            }
+            try {
+                EphemeralKeys ephemeralKeys = curves.get(oid);
+                if (ephemeralKeys == null) {
+                    AlgorithmParameters params = AlgorithmParameters.getInstance("EC", provider);
+                    params.init(new X962Parameters(oid).getEncoded());
+                    ephemeralKeys = new EphemeralKeys(params.getParameterSpec(AlgorithmParameterSpec.class), provider, random);
+                    curves.put(oid, ephemeralKeys);
+                }
+                return new Ecdh(curve,
+                        ephemeralKeys,
+                        RFC6637Utils.getAgreementAlgorithm(key.getPublicKeyPacket()),
+                        new UserKeyingMaterialSpec(RFC6637Utils.createUserKeyingMaterial(key.getPublicKeyPacket(), new JcaKeyFingerprintCalculator())),
+                        RFC6637Utils.getKeyEncryptionOID(ecKey.getSymmetricKeyAlgorithm()).getId(),
+                        wrapAlgorithm);
+            } catch (GeneralSecurityException | IOException e) {
+                throw new PGPException("cannot prepare ECDH key: " + e.getMessage(), e);
+            }
+        }
+
+        private static String wrapAlgorithm(int symmetricAlgorithm) {
+            switch (symmetricAlgorithm) {
+                case SymmetricKeyAlgorithmTags.AES_128:
+                case SymmetricKeyAlgorithmTags.AES_192:
+                case SymmetricKeyAlgorithmTags.AES_256:
+                    return "AESWrap";
+                case SymmetricKeyAlgorithmTags.CAMELLIA_128:
+                case SymmetricKeyAlgorithmTags.CAMELLIA_192:
+                case SymmetricKeyAlgorithmTags.CAMELLIA_256:
+                    return "CamelliaWrap";
+                default:
+                    return null;
+            }
+        }
+    }
+
+    /**
+     * Generates ephemeral key pairs on one curve. The generators are initialized once and reused,
+     * one per thread generating at the same time, so the precomputation for the curve's base point
+     * is done once and not for every key.
+     */
+    private static final class EphemeralKeys {
+        private final AlgorithmParameterSpec curveSpec;
+        private final Provider provider;
+        private final SecureRandom random;
+        private final ConcurrentLinkedQueue<KeyPairGenerator> generators = new ConcurrentLinkedQueue<KeyPairGenerator>();
+
+        private EphemeralKeys(AlgorithmParameterSpec curveSpec, Provider provider, SecureRandom random) {
+            this.curveSpec = curveSpec;
+            this.provider = provider;
+            this.random = random;
+        }
+
+        private KeyPair generate() throws GeneralSecurityException {
+            KeyPairGenerator kpGen = generators.poll();
+            if (kpGen == null) {
+                kpGen = KeyPairGenerator.getInstance("EC", provider);
+                kpGen.initialize(curveSpec, random);
+            }
+            KeyPair keyPair = kpGen.generateKeyPair();
+            generators.offer(kpGen);
+            return keyPair;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package io.github.nosuchcompany.pgplug.async;
+
+import io.github.nosuchcompany.pgplug.keyPair.KeyPairPGP;
+import io.github.nosuchcompany.pgplug.utils.KeyAlgorithm;
+import io.github.nosuchcompany.pgplug.utils.PGPDecryptor;
+import io.github.nosuchcompany.pgplug.utils.PGPEncryptor;
+import io.github.nosuchcompany.pgplug.utils.PGPUtils;
+import org.bouncycastle.openpgp.PGPPublicKeyRingCollection;
+import org.bouncycastle.openpgp.PGPUtil;
+import org.bouncycastle.openpgp.operator.jcajce.JcaKeyFingerprintCalculator;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AsyncPGPTest {
+
+    private static final byte[] clearData = "1234567890".getBytes();
+    private static final char[] pass = "1234567890".toCharArray();
+
+    @Test
+    void test_asyncHappyPath() throws Exception {
+        try (AsyncPGP async = new AsyncPGP()) {
+            KeyPairPGP keyPair = async.generateKeyPair(pass, KeyAlgorithm.ECC_P256).get();
+            PGPEncryptor encryptor = new PGPEncryptor.Builder(Collections.singleton(keyPair.getPGPPublicKey())).build();
+            PGPDecryptor decryptor = new PGPDecryptor(keyPair.getPrivateKey(), pass);
+
+            byte[] decrypted = async.encrypt(encryptor, clearData)
+                    .thenCompose(encrypted -> async.decrypt(decryptor, encrypted))
+                    .get(30, TimeUnit.SECONDS);
+            assertArrayEquals(clearData, decrypted);
+
+            PGPPublicKeyRingCollection pgpRing = new PGPPublicKeyRingCollection(
+                    PGPUtil.getDecoderStream(new ByteArrayInputStream(keyPair.getPublicKey())), new JcaKeyFingerprintCalculator());
+            ByteArrayOutputStream sigOut = new ByteArrayOutputStream();
+            async.signDetached(new ByteArrayInputStream(clearData),
+                    PGPUtils.readSecretKey(new ByteArrayInputStream(keyPair.getPrivateKey())), sigOut, pass, true).get();
+            assertTrue(async.verifyDetached(new ByteArrayInputStream(clearData),
+                    new ByteArrayInputStream(sigOut.toByteArray()), pgpRing).get());
+        }
+    }
+
+    @Test
+    void test_shouldPassFailures() throws Exception {
+        try (AsyncPGP async = new AsyncPGP(1, 1)) {
+            PGPDecryptor decryptor = new PGPDecryptor(new KeyPairPGP(pass).getPrivateKey(), pass);
+            byte[] encrypted = PGPUtils.encrypt(clearData, new KeyPairPGP(pass).getPublicKey());
+
+            ExecutionException e = assertThrows(ExecutionException.class, () -> async.decrypt(decryptor, encrypted).get());
+            assertTrue(e.getCause() instanceof IllegalArgumentException);
+            assertEquals(0, async.inFlight());
+        }
+    }
+
+    @Test
+    void test_shouldRejectBeyondInFlightLimitAndCancel() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        CountDownLatch release = new CountDownLatch(1);
+        executor.execute(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        try (AsyncPGP async = new AsyncPGP(executor, 2)) {
+            CompletableFuture<KeyPairPGP> first = async.generateKeyPair(pass, KeyAlgorithm.ECC_P256);
+            CompletableFuture<KeyPairPGP> second = async.generateKeyPair(pass, KeyAlgorithm.ECC_P256);
+            CompletableFuture<KeyPairPGP> third = async.generateKeyPair(pass, KeyAlgorithm.ECC_P256);
+
+            assertEquals(2, async.inFlight());
+            ExecutionException e = assertThrows(ExecutionException.class, third::get);
+            assertTrue(e.getCause() instanceof RejectedExecutionException);
+
+            assertTrue(second.cancel(true));
+            assertTrue(second.isCancelled());
+            assertEquals(1, async.inFlight());
+
+            release.countDown();
+            assertNotNull(first.get(30, TimeUnit.SECONDS));
+            assertEquals(0, async.inFlight());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void test_cancelledRunningOperationShouldKeepItsSlot() throws Exception {
+        try (AsyncPGP async = new AsyncPGP(2, 1)) {
+            PGPEncryptor encryptor = new PGPEncryptor.Builder(Collections.singleton(new KeyPairPGP(pass).getPGPPublicKey())).build();
+            CountDownLatch started = new CountDownLatch(1);
+            CountDownLatch proceed = new CountDownLatch(1);
+            InputStream stubborn = new InputStream() {
+                @Override
+                public int read() {
+                    started.countDown();
+                    // like the crypto, it does not stop on an interrupt
+                    while (true) {
+                        try {
+                            proceed.await();
+                            return -1;
+                        } catch (InterruptedException e) {
+                            // keep running
+                        }
+                    }
+                }
+            };
+            CompletableFuture<Void> running = async.encrypt(encryptor, new ByteArrayOutputStream(), stubborn);
+            assertTrue(started.await(30, TimeUnit.SECONDS));
+
+            assertTrue(running.cancel(true));
+            assertEquals(1, async.inFlight());
+            ExecutionException e = assertThrows(ExecutionException.class, () -> async.encrypt(encryptor, clearData).get());
+            assertTrue(e.getCause() instanceof RejectedExecutionException);
+
+            proceed.countDown();
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+            while (async.inFlight() > 0 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(0, async.inFlight());
+            assertNotNull(async.encrypt(encryptor, clearData).get(30, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    void test_virtualThreads() throws Exception {
+        if (!AsyncPGP.isVirtualThreadsSupported()) {
+            assertThrows(UnsupportedOperationException.class, () -> AsyncPGP.withVirtualThreads(4));
+            return;
+        }
+        try (AsyncPGP async = AsyncPGP.withVirtualThreads(4)) {
+            KeyPairPGP keyPair = new KeyPairPGP(pass);
+            byte[] encrypted = async.encrypt(clearData, Collections.singleton(keyPair.getPGPPublicKey())).get();
+            assertArrayEquals(clearData, new PGPDecryptor(keyPair.getPrivateKey(), pass).decrypt(encrypted));
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package io.github.nosuchcompany.pgplug.buffer;
+
+import io.github.nosuchcompany.pgplug.keyPair.KeyPairPGP;
+import io.github.nosuchcompany.pgplug.utils.KeyAlgorithm;
+import io.github.nosuchcompany.pgplug.utils.PGPDecryptor;
+import io.github.nosuchcompany.pgplug.utils.PGPEncryptor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BufferPoolTest {
+
+    private static final char[] pass = "1234567890".toCharArray();
+
+    private final BufferPool defaultPool = BufferPool.getDefault();
+
+    @AfterEach
+    void tearDown() {
+        BufferPool.setDefault(defaultPool);
+    }
+
+    @Test
+    void test_shouldReuseWipedBuffers() {
+        BufferPool pool = new BufferPool(1 << 20, false);
+        byte[] first = pool.acquire(5000);
+        assertEquals(8192, first.length);
+        first[0] = 42;
+        pool.release(first);
+
+        byte[] second = pool.acquire(8000);
+        assertSame(first, second);
+        assertEquals(0, second[0]);
+
+        PoolStats stats = pool.stats();
+        assertEquals(2, stats.getAcquireCount());
+        assertEquals(1, stats.getReuseCount());
+        assertEquals(1, stats.getAllocationCount());
+        assertEquals(0, stats.getRetainedBytes());
+    }
+
+    @Test
+    void test_shouldCapRetainedMemory() {
+        BufferPool pool = new BufferPool(1 << 17, false);
+        byte[] a = pool.acquire(1 << 16);
+        byte[] b = pool.acquire(1 << 16);
+        byte[] c = pool.acquire(1 << 16);
+        pool.release(a);
+        pool.release(b);
+        pool.release(c);
+        pool.release(new byte[1000]);
+
+        PoolStats stats = pool.stats();
+        assertEquals(1 << 17, stats.getRetainedBytes());
+        assertEquals(2, stats.getDropCount());
+
+        pool.clear();
+        assertEquals(0, pool.stats().getRetainedBytes());
+    }
+
+    @Test
+    void test_shouldPoolDirectBuffers() {
+        BufferPool pool = new BufferPool(1 << 20, true);
+        ByteBuffer buffer = pool.acquireBuffer(100);
+        assertTrue(buffer.isDirect());
+        buffer.put((byte) 7);
+        pool.releaseBuffer(buffer);
+
+        ByteBuffer again = pool.acquireDirect(4096);
+        assertSame(buffer, again);
+        assertEquals(0, again.position());
+        assertEquals(0, again.get(0));
+    }
+
+    @Test
+    void test_shouldCollectOutputInPooledChunks() throws Exception {
+        BufferPool pool = new BufferPool(1 << 20, false);
+        byte[] data = new byte[200_000];
+        new Random(1).nextBytes(data);
+
+        try (PooledOutputStream out = new PooledOutputStream(pool)) {
+            out.write(data, 0, 1000);
+            out.write(data[1000]);
+            out.write(data, 1001, data.length - 1001);
+            assertEquals(data.length, out.size());
+            assertArrayEquals(data, out.toByteArray());
+
+            ByteArrayOutputStream copy = new ByteArrayOutputStream();
+            out.writeTo(copy);
+            assertArrayEquals(data, copy.toByteArray());
+        }
+        assertEquals(4 << 16, pool.stats().getRetainedBytes());
+    }
+
+    @Test
+    void test_shouldReuseBuffersAcrossMessages() throws Exception {
+        BufferPool pool = new BufferPool(BufferPool.DEFAULT_MAX_RETAINED_BYTES, false);
+        BufferPool.setDefault(pool);
+        KeyPairPGP keyPair = new KeyPairPGP(pass, KeyAlgorithm.ECC_P256);
+        PGPEncryptor encryptor = new PGPEncryptor.Builder(Collections.singleton(keyPair.getPGPPublicKey()))
+                .build();
+        byte[] clear = "pooled message".getBytes(StandardCharsets.UTF_8);
+
+        try (PGPDecryptor decryptor = new PGPDecryptor(keyPair.getPrivateKey(), pass)) {
+            assertArrayEquals(clear, decryptor.decrypt(encryptor.encrypt(clear)));
+            long allocated = pool.stats().getAllocationCount();
+            for (int i = 0; i < 10; i++) {
+                assertArrayEquals(clear, decryptor.decrypt(encryptor.encrypt(clear)));
+            }
+            assertEquals(allocated, pool.stats().getAllocationCount());
+            assertTrue(pool.stats().getReuseCount() > 0);
+        }
+    }
+}
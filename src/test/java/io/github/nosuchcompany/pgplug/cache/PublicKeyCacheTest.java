@@ -0,0 +1,58 @@
+package io.github.nosuchcompany.pgplug.cache;
+
+import io.github.nosuchcompany.pgplug.keyPair.KeyPairPGP;
+import org.bouncycastle.openpgp.PGPPublicKey;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PublicKeyCacheTest {
+
+    private static final char[] pass = "1234567890".toCharArray();
+
+    @Test
+    void test_shouldHitOnSameBytes() {
+        KeyPairPGP keyPair = new KeyPairPGP(pass);
+        PublicKeyCache cache = new PublicKeyCache(4);
+
+        PGPPublicKey first = cache.get(keyPair.getPublicKey());
+        PGPPublicKey second = cache.get(keyPair.getPublicKey().clone());
+
+        assertSame(first, second);
+        assertEquals(1, cache.stats().getHitCount());
+        assertEquals(1, cache.stats().getMissCount());
+    }
+
+    @Test
+    void test_shouldEvictLeastRecentlyUsed() {
+        KeyPairPGP keyPair1 = new KeyPairPGP(pass);
+        KeyPairPGP keyPair2 = new KeyPairPGP(pass);
+        KeyPairPGP keyPair3 = new KeyPairPGP(pass);
+        PublicKeyCache cache = new PublicKeyCache(2);
+
+        cache.get(keyPair1.getPublicKey());
+        cache.get(keyPair2.getPublicKey());
+        cache.get(keyPair1.getPublicKey());
+        cache.get(keyPair3.getPublicKey());
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.stats().getEvictionCount());
+        cache.get(keyPair1.getPublicKey());
+        assertEquals(2, cache.stats().getHitCount());
+    }
+
+    @Test
+    void test_shouldInvalidate() {
+        KeyPairPGP keyPair = new KeyPairPGP(pass);
+        PublicKeyCache cache = new PublicKeyCache();
+
+        PGPPublicKey key = cache.get(keyPair.getPublicKey());
+        cache.invalidate(key);
+        assertEquals(0, cache.size());
+
+        cache.get(keyPair.getPublicKey());
+        cache.invalidate(keyPair.getPublicKey());
+        assertEquals(0, cache.size());
+        assertEquals(2, cache.stats().getMissCount());
+    }
+}
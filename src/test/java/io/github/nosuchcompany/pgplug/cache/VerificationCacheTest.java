@@ -0,0 +1,131 @@
+package io.github.nosuchcompany.pgplug.cache;
+
+import io.github.nosuchcompany.pgplug.keyPair.KeyPairPGP;
+import io.github.nosuchcompany.pgplug.sign.SignedFileProcessor;
+import io.github.nosuchcompany.pgplug.utils.Compression;
+import io.github.nosuchcompany.pgplug.utils.KeyAlgorithm;
+import io.github.nosuchcompany.pgplug.utils.PGPUtils;
+import org.bouncycastle.openpgp.PGPPublicKeyRingCollection;
+import org.bouncycastle.openpgp.PGPUtil;
+import org.bouncycastle.openpgp.operator.jcajce.JcaKeyFingerprintCalculator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VerificationCacheTest {
+
+    private static final char[] pass = "1234567890".toCharArray();
+
+    private KeyPairPGP keyPair;
+    private PGPPublicKeyRingCollection pgpRing;
+    private Path data;
+    private Path signed;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        keyPair = new KeyPairPGP(pass, KeyAlgorithm.ECC_P256);
+        pgpRing = ring(keyPair);
+        data = Files.createTempFile("pgplug", ".data");
+        signed = Files.createTempFile("pgplug", ".signed");
+        Files.write(data, "cached content".getBytes(StandardCharsets.UTF_8));
+        try (FileOutputStream out = new FileOutputStream(signed.toFile())) {
+            SignedFileProcessor.signFile(data.toString(),
+                    PGPUtils.readSecretKey(new ByteArrayInputStream(keyPair.getPrivateKey())), out, pass, true);
+        }
+    }
+
+    @AfterEach
+    void cleanUp() throws Exception {
+        Files.deleteIfExists(data);
+        Files.deleteIfExists(signed);
+    }
+
+    @Test
+    void test_shouldHitOnRepeatedVerification() throws Exception {
+        VerificationCache cache = new VerificationCache();
+
+        assertTrue(cache.verifyFile(signed, pgpRing));
+        assertTrue(cache.verifyFile(signed, pgpRing));
+        assertTrue(cache.verifyFile(Files.readAllBytes(signed), pgpRing));
+
+        assertEquals(2, cache.stats().getHitCount());
+        assertEquals(1, cache.stats().getMissCount());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void test_shouldCacheOnlyWhatWasVerified() throws Exception {
+        VerificationCache cache = new VerificationCache();
+        assertTrue(cache.verifyFile(signed, pgpRing));
+
+        // a signed file whose payload changed has the same signer, but neither hits nor gets cached
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        SignedFileProcessor.signFile(data.toString(),
+                PGPUtils.readSecretKey(new ByteArrayInputStream(keyPair.getPrivateKey())), out, pass, false, Compression.NONE);
+        byte[] tampered = out.toByteArray();
+        String payload = new String(tampered, StandardCharsets.ISO_8859_1);
+        tampered[payload.indexOf("cached content")] ^= 1;
+        assertFalse(cache.verifyFile(tampered, pgpRing));
+        assertFalse(cache.verifyFile(tampered, pgpRing));
+        assertEquals(0, cache.stats().getHitCount());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void test_shouldNotHitForOtherKeyRing() throws Exception {
+        VerificationCache cache = new VerificationCache();
+        assertTrue(cache.verifyFile(signed, pgpRing));
+
+        PGPPublicKeyRingCollection otherRing = ring(new KeyPairPGP(pass, KeyAlgorithm.ECC_P256));
+        assertFalse(cache.verifyFile(signed, otherRing));
+        assertEquals(0, cache.stats().getHitCount());
+
+        cache.retainAll(otherRing);
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void test_shouldExpireAndInvalidate() throws Exception {
+        VerificationCache cache = new VerificationCache(10, 1, TimeUnit.NANOSECONDS);
+        assertTrue(cache.verifyFile(signed, pgpRing));
+        assertTrue(cache.verifyFile(signed, pgpRing));
+        assertEquals(0, cache.stats().getHitCount());
+        assertEquals(1, cache.stats().getEvictionCount());
+
+        cache = new VerificationCache();
+        assertTrue(cache.verifyFile(signed, pgpRing));
+        cache.invalidate(pgpRing.getKeyRings().next().getPublicKey());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void test_shouldCacheDetachedSignatures() throws Exception {
+        ByteArrayOutputStream sigOut = new ByteArrayOutputStream();
+        SignedFileProcessor.signDetached(Files.newInputStream(data),
+                PGPUtils.readSecretKey(new ByteArrayInputStream(keyPair.getPrivateKey())), sigOut, pass, false);
+        VerificationCache cache = new VerificationCache();
+
+        assertTrue(cache.verifyDetached(data, sigOut.toByteArray(), pgpRing));
+        assertTrue(cache.verifyDetached(data, sigOut.toByteArray(), pgpRing));
+        assertEquals(1, cache.stats().getHitCount());
+
+        Files.write(data, "changed content".getBytes(StandardCharsets.UTF_8));
+        assertFalse(cache.verifyDetached(data, sigOut.toByteArray(), pgpRing));
+        assertEquals(1, cache.stats().getHitCount());
+    }
+
+    private static PGPPublicKeyRingCollection ring(KeyPairPGP keyPair) throws Exception {
+        return new PGPPublicKeyRingCollection(PGPUtil.getDecoderStream(new ByteArrayInputStream(keyPair.getPublicKey())),
+                new JcaKeyFingerprintCalculator());
+    }
+}
@@ -0,0 +1,122 @@
+package io.github.nosuchcompany.pgplug.container;
+
+import io.github.nosuchcompany.pgplug.keyPair.KeyPairPGP;
+import io.github.nosuchcompany.pgplug.utils.Compression;
+import io.github.nosuchcompany.pgplug.utils.PGPDecryptor;
+import org.bouncycastle.openpgp.PGPDataValidationException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChunkedContainerTest {
+
+    private static final char[] pass = "1234567890".toCharArray();
+    private static final int CHUNK_SIZE = 1000;
+
+    private KeyPairPGP keyPair;
+    private PGPDecryptor decryptor;
+    private Path container;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        keyPair = new KeyPairPGP(pass);
+        decryptor = new PGPDecryptor(keyPair.getPrivateKey(), pass);
+        container = Files.createTempFile("pgplug", ".container");
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        decryptor.close();
+        Files.delete(container);
+    }
+
+    @Test
+    void test_shouldDecryptWholeContainer() throws Exception {
+        for (int size : new int[]{0, 1, CHUNK_SIZE, 3 * CHUNK_SIZE, 10 * CHUNK_SIZE + 500}) {
+            byte[] clearData = randomData(size);
+            write(clearData, Compression.NONE);
+
+            try (ChunkedDecryptor reader = new ChunkedDecryptor(container, decryptor)) {
+                assertEquals(size, reader.size());
+                assertEquals(Math.max(1, (size + CHUNK_SIZE - 1) / CHUNK_SIZE), reader.getChunkCount());
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                reader.decrypt(out);
+                assertArrayEquals(clearData, out.toByteArray());
+            }
+        }
+    }
+
+    @Test
+    void test_shouldReadRanges() throws Exception {
+        byte[] clearData = randomData(10 * CHUNK_SIZE + 500);
+        write(clearData, Compression.ZIP);
+
+        try (ChunkedDecryptor reader = new ChunkedDecryptor(container, decryptor)) {
+            assertArrayEquals(Arrays.copyOfRange(clearData, 0, 10), reader.read(0, 10));
+            assertArrayEquals(Arrays.copyOfRange(clearData, 999, 1001), reader.read(999, 2));
+            assertArrayEquals(Arrays.copyOfRange(clearData, 2500, 7700), reader.read(2500, 5200));
+            assertArrayEquals(Arrays.copyOfRange(clearData, 10400, 10500), reader.read(10400, 100));
+            assertEquals(0, reader.read(10500, 0).length);
+            assertThrows(IndexOutOfBoundsException.class, () -> reader.read(10400, 101));
+        }
+    }
+
+    @Test
+    void test_shouldDetectSwappedChunks() throws Exception {
+        write(randomData(3 * CHUNK_SIZE), Compression.NONE);
+        ChunkIndex index;
+        try (FileChannel channel = FileChannel.open(container)) {
+            index = ChunkIndex.read(channel);
+        }
+        byte[] bytes = Files.readAllBytes(container);
+        int indexOffset = (int) ByteBuffer.wrap(bytes, bytes.length - 16, 8).getLong();
+        // the entries of chunk 0 and 1 follow the 32 byte header of the index
+        ByteBuffer.wrap(bytes, indexOffset + 32, 12).putLong(index.offsets[1]).putInt(index.lengths[1]);
+        ByteBuffer.wrap(bytes, indexOffset + 44, 12).putLong(index.offsets[0]).putInt(index.lengths[0]);
+        Files.write(container, bytes);
+
+        try (ChunkedDecryptor reader = new ChunkedDecryptor(container, decryptor)) {
+            assertThrows(PGPDataValidationException.class, () -> reader.read(0, 10));
+            assertArrayEquals(reader.read(2 * CHUNK_SIZE, 10), reader.read(2 * CHUNK_SIZE, 10));
+        }
+    }
+
+    @Test
+    void test_shouldNotOpenWithoutKey() throws Exception {
+        write(randomData(10), Compression.NONE);
+        try (PGPDecryptor other = new PGPDecryptor(new KeyPairPGP(pass).getPrivateKey(), pass)) {
+            assertThrows(IllegalArgumentException.class, () -> new ChunkedDecryptor(container, other));
+        }
+        Files.write(container, "not a container at all".getBytes());
+        assertThrows(IOException.class, () -> new ChunkedDecryptor(container, decryptor));
+    }
+
+    private void write(byte[] clearData, Compression compression) throws Exception {
+        ChunkedEncryptor encryptor = new ChunkedEncryptor.Builder(Collections.singleton(keyPair.getPGPPublicKey()))
+                .setChunkSize(CHUNK_SIZE)
+                .setCompression(compression)
+                .build();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        encryptor.encrypt(new ByteArrayInputStream(clearData), out);
+        Files.write(container, out.toByteArray());
+    }
+
+    private static byte[] randomData(int size) {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+}
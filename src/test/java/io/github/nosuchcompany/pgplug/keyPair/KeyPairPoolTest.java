@@ -0,0 +1,75 @@
+package io.github.nosuchcompany.pgplug.keyPair;
+
+import io.github.nosuchcompany.pgplug.utils.PGPUtils;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KeyPairPoolTest {
+
+    private static final byte[] clearData = "1234567890".getBytes();
+    private static final char[] pass = "1234567890".toCharArray();
+
+    @Test
+    void test_takenKeyPairShouldWork() throws Exception {
+        try (KeyPairPool pool = new KeyPairPool(2)) {
+            KeyPairPGP keyPair = pool.take(pass);
+
+            ByteArrayOutputStream enc_os = new ByteArrayOutputStream();
+            PGPUtils.encrypt(enc_os, clearData, Collections.singleton(keyPair.getPGPPublicKey()));
+            ByteArrayOutputStream dec_os = new ByteArrayOutputStream();
+            PGPUtils.decrypt(enc_os.toByteArray(), keyPair.getPrivateKey(), dec_os, pass);
+            assertArrayEquals(clearData, dec_os.toByteArray());
+        }
+    }
+
+    @Test
+    void test_shouldRefillInBackground() throws Exception {
+        try (KeyPairPool pool = new KeyPairPool(4, 2, 2)) {
+            awaitAvailable(pool, 4);
+            for (int i = 0; i < 3; i++) {
+                assertNotNull(pool.tryTake(pass));
+            }
+            awaitAvailable(pool, 4);
+            assertEquals(4, pool.available());
+        }
+    }
+
+    private static void awaitAvailable(KeyPairPool pool, int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (pool.available() < count && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    void test_closedPoolShouldNotHandOutKeys() {
+        KeyPairPool pool = new KeyPairPool(1);
+        pool.close();
+        assertNull(pool.tryTake(pass));
+        assertThrows(IllegalStateException.class, () -> pool.take(pass));
+    }
+
+    @Test
+    void test_closeShouldReleaseWaitingTakers() throws Exception {
+        KeyPairPool pool = new KeyPairPool(1, 1, 1);
+        CompletableFuture<Throwable> taker = CompletableFuture.supplyAsync(() -> {
+            try {
+                while (true) {
+                    pool.take(pass);
+                }
+            } catch (Throwable t) {
+                return t;
+            }
+        });
+        Thread.sleep(200);
+        pool.close();
+        assertTrue(taker.get(5, TimeUnit.SECONDS) instanceof IllegalStateException);
+        assertEquals(0, pool.getGenerationFailureCount());
+    }
+}
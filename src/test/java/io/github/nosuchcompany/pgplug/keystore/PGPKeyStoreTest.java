@@ -0,0 +1,156 @@
+package io.github.nosuchcompany.pgplug.keystore;
+
+import io.github.nosuchcompany.pgplug.keyPair.KeyPairPGP;
+import io.github.nosuchcompany.pgplug.sign.SignedFileProcessor;
+import io.github.nosuchcompany.pgplug.utils.KeyAlgorithm;
+import io.github.nosuchcompany.pgplug.utils.PGPDecryptor;
+import io.github.nosuchcompany.pgplug.utils.PGPEncryptor;
+import org.bouncycastle.openpgp.PGPPublicKey;
+import org.bouncycastle.openpgp.PGPPublicKeyRing;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PGPKeyStoreTest {
+
+    private static final char[] pass = "1234567890".toCharArray();
+
+    private Path dir;
+    private KeyPairPGP alice;
+    private KeyPairPGP bob;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        dir = Files.createTempDirectory("pgplug-keys");
+        alice = new KeyPairPGP(pass, KeyAlgorithm.ECC_P256);
+        bob = new KeyPairPGP(pass, KeyAlgorithm.ECC_P256);
+        Files.write(dir.resolve("alice.asc"), alice.getPublicKey());
+        Files.write(dir.resolve("bob.sec"), bob.getPrivateKey());
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @Test
+    void test_shouldFindKeysByIdFingerprintAndUserId() throws Exception {
+        PGPPublicKey aliceSubkey = alice.getPGPPublicKey();
+        PGPPublicKey bobSubkey = bob.getPGPPublicKey();
+        try (PGPKeyStore keyStore = PGPKeyStore.open(dir)) {
+            assertEquals(2, keyStore.size());
+
+            PGPPublicKeyRing ring = keyStore.getPublicKeyRing(aliceSubkey.getKeyID());
+            assertNotNull(ring);
+            assertSame(ring, keyStore.getPublicKeyRing(ring.getPublicKey().getKeyID()));
+            assertSame(ring, keyStore.getPublicKeyRing(ring.getPublicKey().getFingerprint()));
+            assertEquals(aliceSubkey.getKeyID(), keyStore.getPublicKey(aliceSubkey.getKeyID()).getKeyID());
+            assertEquals(1, keyStore.getPublicKeyRings(" IDENTITY ").size());
+            assertTrue(keyStore.getPublicKeyRings("nobody").isEmpty());
+
+            assertNull(keyStore.getSecretKey(aliceSubkey.getKeyID()));
+            assertNotNull(keyStore.getSecretKey(bobSubkey.getKeyID()));
+            assertNotNull(keyStore.getPublicKey(bobSubkey.getKeyID()));
+            assertNull(keyStore.getPublicKeyRing(bobSubkey.getKeyID()));
+        }
+    }
+
+    @Test
+    void test_shouldReloadChangedFiles() throws Exception {
+        try (PGPKeyStore keyStore = PGPKeyStore.open(dir)) {
+            assertFalse(keyStore.reload());
+
+            KeyPairPGP carol = new KeyPairPGP(pass, KeyAlgorithm.ECC_P256);
+            Files.write(dir.resolve("carol.asc"), carol.getPublicKey());
+            assertTrue(keyStore.reload());
+            assertNotNull(keyStore.getPublicKey(carol.getPGPPublicKey().getKeyID()));
+
+            Files.delete(dir.resolve("alice.asc"));
+            assertTrue(keyStore.reload());
+            assertNull(keyStore.getPublicKey(alice.getPGPPublicKey().getKeyID()));
+            assertEquals(2, keyStore.size());
+        }
+    }
+
+    @Test
+    void test_shouldKeepOldKeysIfAFileIsBroken() throws Exception {
+        try (PGPKeyStore keyStore = PGPKeyStore.open(dir)) {
+            Files.write(dir.resolve("broken.asc"), "no key".getBytes(StandardCharsets.UTF_8));
+            assertThrows(Exception.class, keyStore::reload);
+            assertNotNull(keyStore.getPublicKey(alice.getPGPPublicKey().getKeyID()));
+        }
+    }
+
+    @Test
+    void test_shouldStartFromTheIndexFile() throws Exception {
+        Path index = dir.resolve(".index");
+        long keyId = alice.getPGPPublicKey().getKeyID();
+        try (PGPKeyStore keyStore = PGPKeyStore.open(dir, index)) {
+            assertNotNull(keyStore.getPublicKey(keyId));
+        }
+        assertTrue(Files.size(index) > 0);
+
+        try (PGPKeyStore keyStore = PGPKeyStore.open(dir, index)) {
+            assertFalse(keyStore.reload());
+            assertEquals(2, keyStore.size());
+            assertEquals(keyId, keyStore.getPublicKey(keyId).getKeyID());
+            assertNotNull(keyStore.getSecretKey(bob.getPGPPublicKey().getKeyID()));
+        }
+
+        Files.write(index, "garbage".getBytes(StandardCharsets.UTF_8));
+        try (PGPKeyStore keyStore = PGPKeyStore.open(dir, index)) {
+            assertEquals(keyId, keyStore.getPublicKey(keyId).getKeyID());
+        }
+    }
+
+    @Test
+    void test_shouldPickUpNewFilesWhenWatching() throws Exception {
+        try (PGPKeyStore keyStore = PGPKeyStore.open(dir)) {
+            keyStore.watch();
+            KeyPairPGP carol = new KeyPairPGP(pass, KeyAlgorithm.ECC_P256);
+            long keyId = carol.getPGPPublicKey().getKeyID();
+            Files.write(dir.resolve("carol.asc"), carol.getPublicKey());
+
+            long deadline = System.currentTimeMillis() + 20_000;
+            while (keyStore.getPublicKey(keyId) == null && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+            assertNotNull(keyStore.getPublicKey(keyId));
+        }
+    }
+
+    @Test
+    void test_shouldVerifyAndDecryptWithTheKeyStore() throws Exception {
+        Files.write(dir.resolve("bob.asc"), bob.getPublicKey());
+        try (PGPKeyStore keyStore = PGPKeyStore.open(dir)) {
+            byte[] clear = "indexed".getBytes(StandardCharsets.UTF_8);
+            byte[] encrypted = new PGPEncryptor.Builder(Collections.singleton(bob.getPGPPublicKey())).build().encrypt(clear);
+            try (PGPDecryptor decryptor = new PGPDecryptor(keyStore, pass)) {
+                assertArrayEquals(clear, decryptor.decrypt(encrypted));
+            }
+
+            Path data = dir.resolve("data");
+            Files.write(data, clear);
+            ByteArrayOutputStream signed = new ByteArrayOutputStream();
+            SignedFileProcessor.signFile(data.toString(), keyStore.getSecretKeyRing(bob.getPGPPublicKey().getKeyID()).getSecretKey(),
+                    signed, pass, true);
+            Files.delete(data);
+            ByteArrayOutputStream payload = new ByteArrayOutputStream();
+            assertTrue(SignedFileProcessor.verifyFile(new ByteArrayInputStream(signed.toByteArray()), keyStore, payload));
+            assertArrayEquals(clear, payload.toByteArray());
+        }
+    }
+}
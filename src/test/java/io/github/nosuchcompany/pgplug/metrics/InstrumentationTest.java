@@ -0,0 +1,186 @@
+package io.github.nosuchcompany.pgplug.metrics;
+
+import io.github.nosuchcompany.pgplug.keyPair.KeyPairPGP;
+import io.github.nosuchcompany.pgplug.sign.SignedFileProcessor;
+import io.github.nosuchcompany.pgplug.utils.PGPDecryptor;
+import io.github.nosuchcompany.pgplug.utils.PGPUtils;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.bouncycastle.openpgp.PGPPublicKeyRingCollection;
+import org.bouncycastle.openpgp.PGPUtil;
+import org.bouncycastle.openpgp.operator.jcajce.JcaKeyFingerprintCalculator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InstrumentationTest {
+
+    private static final byte[] clearData = "1234567890".getBytes();
+    private static final char[] pass = "1234567890".toCharArray();
+
+    private final List<OperationRecord> records = new CopyOnWriteArrayList<OperationRecord>();
+    private final OperationListener listener = records::add;
+
+    @BeforeEach
+    void setUp() {
+        Instrumentation.addListener(listener);
+    }
+
+    @AfterEach
+    void tearDown() {
+        Instrumentation.removeListener(listener);
+        Instrumentation.setJfrEnabled(false);
+    }
+
+    @Test
+    void test_shouldBeNoOpWithoutListeners() {
+        Instrumentation.removeListener(listener);
+        assertFalse(Instrumentation.isEnabled());
+        assertFalse(Instrumentation.start(Operation.ENCRYPT).isActive());
+    }
+
+    @Test
+    void test_shouldRecordEncryptAndDecrypt() throws Exception {
+        KeyPairPGP keyPair = new KeyPairPGP(pass);
+        records.clear();
+
+        byte[] encrypted = PGPUtils.encrypt(clearData, keyPair.getPublicKey());
+        PGPDecryptor decryptor = new PGPDecryptor(keyPair.getPrivateKey(), pass);
+        assertArrayEquals(clearData, decryptor.decrypt(encrypted));
+        decryptor.close();
+
+        assertEquals(2, records.size());
+        OperationRecord encrypt = records.get(0);
+        assertEquals(Operation.ENCRYPT, encrypt.getOperation());
+        assertTrue(encrypt.isSuccess());
+        assertEquals(clearData.length, encrypt.getBytesIn());
+        assertEquals(encrypted.length, encrypt.getBytesOut());
+        assertArrayEquals(new long[]{keyPair.getPGPPublicKey().getKeyID()}, encrypt.getKeyIds());
+        assertTrue(encrypt.getPhaseNanos(Phase.SESSION_KEY) > 0);
+        assertTrue(encrypt.getPhaseNanos(Phase.SYMMETRIC_CRYPTO) > 0);
+
+        OperationRecord decrypt = records.get(1);
+        assertEquals(Operation.DECRYPT, decrypt.getOperation());
+        assertTrue(decrypt.isSuccess());
+        assertEquals(encrypted.length, decrypt.getBytesIn());
+        assertEquals(clearData.length, decrypt.getBytesOut());
+        assertArrayEquals(new long[]{keyPair.getPGPPublicKey().getKeyID()}, decrypt.getKeyIds());
+        assertTrue(decrypt.getPhaseNanos(Phase.KEY_UNLOCK) > 0);
+        assertTrue(decrypt.getPhaseNanos(Phase.SESSION_KEY) > 0);
+        assertTrue(decrypt.getPhaseNanos(Phase.INTEGRITY_CHECK) > 0);
+
+        long phases = 0;
+        for (Phase phase : Phase.values()) {
+            phases += decrypt.getPhaseNanos(phase);
+        }
+        assertTrue(phases <= decrypt.getDurationNanos());
+    }
+
+    @Test
+    void test_shouldRecordFailedDecrypt() throws Exception {
+        KeyPairPGP keyPair = new KeyPairPGP(pass);
+        PGPDecryptor decryptor = new PGPDecryptor(new KeyPairPGP(pass).getPrivateKey(), pass);
+        byte[] encrypted = PGPUtils.encrypt(clearData, keyPair.getPublicKey());
+        records.clear();
+
+        assertThrows(IllegalArgumentException.class, () -> decryptor.decrypt(encrypted));
+
+        assertEquals(1, records.size());
+        assertFalse(records.get(0).isSuccess());
+        assertTrue(records.get(0).getError() instanceof IllegalArgumentException);
+    }
+
+    @Test
+    void test_shouldRecordSignAndVerify() throws Exception {
+        KeyPairPGP keyPair = new KeyPairPGP(pass);
+        PGPPublicKeyRingCollection pgpRing = new PGPPublicKeyRingCollection(
+                PGPUtil.getDecoderStream(new ByteArrayInputStream(keyPair.getPublicKey())), new JcaKeyFingerprintCalculator());
+        records.clear();
+
+        ByteArrayOutputStream sigOut = new ByteArrayOutputStream();
+        SignedFileProcessor.signDetached(new ByteArrayInputStream(clearData),
+                PGPUtils.readSecretKey(new ByteArrayInputStream(keyPair.getPrivateKey())), sigOut, pass, true);
+        assertTrue(SignedFileProcessor.verifyDetached(new ByteArrayInputStream(clearData),
+                new ByteArrayInputStream(sigOut.toByteArray()), pgpRing));
+        assertFalse(SignedFileProcessor.verifyDetached(new ByteArrayInputStream("tampered".getBytes()),
+                new ByteArrayInputStream(sigOut.toByteArray()), pgpRing));
+
+        assertEquals(3, records.size());
+        assertEquals(Operation.SIGN, records.get(0).getOperation());
+        assertEquals(clearData.length, records.get(0).getBytesIn());
+        assertEquals(sigOut.size(), records.get(0).getBytesOut());
+        assertTrue(records.get(0).getPhaseNanos(Phase.KEY_UNLOCK) > 0);
+        assertTrue(records.get(0).getPhaseNanos(Phase.SIGNATURE) > 0);
+        assertEquals(Operation.VERIFY, records.get(1).getOperation());
+        assertTrue(records.get(1).isSuccess());
+        assertFalse(records.get(2).isSuccess());
+    }
+
+    @Test
+    void test_shouldRecordKeyGeneration() {
+        records.clear();
+
+        KeyPairPGP keyPair = new KeyPairPGP(pass);
+
+        assertEquals(1, records.size());
+        assertEquals(Operation.KEY_GENERATION, records.get(0).getOperation());
+        assertArrayEquals(new long[]{keyPair.getPGPPublicKey().getKeyID()}, records.get(0).getKeyIds());
+        assertTrue(records.get(0).getPhaseNanos(Phase.KEY_GENERATION) > 0);
+    }
+
+    @Test
+    void test_failingListenerShouldBeCounted() {
+        IllegalStateException failure = new IllegalStateException("broken listener");
+        OperationListener broken = record -> {
+            throw failure;
+        };
+        Instrumentation.addListener(broken);
+        try {
+            long before = Instrumentation.getListenerFailureCount();
+            records.clear();
+
+            new KeyPairPGP(pass);
+            new KeyPairPGP(pass);
+
+            assertEquals(2, records.size());
+            assertEquals(before + 2, Instrumentation.getListenerFailureCount());
+            assertSame(failure, Instrumentation.getLastListenerFailure());
+        } finally {
+            Instrumentation.removeListener(broken);
+        }
+    }
+
+    @Test
+    void test_shouldCommitJfrEvents() throws Exception {
+        KeyPairPGP keyPair = new KeyPairPGP(pass);
+        Instrumentation.setJfrEnabled(true);
+        Path dump = Files.createTempFile("pgplug", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("io.github.nosuchcompany.pgplug.Operation");
+            recording.start();
+            PGPUtils.encrypt(clearData, keyPair.getPublicKey());
+            recording.stop();
+            recording.dump(dump);
+
+            List<RecordedEvent> events = RecordingFile.readAllEvents(dump);
+            assertEquals(1, events.size());
+            RecordedEvent event = events.get(0);
+            assertEquals("ENCRYPT", event.getString("operation"));
+            assertTrue(event.getBoolean("success"));
+            assertEquals(clearData.length, event.getLong("bytesIn"));
+            assertEquals(Long.toHexString(keyPair.getPGPPublicKey().getKeyID()).toUpperCase(), event.getString("keyIds"));
+        } finally {
+            Files.delete(dump);
+        }
+    }
+}
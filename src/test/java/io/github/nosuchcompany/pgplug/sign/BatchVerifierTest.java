@@ -0,0 +1,107 @@
+package io.github.nosuchcompany.pgplug.sign;
+
+import io.github.nosuchcompany.pgplug.utils.PGPUtils;
+import org.bouncycastle.openpgp.PGPPublicKeyRingCollection;
+import org.bouncycastle.openpgp.PGPSecretKey;
+import org.bouncycastle.openpgp.PGPUtil;
+import org.bouncycastle.openpgp.operator.jcajce.JcaKeyFingerprintCalculator;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchVerifierTest {
+
+    public static final String TEST_FOLDER = "test_folder_batch";
+    private static final char[] pass = "1234567890".toCharArray();
+
+    @BeforeAll
+    static void setupTestPath(){
+        File directory = new File(TEST_FOLDER);
+        directory.mkdir();
+    }
+
+    @AfterAll
+    static void cleanUp(){
+        File[] allContents = new File(TEST_FOLDER).listFiles();
+        if (allContents != null) {
+            for (File file : allContents) {
+                file.delete();
+            }
+        }
+        new File(TEST_FOLDER).delete();
+    }
+
+    @Test
+    void test_shouldVerifyEveryFile() throws Exception {
+        String privateKeyDest = TEST_FOLDER + "/batch.prv";
+        String publicKeyDest = TEST_FOLDER + "/batch.pub";
+        PGPUtils.generateKeyPair(new FileOutputStream(privateKeyDest), new FileOutputStream(publicKeyDest), pass);
+        PGPSecretKey secretKey = PGPUtils.readSecretKey(new FileInputStream(privateKeyDest));
+
+        List<File> signedFiles = new ArrayList<File>();
+        for (int i = 0; i < 10; i++) {
+            File file = new File(TEST_FOLDER, "file" + i + ".txt");
+            try (OutputStream out = new FileOutputStream(file)) {
+                out.write(("content " + i).getBytes());
+            }
+            File signed = new File(TEST_FOLDER, "file" + i + ".txt.sig");
+            SignedFileProcessor.signFile(file.getPath(), secretKey, new FileOutputStream(signed), pass, i % 2 == 0);
+            signedFiles.add(signed);
+        }
+        File broken = new File(TEST_FOLDER, "broken.sig");
+        try (OutputStream out = new FileOutputStream(broken)) {
+            out.write("not a signed file".getBytes());
+        }
+        signedFiles.add(3, broken);
+
+        PGPPublicKeyRingCollection pgpRing = new PGPPublicKeyRingCollection(
+                PGPUtil.getDecoderStream(new FileInputStream(publicKeyDest)), new JcaKeyFingerprintCalculator());
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<BatchVerifier.Result> results;
+        try {
+            results = new BatchVerifier(pgpRing, executor).verifyFiles(signedFiles);
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(signedFiles.size(), results.size());
+        for (BatchVerifier.Result result : results) {
+            assertEquals(signedFiles.get(result.getIndex()).getPath(), result.getName());
+            if (result.getIndex() == 3) {
+                assertFalse(result.isVerified());
+                assertNotNull(result.getError());
+            } else {
+                assertTrue(result.isVerified(), result.toString());
+            }
+        }
+    }
+
+    @Test
+    void test_shouldNotVerifyWithOtherKey() throws Exception {
+        String privateKeyDest = TEST_FOLDER + "/signer.prv";
+        String otherPublicKeyDest = TEST_FOLDER + "/other.pub";
+        PGPUtils.generateKeyPair(new FileOutputStream(privateKeyDest), new ByteArrayOutputStream(), pass);
+        PGPUtils.generateKeyPair(new ByteArrayOutputStream(), new FileOutputStream(otherPublicKeyDest), pass);
+
+        File file = new File(TEST_FOLDER, "other.txt");
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write("content".getBytes());
+        }
+        File signed = new File(TEST_FOLDER, "other.txt.sig");
+        SignedFileProcessor.signFile(file.getPath(), new FileInputStream(privateKeyDest), new FileOutputStream(signed), pass, true);
+
+        List<BatchVerifier.Result> results = new BatchVerifier(new FileInputStream(otherPublicKeyDest))
+                .verifyFiles(Collections.singletonList(signed));
+        assertFalse(results.get(0).isVerified());
+        assertNull(results.get(0).getError());
+    }
+}
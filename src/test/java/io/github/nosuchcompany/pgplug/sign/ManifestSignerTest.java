@@ -0,0 +1,113 @@
+package io.github.nosuchcompany.pgplug.sign;
+
+import io.github.nosuchcompany.pgplug.keyPair.KeyPairPGP;
+import io.github.nosuchcompany.pgplug.utils.KeyAlgorithm;
+import io.github.nosuchcompany.pgplug.utils.PGPUtils;
+import org.bouncycastle.openpgp.PGPSecretKey;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ManifestSignerTest {
+
+    private static final char[] pass = "1234567890".toCharArray();
+
+    private Path root;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        root = Files.createTempDirectory("pgplug-manifest");
+        Files.createDirectories(root.resolve("lib/nested"));
+        for (int i = 0; i < 50; i++) {
+            Files.write(root.resolve((i % 3 == 0 ? "lib/nested/" : i % 3 == 1 ? "lib/" : "") + "file" + i + ".txt"),
+                    ("content " + i).getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    @AfterEach
+    void cleanUp() throws IOException {
+        try (Stream<Path> files = Files.walk(root)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    void test_shouldSignAndVerifyTree() throws Exception {
+        KeyPairPGP keyPair = new KeyPairPGP(pass, KeyAlgorithm.ECC_P256);
+        PGPSecretKey secretKey = PGPUtils.readSecretKey(new ByteArrayInputStream(keyPair.getPrivateKey()));
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            ByteArrayOutputStream manifestOut = new ByteArrayOutputStream();
+            ByteArrayOutputStream sigOut = new ByteArrayOutputStream();
+            Manifest manifest = new ManifestSigner(secretKey, pass, Manifest.SHA512, executor).sign(root, manifestOut, sigOut, true);
+
+            assertEquals(50, manifest.getDigests().size());
+            assertTrue(manifest.getDigests().containsKey("lib/nested/file0.txt"));
+            assertEquals(128, manifest.getDigests().get("file2.txt").length());
+            assertEquals(manifest.getDigests(), Manifest.read(new ByteArrayInputStream(manifestOut.toByteArray())).getDigests());
+
+            ManifestVerifier verifier = new ManifestVerifier(new ByteArrayInputStream(keyPair.getPublicKey()));
+            ManifestVerifier.Result result = verifier.verify(root,
+                    new ByteArrayInputStream(manifestOut.toByteArray()), new ByteArrayInputStream(sigOut.toByteArray()));
+            assertTrue(result.isVerified(), result.toString());
+
+            Files.write(root.resolve("lib/file1.txt"), "changed".getBytes(StandardCharsets.UTF_8));
+            Files.delete(root.resolve("file2.txt"));
+            Files.write(root.resolve("extra.txt"), "extra".getBytes(StandardCharsets.UTF_8));
+            result = verifier.verify(root,
+                    new ByteArrayInputStream(manifestOut.toByteArray()), new ByteArrayInputStream(sigOut.toByteArray()));
+            assertTrue(result.isSignatureValid());
+            assertFalse(result.isVerified());
+            assertEquals(Collections.singletonList("lib/file1.txt"), result.getMismatched());
+            assertEquals(Collections.singletonList("file2.txt"), result.getMissing());
+            assertEquals(Collections.singletonList("extra.txt"), result.getUnlisted());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void test_tamperedManifestShouldNotVerify() throws Exception {
+        KeyPairPGP keyPair = new KeyPairPGP(pass, KeyAlgorithm.ECC_P256);
+        PGPSecretKey secretKey = PGPUtils.readSecretKey(new ByteArrayInputStream(keyPair.getPrivateKey()));
+        ByteArrayOutputStream manifestOut = new ByteArrayOutputStream();
+        ByteArrayOutputStream sigOut = new ByteArrayOutputStream();
+        new ManifestSigner(secretKey, pass).sign(root, manifestOut, sigOut, false);
+
+        Files.write(root.resolve("file2.txt"), "changed".getBytes(StandardCharsets.UTF_8));
+        ByteArrayOutputStream forged = new ByteArrayOutputStream();
+        Manifest.create(root, Manifest.SHA256, Runnable::run).write(forged);
+        assertFalse(Arrays.equals(manifestOut.toByteArray(), forged.toByteArray()));
+
+        ManifestVerifier.Result result = new ManifestVerifier(new ByteArrayInputStream(keyPair.getPublicKey())).verify(root,
+                new ByteArrayInputStream(forged.toByteArray()), new ByteArrayInputStream(sigOut.toByteArray()));
+        assertFalse(result.isSignatureValid());
+        assertFalse(result.isVerified());
+    }
+
+    @Test
+    void test_vanishedFileShouldFailTheManifest() throws Exception {
+        List<String> paths = Manifest.list(root);
+        Files.delete(root.resolve("file2.txt"));
+
+        assertThrows(NoSuchFileException.class, () -> Manifest.create(root, paths, Manifest.SHA256, Runnable::run));
+        assertFalse(Manifest.create(root, Manifest.SHA256, Runnable::run).getDigests().containsKey("file2.txt"));
+    }
+}
@@ -1,14 +1,25 @@
 package io.github.nosuchcompany.pgplug.sign;
 
+import io.github.nosuchcompany.pgplug.keyPair.KeyPairPGP;
+import io.github.nosuchcompany.pgplug.utils.Compression;
+import io.github.nosuchcompany.pgplug.utils.KeyAlgorithm;
 import io.github.nosuchcompany.pgplug.utils.PGPUtils;
-import org.bouncycastle.openpgp.PGPPublicKey;
+import org.bouncycastle.openpgp.*;
+import org.bouncycastle.openpgp.operator.jcajce.JcaKeyFingerprintCalculator;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import static io.github.nosuchcompany.pgplug.utils.PGPUtils.*;
 import static org.junit.jupiter.api.Assertions.*;
@@ -127,6 +138,32 @@ class SignedFileProcessorTest {
         assertTrue(SignedFileProcessor.verifyFile(new FileInputStream(encryptedSignedFileDest),new FileInputStream(publicKeyDest)));
     }
 
+    @Test
+    void testSigned_ellipticCurveHappyPath() throws Exception {
+        String privateKeyDest = TEST_FOLDER + "/testSigned_ellipticCurveHappyPath.prv";
+        String publicKeyDest = TEST_FOLDER + "/testSigned_ellipticCurveHappyPath.pub";
+        String fileDest = TEST_FOLDER + "/testSigned_ellipticCurveHappyPath.test";
+        String signedFileDest = TEST_FOLDER + "/testSigned_ellipticCurveHappyPath_sign.test";
+
+        PGPUtils.generateKeyPair(KeyAlgorithm.ECC_P256, new FileOutputStream(privateKeyDest), new FileOutputStream(publicKeyDest), pass);
+        try (OutputStream fileOut = new FileOutputStream(fileDest)) {
+            fileOut.write(clearData);
+        }
+
+        SignedFileProcessor.signFile(
+                fileDest,
+                new FileInputStream(privateKeyDest),
+                new FileOutputStream(signedFileDest),
+                pass,
+                true
+        );
+        ByteArrayOutputStream verified = SignedFileProcessor.verifyFile(
+                new ByteArrayInputStream(readContentIntoByteArray(new File(signedFileDest))),
+                new FileInputStream(publicKeyDest));
+        assertNotNull(verified);
+        assertArrayEquals(clearData, verified.toByteArray());
+    }
+
     @Test
     void testSigned_shouldNotVerified() throws Exception {
         String privateKeyDest = TEST_FOLDER + "/testSigned_shouldNotVerified.prv";
@@ -161,6 +198,243 @@ class SignedFileProcessorTest {
         assertFalse(SignedFileProcessor.verifyFile(new FileInputStream(encryptedSignedFileDest),new FileInputStream(badPublicKeyDest)));
     }
 
+    @Test
+    void testSigned_adaptiveCompression() throws Exception {
+        String privateKeyDest = TEST_FOLDER + "/testSigned_adaptiveCompression.prv";
+        String publicKeyDest = TEST_FOLDER + "/testSigned_adaptiveCompression.pub";
+        String fileDest = TEST_FOLDER + "/testSigned_adaptiveCompression.bin";
+        String signedFileDest = TEST_FOLDER + "/testSigned_adaptiveCompression_sign.test";
+
+        PGPUtils.generateKeyPair(new FileOutputStream(privateKeyDest), new FileOutputStream(publicKeyDest), pass);
+        byte[] payload = new byte[200000];
+        new Random(3).nextBytes(payload);
+        try (OutputStream fileOut = new FileOutputStream(fileDest)) {
+            fileOut.write(payload);
+        }
+
+        SignedFileProcessor.signFile(
+                fileDest,
+                readSecretKey(new FileInputStream(privateKeyDest)),
+                new FileOutputStream(signedFileDest),
+                pass,
+                false,
+                Compression.ZLIB.adaptive()
+        );
+        ByteArrayOutputStream verified = SignedFileProcessor.verifyFile(
+                new ByteArrayInputStream(readContentIntoByteArray(new File(signedFileDest))),
+                new FileInputStream(publicKeyDest));
+        assertNotNull(verified);
+        assertArrayEquals(payload, verified.toByteArray());
+    }
+
+    @Test
+    void testSigned_parallelCompression() throws Exception {
+        String privateKeyDest = TEST_FOLDER + "/testSigned_parallelCompression.prv";
+        String publicKeyDest = TEST_FOLDER + "/testSigned_parallelCompression.pub";
+        String fileDest = TEST_FOLDER + "/testSigned_parallelCompression.txt";
+        String signedFileDest = TEST_FOLDER + "/testSigned_parallelCompression_sign.test";
+
+        PGPUtils.generateKeyPair(new FileOutputStream(privateKeyDest), new FileOutputStream(publicKeyDest), pass);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; text.length() < 2 << 20; i++) {
+            text.append("line ").append(i).append(" of a large log file\n");
+        }
+        byte[] payload = text.toString().getBytes();
+        try (OutputStream fileOut = new FileOutputStream(fileDest)) {
+            fileOut.write(payload);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            SignedFileProcessor.signFile(
+                    fileDest,
+                    readSecretKey(new FileInputStream(privateKeyDest)),
+                    new FileOutputStream(signedFileDest),
+                    pass,
+                    true,
+                    Compression.ZLIB.parallel(executor)
+            );
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue(new File(signedFileDest).length() < payload.length / 4);
+        ByteArrayOutputStream verified = SignedFileProcessor.verifyFile(
+                new ByteArrayInputStream(readContentIntoByteArray(new File(signedFileDest))),
+                new FileInputStream(publicKeyDest));
+        assertNotNull(verified);
+        assertArrayEquals(payload, verified.toByteArray());
+    }
+
+    @Test
+    void testSigned_pathHappyPath() throws Exception {
+        String privateKeyDest = TEST_FOLDER + "/testSigned_pathHappyPath.prv";
+        String publicKeyDest = TEST_FOLDER + "/testSigned_pathHappyPath.pub";
+        Path fileDest = Paths.get(TEST_FOLDER, "testSigned_pathHappyPath.bin");
+        Path signedFileDest = Paths.get(TEST_FOLDER, "testSigned_pathHappyPath_sign.test");
+        Path verifiedFileDest = Paths.get(TEST_FOLDER, "testSigned_pathHappyPath_verified.bin");
+
+        PGPUtils.generateKeyPair(new FileOutputStream(privateKeyDest), new FileOutputStream(publicKeyDest), pass);
+        byte[] payload = new byte[3 << 20];
+        new Random(5).nextBytes(payload);
+        Files.write(fileDest, payload);
+        PGPPublicKeyRingCollection pgpRing = new PGPPublicKeyRingCollection(
+                PGPUtil.getDecoderStream(new FileInputStream(publicKeyDest)), new JcaKeyFingerprintCalculator());
+
+        SignedFileProcessor.signFile(fileDest, readSecretKey(new FileInputStream(privateKeyDest)), signedFileDest, pass, true, Compression.ZLIB);
+        assertTrue(SignedFileProcessor.verifyFile(signedFileDest, pgpRing, verifiedFileDest));
+        assertArrayEquals(payload, Files.readAllBytes(verifiedFileDest));
+
+        ByteArrayOutputStream signature = new ByteArrayOutputStream();
+        SignedFileProcessor.signDetached(fileDest, readSecretKey(new FileInputStream(privateKeyDest)), signature, pass, false);
+        assertTrue(SignedFileProcessor.verifyDetached(fileDest, new ByteArrayInputStream(signature.toByteArray()), pgpRing));
+
+        PGPPublicKeyRingCollection badRing = new PGPPublicKeyRingCollection(
+                PGPUtil.getDecoderStream(new ByteArrayInputStream(new KeyPairPGP(pass).getPublicKey())), new JcaKeyFingerprintCalculator());
+        assertFalse(SignedFileProcessor.verifyFile(signedFileDest, badRing, verifiedFileDest));
+        assertFalse(Files.exists(verifiedFileDest));
+    }
+
+    @Test
+    void testSigned_pathSameFileKeepsInput() throws Exception {
+        String privateKeyDest = TEST_FOLDER + "/testSigned_pathSameFileKeepsInput.prv";
+        String publicKeyDest = TEST_FOLDER + "/testSigned_pathSameFileKeepsInput.pub";
+        Path fileDest = Paths.get(TEST_FOLDER, "testSigned_pathSameFileKeepsInput.bin");
+        Path signedFileDest = Paths.get(TEST_FOLDER, "testSigned_pathSameFileKeepsInput_sign.test");
+
+        PGPUtils.generateKeyPair(new FileOutputStream(privateKeyDest), new FileOutputStream(publicKeyDest), pass);
+        Files.write(fileDest, clearData);
+        PGPSecretKey secretKey = readSecretKey(new FileInputStream(privateKeyDest));
+        PGPPublicKeyRingCollection pgpRing = new PGPPublicKeyRingCollection(
+                PGPUtil.getDecoderStream(new FileInputStream(publicKeyDest)), new JcaKeyFingerprintCalculator());
+
+        assertThrows(IllegalArgumentException.class,
+                () -> SignedFileProcessor.signFile(fileDest, secretKey, fileDest, pass, false, Compression.ZIP));
+        assertArrayEquals(clearData, Files.readAllBytes(fileDest));
+
+        SignedFileProcessor.signFile(fileDest, secretKey, signedFileDest, pass, false, Compression.ZIP);
+        byte[] signed = Files.readAllBytes(signedFileDest);
+        assertThrows(IllegalArgumentException.class,
+                () -> SignedFileProcessor.verifyFile(signedFileDest, pgpRing, signedFileDest));
+        assertArrayEquals(signed, Files.readAllBytes(signedFileDest));
+    }
+
+    @Test
+    void testSigned_pathFailureLeavesNoOutput() throws Exception {
+        String privateKeyDest = TEST_FOLDER + "/testSigned_pathFailureLeavesNoOutput.prv";
+        String publicKeyDest = TEST_FOLDER + "/testSigned_pathFailureLeavesNoOutput.pub";
+        Path fileDest = Paths.get(TEST_FOLDER, "testSigned_pathFailureLeavesNoOutput.bin");
+        Path signedFileDest = Paths.get(TEST_FOLDER, "testSigned_pathFailureLeavesNoOutput_sign.test");
+
+        PGPUtils.generateKeyPair(new FileOutputStream(privateKeyDest), new FileOutputStream(publicKeyDest), pass);
+        Files.write(fileDest, clearData);
+        Files.write(signedFileDest, clearData);
+
+        assertThrows(PGPException.class, () -> SignedFileProcessor.signFile(fileDest,
+                readSecretKey(new FileInputStream(privateKeyDest)), signedFileDest, "wrong".toCharArray(), false, Compression.ZIP));
+        assertFalse(Files.exists(signedFileDest));
+        assertTrue(Files.exists(fileDest));
+    }
+
+    @Test
+    void testDetached_HappyPath() throws Exception {
+        String privateKeyDest = TEST_FOLDER + "/testDetached_HappyPath.prv";
+        String publicKeyDest = TEST_FOLDER + "/testDetached_HappyPath.pub";
+        String fileDest = TEST_FOLDER + "/testDetached_HappyPath.test";
+        String signatureDest = TEST_FOLDER + "/testDetached_HappyPath.test.sig";
+
+        PGPUtils.generateKeyPair(new FileOutputStream(privateKeyDest), new FileOutputStream(publicKeyDest), pass);
+        try (OutputStream fileOut = new FileOutputStream(fileDest)) {
+            fileOut.write(clearData);
+        }
+
+        SignedFileProcessor.signDetached(
+                fileDest,
+                new FileInputStream(privateKeyDest),
+                new FileOutputStream(signatureDest),
+                pass,
+                false
+        );
+
+        assertArrayEquals(clearData, readContentIntoByteArray(new File(fileDest)));
+        assertTrue(new File(signatureDest).length() < 512);
+        assertTrue(SignedFileProcessor.verifyDetached(fileDest, new FileInputStream(signatureDest), new FileInputStream(publicKeyDest)));
+
+        try (OutputStream fileOut = new FileOutputStream(fileDest, true)) {
+            fileOut.write('!');
+        }
+        assertFalse(SignedFileProcessor.verifyDetached(fileDest, new FileInputStream(signatureDest), new FileInputStream(publicKeyDest)));
+    }
+
+    @Test
+    void testDetached_shouldNotVerified() throws Exception {
+        String privateKeyDest = TEST_FOLDER + "/testDetached_shouldNotVerified.prv";
+        String badPublicKeyDest = TEST_FOLDER + "/testDetached_shouldNotVerified_bad.pub";
+
+        PGPUtils.generateKeyPair(new FileOutputStream(privateKeyDest), new ByteArrayOutputStream(), pass);
+        PGPUtils.generateKeyPair(new ByteArrayOutputStream(), new FileOutputStream(badPublicKeyDest), pass);
+
+        ByteArrayOutputStream signature = new ByteArrayOutputStream();
+        SignedFileProcessor.signDetached(
+                new ByteArrayInputStream(clearData),
+                readSecretKey(new FileInputStream(privateKeyDest)),
+                signature,
+                pass,
+                true
+        );
+        PGPPublicKeyRingCollection badRing = new PGPPublicKeyRingCollection(
+                PGPUtil.getDecoderStream(new FileInputStream(badPublicKeyDest)), new JcaKeyFingerprintCalculator());
+        assertFalse(SignedFileProcessor.verifyDetached(new ByteArrayInputStream(clearData), new ByteArrayInputStream(signature.toByteArray()), badRing));
+    }
+
+    @Test
+    void testSigned_corruptFileShouldNotVerify() throws Exception {
+        String privateKeyDest = TEST_FOLDER + "/testSigned_corruptFile.prv";
+        String publicKeyDest = TEST_FOLDER + "/testSigned_corruptFile.pub";
+        String payloadDest = TEST_FOLDER + "/testSigned_corruptFile.bin";
+
+        PGPUtils.generateKeyPair(new FileOutputStream(privateKeyDest), new FileOutputStream(publicKeyDest), pass);
+        byte[] payload = new byte[100000];
+        new Random(9).nextBytes(payload);
+        try (OutputStream payloadOut = new FileOutputStream(payloadDest)) {
+            payloadOut.write(payload);
+        }
+        ByteArrayOutputStream signed = new ByteArrayOutputStream();
+        SignedFileProcessor.signFile(payloadDest, readSecretKey(new FileInputStream(privateKeyDest)), signed, pass, false);
+        byte[] signedBytes = signed.toByteArray();
+
+        byte[] truncated = Arrays.copyOf(signedBytes, signedBytes.length / 2);
+        assertNull(SignedFileProcessor.verifyFile(new ByteArrayInputStream(truncated), new FileInputStream(publicKeyDest)));
+
+        byte[] corrupt = signedBytes.clone();
+        for (int i = corrupt.length / 2; i < corrupt.length / 2 + 64; i++) {
+            corrupt[i] ^= 0x5a;
+        }
+        assertNull(SignedFileProcessor.verifyFile(new ByteArrayInputStream(corrupt), new FileInputStream(publicKeyDest)));
+    }
+
+    @Test
+    void testSigned_largeFile() throws Exception {
+        String privateKeyDest = TEST_FOLDER + "/testSigned_largeFile.prv";
+        String publicKeyDest = TEST_FOLDER + "/testSigned_largeFile.pub";
+        String payloadDest = TEST_FOLDER + "/testSigned_largeFile.bin";
+        String signedDest = TEST_FOLDER + "/testSigned_largeFile_sign.test";
+
+        PGPUtils.generateKeyPair(new FileOutputStream(privateKeyDest), new FileOutputStream(publicKeyDest), pass);
+        byte[] payload = new byte[(4 << 20) + 7];
+        new Random(7).nextBytes(payload);
+        try (OutputStream payloadOut = new FileOutputStream(payloadDest)) {
+            payloadOut.write(payload);
+        }
+
+        SignedFileProcessor.signFile(payloadDest, readSecretKey(new FileInputStream(privateKeyDest)), new FileOutputStream(signedDest), pass, false);
+        ByteArrayOutputStream verified = SignedFileProcessor.verifyFile(
+                new ByteArrayInputStream(readContentIntoByteArray(new File(signedDest))),
+                new FileInputStream(publicKeyDest));
+
+        assertNotNull(verified);
+        assertArrayEquals(payload, verified.toByteArray());
+    }
+
     private static void deleteDirectory(File directoryToBeDeleted){
         File[] allContents = directoryToBeDeleted.listFiles();
         if (allContents != null) {
@@ -0,0 +1,176 @@
+package io.github.nosuchcompany.pgplug.utils;
+
+import io.github.nosuchcompany.pgplug.buffer.BufferPool;
+import io.github.nosuchcompany.pgplug.keyPair.KeyPairPGP;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompressionTest {
+
+    private static final char[] pass = "1234567890".toCharArray();
+
+    @Test
+    void test_adaptiveShouldSkipIncompressibleData() {
+        byte[] random = new byte[Compression.SAMPLE_SIZE];
+        new Random(1).nextBytes(random);
+        byte[] text = new byte[Compression.SAMPLE_SIZE];
+        for (int i = 0; i < text.length; i++) {
+            text[i] = (byte) ('a' + i % 7);
+        }
+
+        Compression adaptive = Compression.ZLIB.withLevel(1).adaptive();
+        assertNull(adaptive.newGenerator(random, random.length));
+        assertNotNull(adaptive.newGenerator(text, text.length));
+        assertNotNull(Compression.ZLIB.newGenerator(random, random.length));
+        assertNull(Compression.NONE.newGenerator(text, text.length));
+    }
+
+    @Test
+    void test_everyCompressionShouldDecrypt() throws Exception {
+        KeyPairPGP keyPair = new KeyPairPGP(pass);
+        PGPDecryptor decryptor = new PGPDecryptor(keyPair.getPrivateKey(), pass);
+        byte[] random = new byte[100000];
+        new Random(2).nextBytes(random);
+        byte[] text = new String(new char[100000]).replace('\0', 'x').getBytes();
+
+        Compression[] compressions = {
+                Compression.NONE,
+                Compression.ZIP.withLevel(9),
+                Compression.ZLIB.adaptive(),
+                Compression.BZIP2,
+                Compression.ZIP.withLevel(1).adaptive()
+        };
+        for (Compression compression : compressions) {
+            PGPEncryptor encryptor = new PGPEncryptor.Builder(Collections.singleton(keyPair.getPGPPublicKey()))
+                    .setCompression(compression)
+                    .build();
+            assertArrayEquals(random, decryptor.decrypt(encryptor.encrypt(random)), compression.toString());
+            assertArrayEquals(text, decryptor.decrypt(encryptor.encrypt(text)), compression.toString());
+        }
+    }
+
+    @Test
+    void test_parallelDeflateShouldBeOneStandardStream() throws Exception {
+        byte[] data = mixedData(300000);
+        ExecutorService pool = Executors.newFixedThreadPool(3);
+        try {
+            for (int length : new int[]{0, 1, 4096, 4097, 12288, data.length}) {
+                for (int level : new int[]{Deflater.NO_COMPRESSION, Deflater.BEST_SPEED, Deflater.DEFAULT_COMPRESSION, Deflater.BEST_COMPRESSION}) {
+                    ByteArrayOutputStream raw = new ByteArrayOutputStream();
+                    try (ParallelDeflaterOutputStream dOut = new ParallelDeflaterOutputStream(raw, level, false, pool, 4096, 2, BufferPool.getDefault())) {
+                        dOut.write(data, 0, length);
+                    }
+                    Inflater inflater = new Inflater(true);
+                    inflater.setInput(raw.toByteArray());
+                    byte[] inflated = new byte[length + 1];
+                    int n = 0;
+                    while (!inflater.finished() && n < inflated.length) {
+                        n += inflater.inflate(inflated, n, inflated.length - n);
+                    }
+                    assertTrue(inflater.finished());
+                    assertEquals(0, inflater.getRemaining());
+                    assertEquals(length, n);
+                    inflater.end();
+
+                    ByteArrayOutputStream zlib = new ByteArrayOutputStream();
+                    try (ParallelDeflaterOutputStream dOut = new ParallelDeflaterOutputStream(zlib, level, true, pool, 4096, 2, BufferPool.getDefault())) {
+                        for (int off = 0; off < length; off += 1000) {
+                            dOut.write(data, off, Math.min(1000, length - off));
+                        }
+                    }
+                    ByteArrayOutputStream unzipped = new ByteArrayOutputStream();
+                    InflaterInputStream in = new InflaterInputStream(new ByteArrayInputStream(zlib.toByteArray()));
+                    byte[] buffer = new byte[8192];
+                    int len;
+                    while ((len = in.read(buffer)) >= 0) {
+                        unzipped.write(buffer, 0, len);
+                    }
+                    assertArrayEquals(Arrays.copyOf(data, length), unzipped.toByteArray(), "level " + level + ", length " + length);
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void test_parallelCompressionShouldDecrypt() throws Exception {
+        KeyPairPGP keyPair = new KeyPairPGP(pass);
+        PGPDecryptor decryptor = new PGPDecryptor(keyPair.getPrivateKey(), pass);
+        byte[] data = mixedData(1 << 20);
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            Compression[] compressions = {
+                    Compression.ZIP.parallel(pool),
+                    Compression.ZLIB.withLevel(1).parallel(pool, 1 << 14),
+                    Compression.ZLIB.parallel(pool).adaptive(),
+                    Compression.BZIP2.parallel(pool)
+            };
+            for (Compression compression : compressions) {
+                PGPEncryptor encryptor = new PGPEncryptor.Builder(Collections.singleton(keyPair.getPGPPublicKey()))
+                        .setCompression(compression)
+                        .setArmor(false)
+                        .build();
+                byte[] encrypted = encryptor.encrypt(data);
+                assertTrue(encrypted.length < data.length / 2, compression.toString());
+                assertArrayEquals(data, decryptor.decrypt(encrypted), compression.toString());
+                assertArrayEquals(new byte[0], decryptor.decrypt(encryptor.encrypt(new byte[0])), compression.toString());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void test_parallelCompressionShouldUseTheEncryptorsPool() throws Exception {
+        KeyPairPGP keyPair = new KeyPairPGP(pass);
+        byte[] data = mixedData(1 << 20);
+        BufferPool pool = new BufferPool(1 << 20, false);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            PGPEncryptor encryptor = new PGPEncryptor.Builder(Collections.singleton(keyPair.getPGPPublicKey()))
+                    .setCompression(Compression.ZLIB.parallel(executor, 1 << 14))
+                    .setBufferPool(pool)
+                    .build();
+            byte[] encrypted = encryptor.encrypt(data);
+            assertArrayEquals(data, new PGPDecryptor(keyPair.getPrivateKey(), pass).decrypt(encrypted));
+        } finally {
+            executor.shutdown();
+        }
+        // the three I/O buffers plus data, dictionary and output of every block, all given back
+        assertTrue(pool.stats().getAcquireCount() > 3 + 3 * 60, pool.stats().toString());
+        assertEquals(pool.stats().getAcquireCount(), pool.stats().getReleaseCount());
+    }
+
+    @Test
+    void test_shouldRejectUnknownSettings() {
+        assertThrows(IllegalArgumentException.class, () -> Compression.of(7));
+        assertThrows(IllegalArgumentException.class, () -> Compression.ZIP.withLevel(10));
+        assertThrows(IllegalArgumentException.class, () -> Compression.ZIP.parallel(null));
+        assertThrows(IllegalArgumentException.class, () -> Compression.ZIP.parallel(Runnable::run, 0));
+    }
+
+    /**
+     * Text with random runs, compressible but with matches across block borders.
+     */
+    private static byte[] mixedData(int length) {
+        Random random = new Random(4);
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = random.nextInt(8) == 0 ? (byte) random.nextInt(256) : (byte) ('a' + i % 13);
+        }
+        return data;
+    }
+}
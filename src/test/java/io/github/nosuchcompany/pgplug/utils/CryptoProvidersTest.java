@@ -0,0 +1,91 @@
+package io.github.nosuchcompany.pgplug.utils;
+
+import io.github.nosuchcompany.pgplug.keyPair.KeyPairPGP;
+import io.github.nosuchcompany.pgplug.sign.SignedFileProcessor;
+import org.bouncycastle.openpgp.PGPEncryptedData;
+import org.bouncycastle.openpgp.PGPPublicKeyRingCollection;
+import org.bouncycastle.openpgp.PGPUtil;
+import org.bouncycastle.openpgp.operator.jcajce.JcaKeyFingerprintCalculator;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CryptoProvidersTest {
+
+    private static final char[] pass = "1234567890".toCharArray();
+
+    @Test
+    void test_jdkProvidersShouldInteroperate() throws Exception {
+        CryptoProviders jdk = CryptoProviders.jdk();
+        assertEquals("SunJCE", jdk.symmetricFor(PGPEncryptedData.AES_256, true).getName());
+        assertEquals("BC", jdk.getAsymmetric().getName());
+
+        for (KeyAlgorithm algorithm : new KeyAlgorithm[]{KeyAlgorithm.RSA_2048, KeyAlgorithm.ECC_P256}) {
+            KeyPairPGP keyPair = new KeyPairPGP(pass, algorithm);
+            byte[] clearData = new byte[200000];
+            new Random(42).nextBytes(clearData);
+
+            byte[] fast = new PGPEncryptor.Builder(Collections.singleton(keyPair.getPGPPublicKey()))
+                    .setCryptoProviders(jdk)
+                    .build()
+                    .encrypt(clearData);
+            byte[] classic = new PGPEncryptor.Builder(Collections.singleton(keyPair.getPGPPublicKey()))
+                    .setCryptoProviders(CryptoProviders.BOUNCY_CASTLE)
+                    .build()
+                    .encrypt(clearData);
+
+            PGPDecryptor fastDecryptor = new PGPDecryptor(new ByteArrayInputStream(keyPair.getPrivateKey()), pass,
+                    1, TimeUnit.MINUTES, 4, jdk);
+            PGPDecryptor classicDecryptor = new PGPDecryptor(keyPair.getPrivateKey(), pass);
+            assertArrayEquals(clearData, fastDecryptor.decrypt(classic));
+            assertArrayEquals(clearData, classicDecryptor.decrypt(fast));
+            assertArrayEquals(clearData, fastDecryptor.decrypt(fast));
+        }
+    }
+
+    @Test
+    void test_unsupportedCiphersShouldFallBack() throws Exception {
+        CryptoProviders jdk = CryptoProviders.jdk();
+        assertEquals("BC", jdk.symmetricFor(PGPEncryptedData.CAST5, true).getName());
+        assertEquals("BC", jdk.symmetricFor(PGPEncryptedData.AES_256, false).getName());
+
+        KeyPairPGP keyPair = new KeyPairPGP(pass);
+        byte[] clearData = "1234567890".getBytes();
+        PGPDecryptor decryptor = new PGPDecryptor(new ByteArrayInputStream(keyPair.getPrivateKey()), pass,
+                1, TimeUnit.MINUTES, 4, jdk);
+        byte[] cast5 = new PGPEncryptor.Builder(Collections.singleton(keyPair.getPGPPublicKey()))
+                .setSymmetricAlgorithm(PGPEncryptedData.CAST5)
+                .build()
+                .encrypt(clearData);
+        assertArrayEquals(clearData, decryptor.decrypt(cast5));
+        byte[] noIntegrity = new PGPEncryptor.Builder(Collections.singleton(keyPair.getPGPPublicKey()))
+                .setWithIntegrityCheck(false)
+                .build()
+                .encrypt(clearData);
+        assertArrayEquals(clearData, decryptor.decrypt(noIntegrity));
+    }
+
+    @Test
+    void test_signaturesWithJdkDigests() throws Exception {
+        KeyPairPGP keyPair = new KeyPairPGP(pass);
+        CryptoProviders previous = CryptoProviders.getDefault();
+        CryptoProviders.setDefault(CryptoProviders.jdk());
+        try {
+            ByteArrayOutputStream sigOut = new ByteArrayOutputStream();
+            SignedFileProcessor.signDetached(new ByteArrayInputStream("1234567890".getBytes()),
+                    PGPUtils.readSecretKey(new ByteArrayInputStream(keyPair.getPrivateKey())), sigOut, pass, true);
+            PGPPublicKeyRingCollection pgpRing = new PGPPublicKeyRingCollection(
+                    PGPUtil.getDecoderStream(new ByteArrayInputStream(keyPair.getPublicKey())), new JcaKeyFingerprintCalculator());
+            assertTrue(SignedFileProcessor.verifyDetached(new ByteArrayInputStream("1234567890".getBytes()),
+                    new ByteArrayInputStream(sigOut.toByteArray()), pgpRing));
+        } finally {
+            CryptoProviders.setDefault(previous);
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package io.github.nosuchcompany.pgplug.utils;
+
+import io.github.nosuchcompany.pgplug.keyPair.KeyPairPGP;
+import org.bouncycastle.openpgp.PGPDataValidationException;
+import org.bouncycastle.openpgp.PGPPublicKey;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PGPDecryptorTest {
+
+    private static final byte[] clearData = "1234567890".getBytes();
+    private static final char[] pass = "1234567890".toCharArray();
+
+    @Test
+    void test_shouldUnlockOnce() throws Exception {
+        KeyPairPGP keyPair = new KeyPairPGP(pass);
+        PGPDecryptor decryptor = new PGPDecryptor(keyPair.getPrivateKey(), pass);
+
+        for (int i = 0; i < 3; i++) {
+            byte[] encrypted = PGPUtils.encrypt(clearData, keyPair.getPublicKey());
+            assertArrayEquals(clearData, decryptor.decrypt(encrypted));
+        }
+
+        assertEquals(1, decryptor.stats().getMissCount());
+        assertEquals(2, decryptor.stats().getHitCount());
+        assertEquals(1, decryptor.stats().getSize());
+    }
+
+    @Test
+    void test_concurrentMissesShouldUnlockOnce() throws Exception {
+        KeyPairPGP keyPair = new KeyPairPGP(pass);
+        PGPDecryptor decryptor = new PGPDecryptor(keyPair.getPrivateKey(), pass);
+        final byte[] encrypted = PGPUtils.encrypt(clearData, keyPair.getPublicKey());
+
+        int threads = 8;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            final CountDownLatch start = new CountDownLatch(1);
+            Future<?>[] results = new Future<?>[threads];
+            for (int i = 0; i < threads; i++) {
+                results[i] = pool.submit(() -> {
+                    start.await();
+                    return decryptor.decrypt(encrypted);
+                });
+            }
+            start.countDown();
+            for (Future<?> result : results) {
+                assertArrayEquals(clearData, (byte[]) result.get());
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        assertEquals(1, decryptor.stats().getMissCount());
+        assertEquals(threads - 1, decryptor.stats().getHitCount());
+        assertEquals(1, decryptor.stats().getSize());
+
+        decryptor.close();
+        assertEquals(0, decryptor.stats().getSize());
+        assertThrows(IllegalStateException.class, () -> decryptor.decrypt(encrypted));
+    }
+
+    @Test
+    void test_shouldUnlockAgainAfterTtl() throws Exception {
+        KeyPairPGP keyPair = new KeyPairPGP(pass);
+        PGPDecryptor decryptor = new PGPDecryptor(
+                new ByteArrayInputStream(keyPair.getPrivateKey()), pass, 0, TimeUnit.MILLISECONDS, 1);
+
+        byte[] encrypted = PGPUtils.encrypt(clearData, keyPair.getPublicKey());
+        assertArrayEquals(clearData, decryptor.decrypt(encrypted));
+        assertArrayEquals(clearData, decryptor.decrypt(encrypted));
+
+        assertEquals(2, decryptor.stats().getMissCount());
+        assertEquals(0, decryptor.stats().getHitCount());
+        decryptor.evictExpired();
+        assertEquals(0, decryptor.stats().getSize());
+    }
+
+    @Test
+    void test_shouldFailWithoutMatchingKey() throws Exception {
+        KeyPairPGP keyPair = new KeyPairPGP(pass);
+        KeyPairPGP otherKeyPair = new KeyPairPGP(pass);
+        PGPDecryptor decryptor = new PGPDecryptor(otherKeyPair.getPrivateKey(), pass);
+
+        byte[] encrypted = PGPUtils.encrypt(clearData, keyPair.getPublicKey());
+        assertThrows(IllegalArgumentException.class, () -> decryptor.decrypt(encrypted));
+        decryptor.close();
+    }
+
+    @Test
+    void test_shouldEncryptAndDecryptFileToFile() throws Exception {
+        KeyPairPGP keyPair = new KeyPairPGP(pass);
+        Path clear = Files.createTempFile("pgplug", ".clear");
+        Path encrypted = Files.createTempFile("pgplug", ".pgp");
+        Path decrypted = Files.createTempFile("pgplug", ".decrypted");
+        try {
+            byte[] payload = new byte[3 << 20];
+            new Random(11).nextBytes(payload);
+            Files.write(clear, payload);
+
+            new PGPEncryptor.Builder(Collections.singleton(keyPair.getPGPPublicKey()))
+                    .setArmor(false)
+                    .build()
+                    .encrypt(clear, encrypted);
+            PGPDecryptor decryptor = new PGPDecryptor(keyPair.getPrivateKey(), pass);
+            decryptor.decrypt(encrypted, decrypted);
+            assertArrayEquals(payload, Files.readAllBytes(decrypted));
+
+            byte[] tampered = Files.readAllBytes(encrypted);
+            tampered[tampered.length - 30] ^= 1;
+            Files.write(encrypted, tampered);
+            assertThrows(Exception.class, () -> decryptor.decrypt(encrypted, decrypted));
+            assertFalse(Files.exists(decrypted));
+
+            assertThrows(IllegalArgumentException.class, () -> decryptor.decrypt(encrypted, encrypted));
+            assertArrayEquals(tampered, Files.readAllBytes(encrypted));
+        } finally {
+            Files.deleteIfExists(clear);
+            Files.deleteIfExists(encrypted);
+            Files.deleteIfExists(decrypted);
+        }
+    }
+
+    @Test
+    void test_shouldDecryptLazily() throws Exception {
+        KeyPairPGP keyPair = new KeyPairPGP(pass);
+        byte[] payload = new byte[300000];
+        new Random(13).nextBytes(payload);
+        byte[] encrypted = new PGPEncryptor.Builder(Collections.singleton(keyPair.getPGPPublicKey()))
+                .setCompression(Compression.NONE)
+                .setArmor(false)
+                .build()
+                .encrypt(payload);
+        PGPDecryptor decryptor = new PGPDecryptor(keyPair.getPrivateKey(), pass);
+
+        ByteArrayOutputStream bOut = new ByteArrayOutputStream();
+        try (InputStream clear = decryptor.open(new ByteArrayInputStream(encrypted))) {
+            byte[] buffer = new byte[1000];
+            int len;
+            while ((len = clear.read(buffer)) >= 0) {
+                bOut.write(buffer, 0, len);
+            }
+            assertEquals(-1, clear.read());
+        }
+        assertArrayEquals(payload, bOut.toByteArray());
+
+        try (InputStream clear = decryptor.open(new ByteArrayInputStream(encrypted))) {
+            assertEquals(payload[0] & 0xff, clear.read());
+        }
+
+        encrypted[encrypted.length - 30] ^= 1;
+        try (InputStream clear = decryptor.open(new ByteArrayInputStream(encrypted))) {
+            byte[] buffer = new byte[1000];
+            IOException e = assertThrows(IOException.class, () -> {
+                while (clear.read(buffer) >= 0) {
+                    // drain
+                }
+            });
+            assertTrue(e.getCause() instanceof PGPDataValidationException);
+        }
+    }
+
+    @Test
+    void test_shouldRewrapForNewRecipients() throws Exception {
+        KeyPairPGP owner = new KeyPairPGP(pass);
+        KeyPairPGP added = new KeyPairPGP(pass, KeyAlgorithm.ECC_P256);
+        KeyPairPGP removed = new KeyPairPGP(pass);
+        byte[] largeData = new byte[200000];
+        new Random(1).nextBytes(largeData);
+        byte[] encrypted = new PGPEncryptor.Builder(Arrays.asList(owner.getPGPPublicKey(), removed.getPGPPublicKey()))
+                .setArmor(false)
+                .build()
+                .encrypt(largeData);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PGPDecryptor ownerDecryptor = new PGPDecryptor(owner.getPrivateKey(), pass);
+        ownerDecryptor.rewrap(new ByteArrayInputStream(encrypted),
+                Arrays.asList(owner.getPGPPublicKey(), added.getPGPPublicKey()), out);
+        byte[] rewrapped = out.toByteArray();
+
+        // only the key packets differ, the encrypted data is the same
+        int payload = 200000;
+        assertArrayEquals(Arrays.copyOfRange(encrypted, encrypted.length - payload, encrypted.length),
+                Arrays.copyOfRange(rewrapped, rewrapped.length - payload, rewrapped.length));
+
+        assertArrayEquals(largeData, ownerDecryptor.decrypt(rewrapped));
+        assertArrayEquals(largeData, new PGPDecryptor(added.getPrivateKey(), pass).decrypt(rewrapped));
+        PGPDecryptor removedDecryptor = new PGPDecryptor(removed.getPrivateKey(), pass);
+        assertThrows(IllegalArgumentException.class, () -> removedDecryptor.decrypt(rewrapped));
+    }
+
+    @Test
+    void test_rewrapShouldKeepArmorAndNeedKey() throws Exception {
+        KeyPairPGP owner = new KeyPairPGP(pass);
+        KeyPairPGP added = new KeyPairPGP(pass);
+        byte[] encrypted = PGPUtils.encrypt(clearData, owner.getPublicKey());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new PGPDecryptor(owner.getPrivateKey(), pass).rewrap(new ByteArrayInputStream(encrypted),
+                Collections.singleton(added.getPGPPublicKey()), out);
+        assertTrue(new String(out.toByteArray()).startsWith("-----BEGIN PGP MESSAGE-----"));
+        assertArrayEquals(clearData, new PGPDecryptor(added.getPrivateKey(), pass).decrypt(out.toByteArray()));
+
+        PGPDecryptor stranger = new PGPDecryptor(new KeyPairPGP(pass).getPrivateKey(), pass);
+        assertThrows(IllegalArgumentException.class, () -> stranger.rewrap(new ByteArrayInputStream(encrypted),
+                Collections.<PGPPublicKey>singleton(added.getPGPPublicKey()), new ByteArrayOutputStream()));
+    }
+}
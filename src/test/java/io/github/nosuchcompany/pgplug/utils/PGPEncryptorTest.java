@@ -0,0 +1,122 @@
+package io.github.nosuchcompany.pgplug.utils;
+
+import io.github.nosuchcompany.pgplug.keyPair.KeyPairPGP;
+import org.bouncycastle.openpgp.*;
+import org.bouncycastle.openpgp.operator.jcajce.JcaKeyFingerprintCalculator;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PGPEncryptorTest {
+
+    private static final char[] pass = "1234567890".toCharArray();
+
+    @Test
+    void test_sharedEncryptorShouldBeThreadSafe() throws Exception {
+        KeyPairPGP keyPair1 = new KeyPairPGP(pass);
+        KeyPairPGP keyPair2 = new KeyPairPGP(pass);
+        List<PGPPublicKey> publicKeys = Arrays.asList(keyPair1.getPGPPublicKey(), keyPair2.getPGPPublicKey());
+        final PGPEncryptor encryptor = new PGPEncryptor.Builder(publicKeys)
+                .setCompressionAlgorithm(PGPCompressedData.ZLIB)
+                .setArmor(false)
+                .build();
+        final PGPDecryptor decryptor1 = new PGPDecryptor(keyPair1.getPrivateKey(), pass);
+        final PGPDecryptor decryptor2 = new PGPDecryptor(keyPair2.getPrivateKey(), pass);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Void>> results = new ArrayList<Future<Void>>();
+            for (int i = 0; i < 32; i++) {
+                final byte[] clearData = ("message " + i).getBytes();
+                results.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        byte[] encrypted = encryptor.encrypt(clearData);
+                        assertArrayEquals(clearData, decryptor1.decrypt(encrypted));
+                        assertArrayEquals(clearData, decryptor2.decrypt(encrypted));
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> result : results) {
+                result.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void test_signedMessageShouldVerify() throws Exception {
+        KeyPairPGP recipient = new KeyPairPGP(pass);
+        KeyPairPGP signer = new KeyPairPGP(pass);
+        byte[] clearData = "1234567890".getBytes();
+        PGPEncryptor encryptor = new PGPEncryptor.Builder(Collections.singleton(recipient.getPGPPublicKey()))
+                .setSigningKey(PGPUtils.readSecretKey(new ByteArrayInputStream(signer.getPrivateKey())), pass)
+                .build();
+        PGPDecryptor decryptor = new PGPDecryptor(recipient.getPrivateKey(), pass);
+
+        byte[] encrypted = encryptor.encrypt(clearData);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertTrue(decryptor.decryptAndVerify(new ByteArrayInputStream(encrypted), ring(signer), out));
+        assertArrayEquals(clearData, out.toByteArray());
+        assertFalse(decryptor.decryptAndVerify(new ByteArrayInputStream(encrypted), ring(recipient), new ByteArrayOutputStream()));
+        assertThrows(PGPException.class, () -> decryptor.decrypt(encrypted));
+    }
+
+    @Test
+    void test_unsignedMessageShouldNotVerify() throws Exception {
+        KeyPairPGP recipient = new KeyPairPGP(pass);
+        PGPDecryptor decryptor = new PGPDecryptor(recipient.getPrivateKey(), pass);
+
+        byte[] encrypted = PGPUtils.encrypt("1234567890".getBytes(), recipient.getPublicKey());
+
+        assertThrows(PGPException.class, () -> decryptor.decryptAndVerify(
+                new ByteArrayInputStream(encrypted), ring(recipient), new ByteArrayOutputStream()));
+    }
+
+    private static PGPPublicKeyRingCollection ring(KeyPairPGP keyPair) throws Exception {
+        return new PGPPublicKeyRingCollection(PGPUtil.getDecoderStream(new ByteArrayInputStream(keyPair.getPublicKey())), new JcaKeyFingerprintCalculator());
+    }
+
+    @Test
+    void test_shouldNotAcceptNoRecipient() {
+        assertThrows(IllegalArgumentException.class, () -> new PGPEncryptor.Builder(Collections.<PGPPublicKey>emptyList()));
+    }
+
+    @Test
+    void test_shouldWrapSessionKeyForManyRecipientsInParallel() throws Exception {
+        KeyPairPGP rsa = new KeyPairPGP(pass);
+        KeyPairPGP p256 = new KeyPairPGP(pass, KeyAlgorithm.ECC_P256);
+        KeyPairPGP p384 = new KeyPairPGP(pass, KeyAlgorithm.ECC_P384);
+        List<PGPPublicKey> recipients = new ArrayList<PGPPublicKey>();
+        for (int i = 0; i < 20; i++) {
+            recipients.add(rsa.getPGPPublicKey());
+            recipients.add(p256.getPGPPublicKey());
+            recipients.add(p384.getPGPPublicKey());
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            PGPEncryptor encryptor = new PGPEncryptor.Builder(recipients)
+                    .setParallelKeyWrapping(executor)
+                    .build();
+            for (int i = 0; i < 3; i++) {
+                byte[] clearData = ("broadcast " + i).getBytes();
+                byte[] encrypted = encryptor.encrypt(clearData);
+                for (KeyPairPGP keyPair : Arrays.asList(rsa, p256, p384)) {
+                    try (PGPDecryptor decryptor = new PGPDecryptor(keyPair.getPrivateKey(), pass)) {
+                        assertArrayEquals(clearData, decryptor.decrypt(encrypted));
+                    }
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
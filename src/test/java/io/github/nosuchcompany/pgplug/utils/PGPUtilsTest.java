@@ -11,7 +11,10 @@ import org.junit.jupiter.api.Test;
 import static org.junit.jupiter.api.Assertions.*;
 
 import java.io.*;
+import java.nio.channels.Channels;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.Random;
 import java.util.Set;
 
 class PGPUtilsTest {
@@ -58,6 +61,95 @@ class PGPUtilsTest {
         assertArrayEquals(clearData, decryptedByteArray);
     }
 
+    @Test
+    void test_ellipticCurveHappyPath() throws Exception {
+        KeyPairPGP keyPair1 = new KeyPairPGP(pass, KeyAlgorithm.ECC_P256);
+        KeyPairPGP keyPair2 = new KeyPairPGP(pass);
+
+        PGPPublicKey publicKey = keyPair1.getPGPPublicKey();
+        assertEquals(PGPPublicKey.ECDH, publicKey.getAlgorithm());
+        assertEquals(PGPPublicKey.ECDSA, PGPUtils.readSecretKey(new ByteArrayInputStream(keyPair1.getPrivateKey())).getPublicKey().getAlgorithm());
+
+        Set<PGPPublicKey> publicKeys = new HashSet<PGPPublicKey>();
+        publicKeys.add(publicKey);
+        publicKeys.add(keyPair2.getPGPPublicKey());
+
+        ByteArrayOutputStream enc_os = new ByteArrayOutputStream();
+        PGPUtils.encrypt(enc_os, clearData, publicKeys);
+
+        ByteArrayOutputStream dec_os = new ByteArrayOutputStream();
+        PGPUtils.decrypt(enc_os.toByteArray(), keyPair1.getPrivateKey(), dec_os, pass);
+        assertArrayEquals(clearData, dec_os.toByteArray());
+
+        PGPDecryptor decryptor = new PGPDecryptor(keyPair1.getPrivateKey(), pass);
+        assertArrayEquals(clearData, decryptor.decrypt(enc_os.toByteArray()));
+    }
+
+    @Test
+    void test_signAndEncryptHappyPath() throws Exception {
+        KeyPairPGP recipient = new KeyPairPGP(pass);
+        KeyPairPGP signer = new KeyPairPGP(pass, KeyAlgorithm.ECC_P256);
+        byte[] largeData = new byte[3 * (1 << 16) + 5];
+        new Random(42).nextBytes(largeData);
+
+        ByteArrayOutputStream enc_os = new ByteArrayOutputStream();
+        PGPUtils.signAndEncrypt(enc_os, new ByteArrayInputStream(largeData),
+                Collections.singleton(recipient.getPGPPublicKey()),
+                PGPUtils.readSecretKey(new ByteArrayInputStream(signer.getPrivateKey())), pass);
+
+        ByteArrayOutputStream dec_os = new ByteArrayOutputStream();
+        assertTrue(PGPUtils.decryptAndVerify(new ByteArrayInputStream(enc_os.toByteArray()),
+                new ByteArrayInputStream(recipient.getPrivateKey()),
+                new ByteArrayInputStream(signer.getPublicKey()), dec_os, pass));
+        assertArrayEquals(largeData, dec_os.toByteArray());
+
+        assertFalse(PGPUtils.decryptAndVerify(new ByteArrayInputStream(enc_os.toByteArray()),
+                new ByteArrayInputStream(recipient.getPrivateKey()),
+                new ByteArrayInputStream(new KeyPairPGP(pass).getPublicKey()), new ByteArrayOutputStream(), pass));
+    }
+
+    @Test
+    void test_streamedEncrypt() throws Exception {
+        KeyPairPGP keyPair = new KeyPairPGP(pass);
+        byte[] largeData = new byte[(8 << 20) + 17];
+        new Random(42).nextBytes(largeData);
+
+        ByteArrayOutputStream enc_os = new ByteArrayOutputStream();
+        PGPUtils.encrypt(enc_os, new ByteArrayInputStream(largeData), Collections.singleton(keyPair.getPGPPublicKey()));
+
+        ByteArrayOutputStream dec_os = new ByteArrayOutputStream();
+        PGPUtils.decrypt(enc_os.toByteArray(), keyPair.getPrivateKey(), dec_os, pass);
+        assertArrayEquals(largeData, dec_os.toByteArray());
+    }
+
+    @Test
+    void test_decryptToByteArray() throws Exception {
+        KeyPairPGP keyPair = new KeyPairPGP(pass);
+        byte[] data = "hello world".getBytes();
+
+        ByteArrayOutputStream enc_os = new ByteArrayOutputStream();
+        PGPUtils.encrypt(enc_os, new ByteArrayInputStream(data), Collections.singleton(keyPair.getPGPPublicKey()));
+
+        byte[] decrypted = PGPUtils.decrypt(new ByteArrayInputStream(enc_os.toByteArray()),
+                new ByteArrayInputStream(keyPair.getPrivateKey()), pass);
+        assertArrayEquals(data, decrypted);
+    }
+
+    @Test
+    void test_channelEncrypt() throws Exception {
+        KeyPairPGP keyPair = new KeyPairPGP(pass);
+
+        ByteArrayOutputStream enc_os = new ByteArrayOutputStream();
+        PGPUtils.encrypt(
+                Channels.newChannel(enc_os),
+                Channels.newChannel(new ByteArrayInputStream(clearData)),
+                Collections.singleton(keyPair.getPGPPublicKey()));
+
+        ByteArrayOutputStream dec_os = new ByteArrayOutputStream();
+        PGPUtils.decrypt(enc_os.toByteArray(), keyPair.getPrivateKey(), dec_os, pass);
+        assertArrayEquals(clearData, dec_os.toByteArray());
+    }
+
     @Test
     void test_shouldCreateKeys() throws FileNotFoundException {
         String privateKeyDest = TEST_FOLDER + "/test_shouldCreateKeys.prv";